@@ -45,6 +45,13 @@ public interface Crawler {
      */
     void start();
 
+    /**
+     * Resumes crawling from the most recent checkpoint in the configured checkpoint folder. Pages
+     * processed before the checkpoint will not be fetched again, and the seed URLs are ignored.
+     * If there is no checkpoint, crawling starts from the seed URLs, like {@link #start()}.
+     */
+    void resume();
+
     /**
      * Checks if this crawler is terminated.
      * @return true if terminated
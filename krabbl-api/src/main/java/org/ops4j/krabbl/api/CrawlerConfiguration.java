@@ -42,6 +42,91 @@ public class CrawlerConfiguration {
      */
     private int politenessDelay = 200;
 
+    /**
+     * Maximum number of pages being fetched at the same time. Further targets are kept in
+     * the frontier until a fetch has completed.
+     */
+    private int maxConcurrentFetches = 100;
+
+    /**
+     * Folder for storing intermediate crawl data. If null, the frontier is kept in memory.
+     */
+    private String crawlStorageFolder;
+
+    /**
+     * Folder for checkpoints of the crawl state. If null, no checkpoints are written.
+     */
+    private String checkpointFolder;
+
+    /**
+     * Interval in seconds between two checkpoints.
+     */
+    private int checkpointInterval = 600;
+
+    /**
+     * Should the crawler keep revisiting processed pages until it is shut down?
+     */
+    private boolean continuous;
+
+    /**
+     * Revisit interval in seconds after the first visit of a page in continuous mode.
+     */
+    private long initialRevisitInterval = 3600;
+
+    /**
+     * Minimum revisit interval in seconds in continuous mode.
+     */
+    private long minRevisitInterval = 60;
+
+    /**
+     * Maximum revisit interval in seconds in continuous mode.
+     */
+    private long maxRevisitInterval = 7 * 24 * 3600;
+
+    /**
+     * Folder for archive segments with the content of fetched pages. If null, page content is
+     * kept in memory.
+     */
+    private String archiveFolder;
+
+    /**
+     * Size in bytes after which a new archive segment is started.
+     */
+    private long archiveSegmentSize = 1L << 30;
+
+    /**
+     * File with the validators of previously fetched pages. If null, no conditional requests
+     * are sent.
+     */
+    private String validatorStoreFile;
+
+    /**
+     * Folder for WARC files with the requests and responses of the crawl. If null, no WARC
+     * files are written.
+     */
+    private String warcFolder;
+
+    /**
+     * Size in bytes after which a new WARC file is started.
+     */
+    private long warcSegmentSize = 1L << 30;
+
+    /**
+     * Maximum number of request and response pairs waiting to be written to a WARC file.
+     */
+    private int warcQueueCapacity = 1000;
+
+    /**
+     * Expected number of URLs in the crawl, for sizing a filter of URLs seen before. If 0, there
+     * is no filter.
+     */
+    private long seenFilterExpectedUrls;
+
+    /**
+     * False positive rate of the filter of URLs seen before.
+     */
+    private double seenFilterFalsePositiveRate = 0.01;
+
     /**
      * Should we also crawl https pages?
      */
@@ -58,7 +143,8 @@ public class CrawlerConfiguration {
     private int maxOutgoingLinksToFollow = 5000;
 
     /**
-     * Max allowed size of a page. Pages larger than this size will not be fetched.
+     * Max allowed size of a page. Pages announcing a larger size will not be fetched, other pages
+     * are truncated to this size.
      */
     private int maxDownloadSize = 1048576;
 
@@ -95,6 +181,22 @@ public class CrawlerConfiguration {
         if (maxDepthOfCrawling > Short.MAX_VALUE) {
             throw new IllegalArgumentException("Maximum value for crawl depth is " + Short.MAX_VALUE);
         }
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException(
+                "Invalid value for checkpoint interval: " + checkpointInterval);
+        }
+        if (seenFilterExpectedUrls < 0) {
+            throw new IllegalArgumentException(
+                "Invalid value for expected URLs of seen filter: " + seenFilterExpectedUrls);
+        }
+        if (seenFilterFalsePositiveRate <= 0 || seenFilterFalsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid value for false positive rate of seen "
+                + "filter: " + seenFilterFalsePositiveRate);
+        }
+        if (maxConcurrentFetches <= 0) {
+            throw new IllegalArgumentException(
+                "Invalid value for maximum concurrent fetches: " + maxConcurrentFetches);
+        }
     }
 
     public int getMaxDepthOfCrawling() {
@@ -126,6 +228,258 @@ public class CrawlerConfiguration {
         this.maxPagesToFetch = maxPagesToFetch;
     }
 
+    public int getMaxConcurrentFetches() {
+        return maxConcurrentFetches;
+    }
+
+    /**
+     * Maximum number of pages being fetched at the same time. Further targets are kept in the
+     * frontier until a fetch has completed.
+     *
+     * @param maxConcurrentFetches
+     *            maximum number of concurrent fetches
+     */
+    public void setMaxConcurrentFetches(int maxConcurrentFetches) {
+        this.maxConcurrentFetches = maxConcurrentFetches;
+    }
+
+    public String getCrawlStorageFolder() {
+        return crawlStorageFolder;
+    }
+
+    /**
+     * Folder for storing intermediate crawl data. When set, the frontier of the crawler is
+     * kept on disk in a subfolder of this folder, so that crawls are not limited by the heap
+     * size. If null, the frontier is kept in memory.
+     *
+     * @param crawlStorageFolder
+     *            storage folder, or null
+     */
+    public void setCrawlStorageFolder(String crawlStorageFolder) {
+        this.crawlStorageFolder = crawlStorageFolder;
+    }
+
+    public String getCheckpointFolder() {
+        return checkpointFolder;
+    }
+
+    /**
+     * Folder for checkpoints of the crawl state. When set, the crawler periodically saves its
+     * frontier and robots.txt cache to this folder, and it can be resumed from the most recent
+     * checkpoint after a restart. Each crawler needs a folder of its own. If null, no checkpoints
+     * are written.
+     *
+     * @param checkpointFolder
+     *            checkpoint folder, or null
+     */
+    public void setCheckpointFolder(String checkpointFolder) {
+        this.checkpointFolder = checkpointFolder;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Interval between two checkpoints. Only applies when a checkpoint folder is set.
+     *
+     * @param checkpointInterval
+     *            interval in seconds
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    /**
+     * Continuous crawling. When enabled, the crawler does not terminate when all pages have been
+     * processed, but revisits each page after an interval adapted to how often its content
+     * changes, until it is shut down. The frontier is kept in memory, and a target scorer of the
+     * crawler builder is not used.
+     *
+     * @param continuous
+     *            crawl continuously?
+     */
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    public long getInitialRevisitInterval() {
+        return initialRevisitInterval;
+    }
+
+    /**
+     * Revisit interval after the first visit of a page. Only applies in continuous mode.
+     *
+     * @param initialRevisitInterval
+     *            interval in seconds
+     */
+    public void setInitialRevisitInterval(long initialRevisitInterval) {
+        this.initialRevisitInterval = initialRevisitInterval;
+    }
+
+    public long getMinRevisitInterval() {
+        return minRevisitInterval;
+    }
+
+    /**
+     * Minimum revisit interval for pages which change frequently. Only applies in continuous
+     * mode.
+     *
+     * @param minRevisitInterval
+     *            interval in seconds
+     */
+    public void setMinRevisitInterval(long minRevisitInterval) {
+        this.minRevisitInterval = minRevisitInterval;
+    }
+
+    public long getMaxRevisitInterval() {
+        return maxRevisitInterval;
+    }
+
+    /**
+     * Maximum revisit interval for pages which never change. Only applies in continuous mode.
+     *
+     * @param maxRevisitInterval
+     *            interval in seconds
+     */
+    public void setMaxRevisitInterval(long maxRevisitInterval) {
+        this.maxRevisitInterval = maxRevisitInterval;
+    }
+
+    public String getArchiveFolder() {
+        return archiveFolder;
+    }
+
+    /**
+     * Folder for archiving the content of fetched pages. When set, the content of each page is
+     * streamed from the network into a segment file in this folder instead of a buffer in
+     * memory, and parsers read the content through a memory-mapped view. The segment files are
+     * kept after crawling. If null, page content is kept in memory.
+     *
+     * @param archiveFolder
+     *            archive folder, or null
+     */
+    public void setArchiveFolder(String archiveFolder) {
+        this.archiveFolder = archiveFolder;
+    }
+
+    public long getArchiveSegmentSize() {
+        return archiveSegmentSize;
+    }
+
+    /**
+     * Size after which a new archive segment is started. Only applies when an archive folder is
+     * set.
+     *
+     * @param archiveSegmentSize
+     *            segment size in bytes
+     */
+    public void setArchiveSegmentSize(long archiveSegmentSize) {
+        this.archiveSegmentSize = archiveSegmentSize;
+    }
+
+    public String getValidatorStoreFile() {
+        return validatorStoreFile;
+    }
+
+    /**
+     * File for remembering the {@code ETag}, {@code Last-Modified}, content hash and outgoing
+     * links of each fetched page. When set, the validators are loaded from this file, if it
+     * exists, before crawling. Changes are appended to it with each checkpoint and after
+     * crawling, and the outgoing links are kept in a separate file next to it. Pages with a
+     * validator are fetched with a conditional request, and pages which have not been modified
+     * are neither downloaded nor parsed. Instead, the outgoing links saved when the page was last
+     * downloaded are followed again, so a recrawl still reaches all pages linked from unmodified
+     * pages. If null, no conditional requests are sent.
+     *
+     * @param validatorStoreFile
+     *            validator store file, or null
+     */
+    public void setValidatorStoreFile(String validatorStoreFile) {
+        this.validatorStoreFile = validatorStoreFile;
+    }
+
+    public String getWarcFolder() {
+        return warcFolder;
+    }
+
+    /**
+     * Folder for WARC files. When set, the request and response of each fetched page are
+     * recorded in gzipped WARC/1.1 files in this folder, written by a background thread of
+     * the crawler. If null, no WARC files are written.
+     *
+     * @param warcFolder
+     *            WARC folder, or null
+     */
+    public void setWarcFolder(String warcFolder) {
+        this.warcFolder = warcFolder;
+    }
+
+    public long getWarcSegmentSize() {
+        return warcSegmentSize;
+    }
+
+    /**
+     * Size after which a new WARC file is started. Only applies when a WARC folder is set.
+     *
+     * @param warcSegmentSize
+     *            file size in bytes
+     */
+    public void setWarcSegmentSize(long warcSegmentSize) {
+        this.warcSegmentSize = warcSegmentSize;
+    }
+
+    public int getWarcQueueCapacity() {
+        return warcQueueCapacity;
+    }
+
+    /**
+     * Maximum number of request and response pairs waiting to be written to a WARC file. When
+     * the queue is full, further records are dropped, so that crawling never waits for the
+     * disk. Only applies when a WARC folder is set.
+     *
+     * @param warcQueueCapacity
+     *            queue capacity
+     */
+    public void setWarcQueueCapacity(int warcQueueCapacity) {
+        this.warcQueueCapacity = warcQueueCapacity;
+    }
+
+    public long getSeenFilterExpectedUrls() {
+        return seenFilterExpectedUrls;
+    }
+
+    /**
+     * Expected number of URLs in the crawl. When set, the frontier is decorated with an in-memory
+     * Bloom filter of this capacity, which recognizes most new URLs without a lookup in the
+     * frontier. This is mainly useful with a crawl storage folder. If 0, there is no filter.
+     *
+     * @param seenFilterExpectedUrls
+     *            expected number of URLs, or 0
+     */
+    public void setSeenFilterExpectedUrls(long seenFilterExpectedUrls) {
+        this.seenFilterExpectedUrls = seenFilterExpectedUrls;
+    }
+
+    public double getSeenFilterFalsePositiveRate() {
+        return seenFilterFalsePositiveRate;
+    }
+
+    /**
+     * False positive rate of the filter of URLs seen before, i.e. the rate of new URLs which
+     * still require a lookup in the frontier.
+     *
+     * @param seenFilterFalsePositiveRate
+     *            false positive rate, between 0 and 1
+     */
+    public void setSeenFilterFalsePositiveRate(double seenFilterFalsePositiveRate) {
+        this.seenFilterFalsePositiveRate = seenFilterFalsePositiveRate;
+    }
+
     public boolean isIncludeHttpsPages() {
         return includeHttpsPages;
     }
@@ -168,8 +522,12 @@ public class CrawlerConfiguration {
     }
 
     /**
+     * Pages with a content length above this size are not fetched. When the length of a page is
+     * unknown, its content is truncated to this size and the page is marked as truncated. This
+     * applies to both blocking and non-blocking fetches.
+     *
      * @param maxDownloadSize
-     *            Max allowed size of a page. Pages larger than this size will not be fetched.
+     *            Max allowed size of a page.
      */
     public void setMaxDownloadSize(int maxDownloadSize) {
         this.maxDownloadSize = maxDownloadSize;
@@ -208,6 +566,22 @@ public class CrawlerConfiguration {
         StringBuilder sb = new StringBuilder();
         sb.append("Max depth of crawl: " + getMaxDepthOfCrawling() + "\n");
         sb.append("Max pages to fetch: " + getMaxPagesToFetch() + "\n");
+        sb.append("Max concurrent fetches: " + getMaxConcurrentFetches() + "\n");
+        sb.append("Crawl storage folder: " + getCrawlStorageFolder() + "\n");
+        sb.append("Checkpoint folder: " + getCheckpointFolder() + "\n");
+        sb.append("Checkpoint interval: " + getCheckpointInterval() + "\n");
+        sb.append("Continuous: " + isContinuous() + "\n");
+        sb.append("Initial revisit interval: " + getInitialRevisitInterval() + "\n");
+        sb.append("Min revisit interval: " + getMinRevisitInterval() + "\n");
+        sb.append("Max revisit interval: " + getMaxRevisitInterval() + "\n");
+        sb.append("Archive folder: " + getArchiveFolder() + "\n");
+        sb.append("Archive segment size: " + getArchiveSegmentSize() + "\n");
+        sb.append("Validator store file: " + getValidatorStoreFile() + "\n");
+        sb.append("WARC folder: " + getWarcFolder() + "\n");
+        sb.append("WARC segment size: " + getWarcSegmentSize() + "\n");
+        sb.append("WARC queue capacity: " + getWarcQueueCapacity() + "\n");
+        sb.append("Seen filter expected URLs: " + getSeenFilterExpectedUrls() + "\n");
+        sb.append("Seen filter false positive rate: " + getSeenFilterFalsePositiveRate() + "\n");
         sb.append("Include https pages: " + isIncludeHttpsPages() + "\n");
         sb.append("Include binary content: " + isIncludeBinaryContentInCrawling() + "\n");
         sb.append("Max outgoing links to follow: " + getMaxOutgoingLinksToFollow() + "\n");
@@ -63,8 +63,8 @@ public class HttpClientConfiguration {
     private int connectionTimeout = 30000;
 
     /**
-     * Max allowed size of a page. Pages larger than this size will not be
-     * fetched.
+     * Max allowed size of a page. Pages announcing a larger size will not be
+     * fetched, other pages are truncated to this size.
      */
     private int maxDownloadSize = 1048576;
 
@@ -94,6 +94,17 @@ public class HttpClientConfiguration {
      */
     private String proxyPassword;
 
+    /**
+     * Should we use a non-blocking HTTP client for fetching pages? A non-blocking client does not
+     * occupy a thread while waiting for a response.
+     */
+    private boolean asyncClient = false;
+
+    /**
+     * Should response bodies be read into pooled direct buffers instead of pooled heap buffers?
+     */
+    private boolean directContentBuffers = false;
+
     /**
      * Validates the configs specified by this instance.
      *
@@ -205,8 +216,11 @@ public class HttpClientConfiguration {
     }
 
     /**
-     * @param maxDownloadSize Max allowed size of a page. Pages larger than this size will not be
-     * fetched.
+     * Pages with a content length above this size are not fetched. When the length of a page is
+     * unknown, its content is truncated to this size and the page is marked as truncated. This
+     * applies to both blocking and non-blocking fetches.
+     *
+     * @param maxDownloadSize Max allowed size of a page.
      */
     public void setMaxDownloadSize(int maxDownloadSize) {
         this.maxDownloadSize = maxDownloadSize;
@@ -263,6 +277,31 @@ public class HttpClientConfiguration {
         this.proxyPassword = proxyPassword;
     }
 
+    public boolean isAsyncClient() {
+        return asyncClient;
+    }
+
+    /**
+     * @param asyncClient
+     *            Should we use a non-blocking HTTP client for fetching pages?
+     */
+    public void setAsyncClient(boolean asyncClient) {
+        this.asyncClient = asyncClient;
+    }
+
+    public boolean isDirectContentBuffers() {
+        return directContentBuffers;
+    }
+
+    /**
+     * @param directContentBuffers
+     *            Should response bodies be read into pooled direct buffers instead of pooled heap
+     *            buffers?
+     */
+    public void setDirectContentBuffers(boolean directContentBuffers) {
+        this.directContentBuffers = directContentBuffers;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -276,6 +315,8 @@ public class HttpClientConfiguration {
         sb.append("Proxy port: " + getProxyPort() + "\n");
         sb.append("Proxy username: " + getProxyUsername() + "\n");
         sb.append("Proxy password: " + getProxyPassword() + "\n");
+        sb.append("Async client: " + isAsyncClient() + "\n");
+        sb.append("Direct content buffers: " + isDirectContentBuffers() + "\n");
         return sb.toString();
     }
 }
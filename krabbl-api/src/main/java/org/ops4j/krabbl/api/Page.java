@@ -17,6 +17,9 @@
  */
 package org.ops4j.krabbl.api;
 
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
 import org.apache.http.Header;
 
 /**
@@ -47,10 +50,36 @@ public class Page {
     private int statusCode;
 
     /**
-     * The content of this page in binary format.
+     * The content of this page in binary format, from position 0 to the limit. The buffer may be
+     * borrowed from a pool.
+     */
+    private ByteBuffer content;
+
+    /**
+     * Returns the content buffer to its pool, or null if the buffer is not pooled.
+     */
+    private Runnable contentReleaser;
+
+    /**
+     * Copy of the content as a byte array, created on demand.
      */
     private byte[] contentData;
 
+    /**
+     * Maps archived content into memory, or null if the content is not archived.
+     */
+    private Supplier<ByteBuffer> contentView;
+
+    /**
+     * Offset of archived content in its archive segment, or -1 if the content is not archived.
+     */
+    private long contentOffset = -1;
+
+    /**
+     * Length of archived content.
+     */
+    private int contentLength;
+
     /**
      * The ContentType of this page.
      * For example: "text/html; charset=UTF-8"
@@ -137,14 +166,152 @@ public class Page {
     }
 
     /**
-     * @return content of this page in binary format.
+     * Gets the content of this page as a byte array. If the content is held in a buffer, it is
+     * copied to a new array on the first call. Use {@link #getContent()} to avoid the copy.
+     *
+     * @return content of this page in binary format, or null if there is no content
      */
-    public byte[] getContentData() {
+    public synchronized byte[] getContentData() {
+        if (contentData == null) {
+            ByteBuffer view = getContent();
+            if (view != null) {
+                contentData = new byte[view.remaining()];
+                view.get(contentData);
+            }
+        }
         return contentData;
     }
 
-    public void setContentData(byte[] contentData) {
+    public synchronized void setContentData(byte[] contentData) {
+        clearContent();
         this.contentData = contentData;
+        this.content = (contentData == null) ? null : ByteBuffer.wrap(contentData);
+    }
+
+    /**
+     * Gets a read-only view of the content of this page. The position of the view is 0, and its
+     * limit is the content length.
+     * <p>
+     * If the content is held in a pooled buffer, it is only valid until the crawler has finished
+     * processing the page, i.e. after {@link PageVisitor#visit(Page)} returns. A visitor which
+     * needs the content afterwards shall call {@link #retainContent()}.
+     * <p>
+     * Archived content is mapped into memory on demand and remains available as long as its
+     * archive segment exists.
+     *
+     * @return content view, or null if there is no content or the content has been released
+     */
+    public synchronized ByteBuffer getContent() {
+        if (content == null && contentView != null) {
+            content = contentView.get();
+        }
+        return (content == null) ? null : content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Sets the content of this page to a buffer which may be borrowed from a pool.
+     *
+     * @param content
+     *            content from position 0 to the limit
+     * @param contentReleaser
+     *            returns the buffer to its pool, or null if the buffer is not pooled
+     */
+    public synchronized void setContent(ByteBuffer content, Runnable contentReleaser) {
+        clearContent();
+        this.content = content;
+        this.contentReleaser = contentReleaser;
+    }
+
+    /**
+     * Sets the content of this page to a region of an archive segment. The page only keeps the
+     * offset and length of the region. The content is mapped into memory when it is first
+     * accessed.
+     *
+     * @param contentOffset
+     *            offset of the content in its archive segment
+     * @param contentLength
+     *            length of the content
+     * @param contentView
+     *            maps the content region into memory
+     */
+    public synchronized void setArchivedContent(long contentOffset, int contentLength,
+        Supplier<ByteBuffer> contentView) {
+        clearContent();
+        this.contentOffset = contentOffset;
+        this.contentLength = contentLength;
+        this.contentView = contentView;
+    }
+
+    /**
+     * Checks if the content of this page is held in an archive segment.
+     *
+     * @return true if the content is archived
+     */
+    public synchronized boolean isContentArchived() {
+        return contentView != null;
+    }
+
+    /**
+     * Gets the offset of the archived content of this page in its archive segment.
+     *
+     * @return offset, or -1 if the content is not archived
+     */
+    public synchronized long getContentOffset() {
+        return contentOffset;
+    }
+
+    /**
+     * Gets the length of the content of this page.
+     *
+     * @return content length, or 0 if there is no content
+     */
+    public synchronized int getContentLength() {
+        if (contentView != null) {
+            return contentLength;
+        }
+        return (content == null) ? 0 : content.limit();
+    }
+
+    /**
+     * Copies pooled content to a buffer owned by this page, so that the content remains
+     * available after the page has been processed. Archived content need not be retained.
+     */
+    public synchronized void retainContent() {
+        if (contentReleaser != null) {
+            ByteBuffer copy = ByteBuffer.allocate(content.limit());
+            copy.put(content.duplicate()).flip();
+            contentReleaser.run();
+            contentReleaser = null;
+            content = copy;
+        }
+    }
+
+    /**
+     * Returns pooled content to its pool. Afterwards, the content of this page is no longer
+     * available, unless it has been retained or copied to a byte array before. This method has
+     * no effect for content which is not pooled.
+     * <p>
+     * For archived content, the memory mapping is dropped. The content will be mapped again
+     * when accessed later.
+     */
+    public synchronized void releaseContent() {
+        if (contentReleaser != null) {
+            contentReleaser.run();
+            contentReleaser = null;
+            content = (contentData == null) ? null : ByteBuffer.wrap(contentData);
+        }
+        else if (contentView != null) {
+            content = null;
+        }
+    }
+
+    private void clearContent() {
+        releaseContent();
+        content = null;
+        contentData = null;
+        contentView = null;
+        contentOffset = -1;
+        contentLength = 0;
     }
 
     /**
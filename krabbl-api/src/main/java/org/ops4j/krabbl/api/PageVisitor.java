@@ -56,6 +56,21 @@ public interface PageVisitor {
         return true;
     }
 
+    /**
+     * Gets a priority hint for a target accepted by {@link #shouldVisit(Page, WebTarget)}. With a
+     * priority frontier, targets with a higher priority are fetched earlier. Other frontiers
+     * ignore the hint.
+     *
+     * @param referringPage
+     *            page containing the link to the target
+     * @param target
+     *            target to be scheduled
+     * @return priority hint, 0 by default
+     */
+    default float getPriority(Page referringPage, WebTarget target) {
+        return 0;
+    }
+
     /**
      * Called when visiting a given web target. The target has been loaded and parsed.
      *
@@ -84,6 +99,18 @@ public interface PageVisitor {
         // empty
     }
 
+    /**
+     * Called after a conditional request when the page has not been modified since it was
+     * fetched before. The page has no content and is not parsed. The outgoing links recorded
+     * when the page was last fetched with content are followed again.
+     *
+     * @param page
+     *            partial page object with status code and response headers
+     */
+    default void onNotModified(Page page) {
+        // empty
+    }
+
     /**
      * Called after loading a page with an unexpected HTTP status code of 400 or higher.
      *
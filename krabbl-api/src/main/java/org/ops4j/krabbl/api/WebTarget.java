@@ -42,6 +42,15 @@ public interface WebTarget extends Serializable {
      */
     int getDepth();
 
+    /**
+     * Gets the priority hint of this target, as given by
+     * {@link PageVisitor#getPriority(Page, WebTarget)}. A priority frontier fetches targets with
+     * a higher priority earlier.
+     *
+     * @return priority hint, 0 by default
+     */
+    float getPriority();
+
     /**
      * Gets the registered domain part of the host name of this URL. This part is computed with
      * using the <a href="https://publicsuffix.org/">Public Suffix List</a>. The domain is composed
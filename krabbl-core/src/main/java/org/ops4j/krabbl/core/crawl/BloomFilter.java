@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter for URL fingerprints. The filter may report false positives, but never false
+ * negatives.
+ * <p>
+ * The bit positions are derived from the significant bits of the fingerprint by double hashing,
+ * so each lookup only computes a single fingerprint. This class is thread-safe and lock-free.
+ *
+ * @author Harald Wellmann
+ *
+ */
+class BloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long numBits;
+
+    private final int numHashes;
+
+    /**
+     * Creates a filter sized for the given number of elements and false positive rate.
+     *
+     * @param expectedElements
+     *            expected number of elements
+     * @param falsePositiveRate
+     *            false positive rate when the filter contains the expected number of elements
+     */
+    BloomFilter(long expectedElements, double falsePositiveRate) {
+        long n = Math.max(1, expectedElements);
+        double ln2 = Math.log(2);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.numBits = 64L * words;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * ln2));
+    }
+
+    /**
+     * Adds the given fingerprint to this filter.
+     *
+     * @param fingerprint
+     *            URL fingerprint
+     */
+    void add(long fingerprint) {
+        long hash2 = secondHash(fingerprint);
+        long hash = fingerprint >>> 2;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(hash, numBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long value = bits.get(word);
+            while ((value & mask) == 0 && !bits.compareAndSet(word, value, value | mask)) {
+                value = bits.get(word);
+            }
+            hash += hash2;
+        }
+    }
+
+    /**
+     * Checks if the given fingerprint may have been added to this filter.
+     *
+     * @param fingerprint
+     *            URL fingerprint
+     * @return false if the fingerprint has definitely not been added
+     */
+    boolean mightContain(long fingerprint) {
+        long hash2 = secondHash(fingerprint);
+        long hash = fingerprint >>> 2;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Long.remainderUnsigned(hash, numBits);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+            hash += hash2;
+        }
+        return true;
+    }
+
+    int getNumHashes() {
+        return numHashes;
+    }
+
+    long getNumBits() {
+        return numBits;
+    }
+
+    private static long secondHash(long fingerprint) {
+        long h = fingerprint * 0x9e3779b97f4a7c15L;
+        return (h ^ (h >>> 29)) | 1;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.spi.Frontier;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * Decorates a frontier with an in-memory Bloom filter of all URLs seen before.
+ * <p>
+ * Most outgoing links of a page have been seen before, but the remaining ones are usually new.
+ * For a new URL, the filter answers {@link #isSeenBefore(String)} without consulting the
+ * delegate, which is useful when lookups in the delegate are expensive, e.g. for a
+ * {@link DiskFrontier}. Only when the filter reports a possible match, the delegate is asked.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class BloomFilterFrontier implements Frontier {
+
+    private final Frontier delegate;
+
+    private final BloomFilter filter;
+
+    /**
+     * Creates a filtering frontier.
+     *
+     * @param delegate
+     *            frontier with exact seen-set
+     * @param expectedUrls
+     *            expected number of URLs in the crawl
+     * @param falsePositiveRate
+     *            rate of URLs for which the delegate is consulted although they are new, when
+     *            the crawl has reached the expected number of URLs
+     */
+    public BloomFilterFrontier(Frontier delegate, long expectedUrls, double falsePositiveRate) {
+        this.delegate = delegate;
+        this.filter = new BloomFilter(expectedUrls, falsePositiveRate);
+    }
+
+    @Override
+    public void schedule(WebTargetImpl url) {
+        filter.add(UrlFingerprint.of(url.getUrl()));
+        delegate.schedule(url);
+    }
+
+    @Override
+    public void schedule(List<WebTargetImpl> urls) {
+        urls.forEach(url -> filter.add(UrlFingerprint.of(url.getUrl())));
+        delegate.schedule(urls);
+    }
+
+    @Override
+    public WebTargetImpl getNextTarget() {
+        return delegate.getNextTarget();
+    }
+
+    @Override
+    public List<WebTargetImpl> getNextTargets(int max) {
+        return delegate.getNextTargets(max);
+    }
+
+    @Override
+    public void addInLink(WebTargetImpl target) {
+        delegate.addInLink(target);
+    }
+
+    @Override
+    public void setProcessed(WebTarget url) {
+        filter.add(UrlFingerprint.of(url.getUrl()));
+        delegate.setProcessed(url);
+    }
+
+    @Override
+    public void setProcessed(WebTarget url, long contentHash) {
+        filter.add(UrlFingerprint.of(url.getUrl()));
+        delegate.setProcessed(url, contentHash);
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return delegate.isContinuous();
+    }
+
+    @Override
+    public void setProcessing(WebTarget url) {
+        filter.add(UrlFingerprint.of(url.getUrl()));
+        delegate.setProcessing(url);
+    }
+
+    @Override
+    public long getNumberOfProcessingPages() {
+        return delegate.getNumberOfProcessingPages();
+    }
+
+    @Override
+    public long getNumberOfProcessedPages() {
+        return delegate.getNumberOfProcessedPages();
+    }
+
+    @Override
+    public long getNumberOfScheduledPages() {
+        return delegate.getNumberOfScheduledPages();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return delegate.isFinished();
+    }
+
+    @Override
+    public boolean isSeenBefore(String url) {
+        if (!filter.mightContain(UrlFingerprint.of(url))) {
+            return false;
+        }
+        return delegate.isSeenBefore(url);
+    }
+
+    @Override
+    public void writeCheckpoint(CrawlCheckpoint checkpoint, Collection<WebTargetImpl> inFlight)
+        throws IOException {
+        delegate.writeCheckpoint(checkpoint, inFlight);
+    }
+
+    @Override
+    public void restoreCheckpoint(CrawlCheckpoint checkpoint) throws IOException {
+        delegate.restoreCheckpoint(checkpoint);
+        checkpoint.readSeen(filter::add);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void finish() {
+        delegate.finish();
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import org.ops4j.krabbl.core.url.WebTargetCodec;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * Persistent checkpoint of the state of a crawl in a local directory.
+ * <p>
+ * A checkpoint consists of the following files:
+ * <ul>
+ * <li>{@code seen.bin}: the fingerprints of all URLs seen before, as a sequence of
+ * {@code long}s. This file is only appended to, so each checkpoint only writes the fingerprints
+ * added since the previous one.</li>
+ * <li>{@code pending-<i>n</i>.bin}: the targets scheduled but not yet processed, including the
+ * targets being processed at the time of the checkpoint, encoded by {@link WebTargetCodec}.</li>
+ * <li>{@code robots-<i>n</i>.bin}: the cached {@code robots.txt} directives.</li>
+ * <li>{@code checkpoint.bin}: the header with generation number <i>n</i> and the number of
+ * valid entries in the other files.</li>
+ * </ul>
+ * A checkpoint is written between {@link #begin()} and {@link #commit()}. The header is replaced
+ * atomically on commit, so a crash while writing a checkpoint leaves the previous checkpoint
+ * intact. Any data appended to {@code seen.bin} after the committed number of entries is
+ * discarded by the next checkpoint. Writers which need to know whether their data has been
+ * committed register an action with {@link #onCommit(Runnable)}.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class CrawlCheckpoint {
+
+    private static final int MAGIC = 0x4b52424c;
+
+    private static final int VERSION = 3;
+
+    private static final String HEADER_FILE = "checkpoint.bin";
+
+    private static final String SEEN_FILE = "seen.bin";
+
+    private final Path directory;
+
+    private long generation;
+
+    private long numSeen;
+
+    private long numPending;
+
+    private long timestamp;
+
+    private DataOutputStream seenOutput;
+
+    private FileChannel seenChannel;
+
+    private long seenWritten;
+
+    private DataOutputStream pendingOutput;
+
+    private FileChannel pendingChannel;
+
+    private long pendingWritten;
+
+    private DataOutputStream robotsOutput;
+
+    private FileChannel robotsChannel;
+
+    /**
+     * Actions to be run when the checkpoint in progress has been committed.
+     */
+    private final List<Runnable> commitActions = new ArrayList<>();
+
+    /**
+     * Creates a checkpoint in the given directory. Neither the directory nor any files are
+     * accessed before calling {@link #load()} or {@link #begin()}.
+     *
+     * @param directory
+     *            checkpoint directory
+     */
+    public CrawlCheckpoint(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the header of the most recent checkpoint in the directory, if any.
+     *
+     * @return true if a checkpoint exists
+     * @throws IOException
+     *             when the header cannot be read or is invalid
+     */
+    public boolean load() throws IOException {
+        Path header = directory.resolve(HEADER_FILE);
+        if (!Files.exists(header)) {
+            return false;
+        }
+        try (DataInputStream is = new DataInputStream(Files.newInputStream(header))) {
+            if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+                throw new IOException("invalid checkpoint header in " + header);
+            }
+            generation = is.readLong();
+            numSeen = is.readLong();
+            numPending = is.readLong();
+            timestamp = is.readLong();
+        }
+        return true;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getNumberOfSeenPages() {
+        return numSeen;
+    }
+
+    public long getNumberOfPendingPages() {
+        return numPending;
+    }
+
+    /**
+     * Gets the time of the most recent checkpoint.
+     *
+     * @return time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Reads the fingerprints of all URLs seen before.
+     *
+     * @param consumer
+     *            consumer for fingerprints
+     * @throws IOException
+     *             when the fingerprints cannot be read
+     */
+    public void readSeen(LongConsumer consumer) throws IOException {
+        if (numSeen == 0) {
+            return;
+        }
+        try (DataInputStream is = openInput(SEEN_FILE)) {
+            for (long i = 0; i < numSeen; i++) {
+                consumer.accept(is.readLong());
+            }
+        }
+    }
+
+    /**
+     * Reads the pending targets.
+     *
+     * @param consumer
+     *            consumer for targets
+     * @throws IOException
+     *             when the targets cannot be read
+     */
+    public void readPending(Consumer<WebTargetImpl> consumer) throws IOException {
+        if (numPending == 0) {
+            return;
+        }
+        try (DataInputStream is = openInput(pendingFile(generation))) {
+            WebTargetImpl previous = null;
+            for (long i = 0; i < numPending; i++) {
+                byte[] record = new byte[is.readInt()];
+                is.readFully(record);
+                WebTargetImpl target = WebTargetCodec.decode(ByteBuffer.wrap(record), previous);
+                consumer.accept(target);
+                previous = target;
+            }
+        }
+    }
+
+    /**
+     * Opens the stream with the cached {@code robots.txt} directives.
+     *
+     * @return input stream, or null if there are no directives
+     * @throws IOException
+     *             when the stream cannot be opened
+     */
+    public DataInputStream openRobotsInput() throws IOException {
+        String file = robotsFile(generation);
+        if (!Files.exists(directory.resolve(file))) {
+            return null;
+        }
+        return openInput(file);
+    }
+
+    /**
+     * Begins writing a new checkpoint. The checkpoint becomes effective on {@link #commit()}.
+     *
+     * @throws IOException
+     *             when the files cannot be opened
+     */
+    public void begin() throws IOException {
+        commitActions.clear();
+        Files.createDirectories(directory);
+        load();
+        seenChannel = openChannel(SEEN_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        seenChannel.truncate(numSeen * Long.BYTES);
+        seenChannel.position(numSeen * Long.BYTES);
+        seenOutput = toOutput(seenChannel);
+        seenWritten = 0;
+        pendingChannel = openChannel(pendingFile(generation + 1), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        pendingOutput = toOutput(pendingChannel);
+        pendingWritten = 0;
+    }
+
+    /**
+     * Appends the fingerprint of a URL added since the previous checkpoint.
+     *
+     * @param fingerprint
+     *            URL fingerprint
+     * @throws UncheckedIOException
+     *             when the fingerprint cannot be written
+     */
+    public void appendSeen(long fingerprint) {
+        try {
+            seenOutput.writeLong(fingerprint);
+            seenWritten++;
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Adds a pending target.
+     *
+     * @param target
+     *            web target
+     * @throws UncheckedIOException
+     *             when the target cannot be written
+     */
+    public void addPending(WebTargetImpl target) {
+        try {
+            byte[] record = WebTargetCodec.encode(target);
+            pendingOutput.writeInt(record.length);
+            pendingOutput.write(record);
+            pendingWritten++;
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Opens the stream for the cached {@code robots.txt} directives of the new checkpoint.
+     *
+     * @return output stream, to be closed by {@link #commit()}
+     * @throws IOException
+     *             when the stream cannot be opened
+     */
+    public DataOutputStream openRobotsOutput() throws IOException {
+        robotsChannel = openChannel(robotsFile(generation + 1), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        robotsOutput = toOutput(robotsChannel);
+        return robotsOutput;
+    }
+
+    /**
+     * Registers an action to be run when the checkpoint in progress has been committed. The
+     * action is not run if the checkpoint is aborted.
+     *
+     * @param action
+     *            commit action
+     */
+    public void onCommit(Runnable action) {
+        commitActions.add(action);
+    }
+
+    /**
+     * Makes the new checkpoint effective, runs the registered commit actions and deletes the
+     * files of the previous checkpoint which are no longer needed.
+     *
+     * @throws IOException
+     *             when the checkpoint cannot be written
+     */
+    public void commit() throws IOException {
+        sync(seenOutput, seenChannel);
+        sync(pendingOutput, pendingChannel);
+        sync(robotsOutput, robotsChannel);
+        release();
+
+        long previousGeneration = generation;
+        Path header = directory.resolve(HEADER_FILE);
+        Path tempHeader = directory.resolve(HEADER_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempHeader, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream os = new DataOutputStream(Channels.newOutputStream(channel));
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeLong(previousGeneration + 1);
+            os.writeLong(numSeen + seenWritten);
+            os.writeLong(pendingWritten);
+            os.writeLong(System.currentTimeMillis());
+            os.flush();
+            channel.force(true);
+        }
+        Files.move(tempHeader, header, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        load();
+        commitActions.forEach(Runnable::run);
+        commitActions.clear();
+
+        Files.deleteIfExists(directory.resolve(pendingFile(previousGeneration)));
+        Files.deleteIfExists(directory.resolve(robotsFile(previousGeneration)));
+    }
+
+    /**
+     * Abandons the new checkpoint. The previous checkpoint remains effective.
+     */
+    public void abort() {
+        commitActions.clear();
+        try {
+            release();
+        }
+        catch (IOException exc) {
+            // ignore, the files of the new checkpoint are no longer needed
+        }
+    }
+
+    private void release() throws IOException {
+        IOException failure = null;
+        for (DataOutputStream os : new DataOutputStream[] { seenOutput, pendingOutput,
+            robotsOutput }) {
+            try {
+                if (os != null) {
+                    os.close();
+                }
+            }
+            catch (IOException exc) {
+                failure = (failure == null) ? exc : failure;
+            }
+        }
+        seenOutput = null;
+        seenChannel = null;
+        pendingOutput = null;
+        pendingChannel = null;
+        robotsOutput = null;
+        robotsChannel = null;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private DataInputStream openInput(String file) throws IOException {
+        return new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(directory.resolve(file))));
+    }
+
+    private FileChannel openChannel(String file, StandardOpenOption... options)
+        throws IOException {
+        return FileChannel.open(directory.resolve(file), options);
+    }
+
+    private static DataOutputStream toOutput(FileChannel channel) {
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    private static void sync(DataOutputStream os, FileChannel channel) throws IOException {
+        if (os != null) {
+            os.flush();
+            channel.force(true);
+        }
+    }
+
+    private static String pendingFile(long generation) {
+        return String.format("pending-%d.bin", generation);
+    }
+
+    private static String robotsFile(long generation) {
+        return String.format("robots-%d.bin", generation);
+    }
+}
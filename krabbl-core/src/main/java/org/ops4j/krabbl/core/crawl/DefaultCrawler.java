@@ -17,19 +17,27 @@
  */
 package org.ops4j.krabbl.core.crawl;
 
-import static java.util.stream.Collectors.toList;
-
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.ops4j.krabbl.api.Crawler;
 import org.ops4j.krabbl.api.CrawlerConfiguration;
 import org.ops4j.krabbl.api.Page;
 import org.ops4j.krabbl.api.PageVisitor;
+import org.ops4j.krabbl.core.fetch.PolitenessScheduler;
 import org.ops4j.krabbl.core.spi.Frontier;
 import org.ops4j.krabbl.core.url.WebTargetBuilder;
 import org.ops4j.krabbl.core.url.WebTargetImpl;
@@ -44,6 +52,11 @@ public class DefaultCrawler implements Crawler {
 
     private static Logger logger = LoggerFactory.getLogger(DefaultCrawler.class);
 
+    /**
+     * Maximum time the crawl loop waits for a completed page before checking for shutdown.
+     */
+    private static final long POLL_TIMEOUT_MILLIS = 500;
+
     private CrawlerConfiguration config;
 
     private ScheduledExecutorService executor;
@@ -56,20 +69,68 @@ public class DefaultCrawler implements Crawler {
 
     private List<WebTargetImpl> seeds;
 
-    private boolean shuttingDown;
+    private volatile boolean shuttingDown;
+
+    private boolean resuming;
 
-    private BlockingQueue<CompletableFuture<Page>> queue = new LinkedBlockingQueue<>();
+    /**
+     * Pages currently being loaded, mapped to their targets. This map is only accessed by the
+     * crawl loop, and its size is bounded by the maximum number of concurrent fetches. All other
+     * scheduled targets are kept by the frontier.
+     */
+    private Map<CompletableFuture<Page>, WebTargetImpl> inFlight = new HashMap<>();
+
+    /**
+     * Loaded pages in order of completion, waiting to be handled by the crawl loop.
+     */
+    private BlockingQueue<CompletableFuture<Page>> completed = new LinkedBlockingQueue<>();
 
     private PageVisitor visitor;
 
+    private PolitenessScheduler politenessScheduler;
+
+    private ThreadPerFetchExecutor threadPerFetchExecutor;
+
+    /**
+     * Checkpoint of this crawler, or null if checkpoints are disabled.
+     */
+    private CrawlCheckpoint checkpoint;
+
+    private long lastCheckpointNanos;
+
+    /**
+     * Creates a crawler.
+     *
+     * @param config
+     *            crawler configuration
+     * @param executor
+     *            executor for all background tasks
+     * @param frontier
+     *            frontier of this crawler
+     * @param pageProcessor
+     *            page processor
+     * @param visitor
+     *            page visitor
+     * @param politenessScheduler
+     *            shared politeness scheduler
+     * @param threadPerFetchExecutor
+     *            executor for running each blocking fetch on a thread of its own, or null to
+     *            fetch pages via the given executor.
+     */
     public DefaultCrawler(CrawlerConfiguration config,
-        ScheduledExecutorService executor, Frontier frontier, PageProcessor pageProcessor, PageVisitor visitor) {
+        ScheduledExecutorService executor, Frontier frontier, PageProcessor pageProcessor, PageVisitor visitor,
+        PolitenessScheduler politenessScheduler, ThreadPerFetchExecutor threadPerFetchExecutor) {
         this.config = config;
         this.executor = executor;
         this.frontier = frontier;
         this.pageProcessor = pageProcessor;
         this.visitor = visitor;
+        this.politenessScheduler = politenessScheduler;
+        this.threadPerFetchExecutor = threadPerFetchExecutor;
         this.seeds = new ArrayList<>();
+        if (config.getCheckpointFolder() != null) {
+            this.checkpoint = new CrawlCheckpoint(Paths.get(config.getCheckpointFolder()));
+        }
     }
 
     @Override
@@ -109,44 +170,180 @@ public class DefaultCrawler implements Crawler {
         future = CompletableFuture.runAsync(this::execute, executor);
     }
 
+    @Override
+    public void resume() {
+        if (checkpoint == null) {
+            throw new IllegalStateException("Cannot resume without checkpoint folder");
+        }
+        resuming = true;
+        start();
+    }
+
+    /**
+     * Runs the crawl loop. The loop handles loaded pages in order of completion, so a slow page
+     * does not hold back the outgoing links of pages completed after it.
+     * <p>
+     * With a continuous frontier, the loop keeps polling the frontier for due targets until the
+     * crawler is shut down.
+     */
     private void execute() {
-        visitor.onStart();
-        schedule(seeds);
-        CompletableFuture<Page> futurePage = null;
-        while ((futurePage = queue.poll()) != null) {
-            completeOnePage(futurePage);
+        try {
+            visitor.onStart();
+            if (!(resuming && restoreCheckpoint())) {
+                schedule(seeds);
+            }
+            lastCheckpointNanos = System.nanoTime();
+            fillQueue();
+            boolean cancelled = false;
+            boolean continuous = frontier.isContinuous();
+            while (!inFlight.isEmpty() || (continuous && !cancelled)) {
+                CompletableFuture<Page> futurePage = awaitCompletedPage();
+                boolean stopping = shuttingDown;
+                if (stopping && !cancelled) {
+                    // pages not handled yet are saved as pending
+                    writeCheckpoint();
+                    cancelPages();
+                    cancelled = true;
+                }
+                if (futurePage != null) {
+                    inFlight.remove(futurePage);
+                    if (!stopping) {
+                        completeOnePage(futurePage);
+                    }
+                }
+                if (!stopping) {
+                    fillQueue();
+                    if (isCheckpointDue()) {
+                        writeCheckpoint();
+                    }
+                }
+            }
+            visitor.onBeforeExit();
+            assert frontier.isFinished() || shuttingDown;
+        }
+        finally {
+            // pages still being parsed update the frontier
+            pageProcessor.close();
+            frontier.close();
         }
-        visitor.onBeforeExit();
-        assert frontier.isFinished() || shuttingDown;
     }
 
-    private void completeOnePage(CompletableFuture<Page> futurePage) {
-        if (shuttingDown) {
-            cancelOrWaitForPage(futurePage);
+    private boolean restoreCheckpoint() {
+        try {
+            if (!checkpoint.load()) {
+                logger.info("no checkpoint in {}, starting from seeds",
+                    config.getCheckpointFolder());
+                return false;
+            }
+            frontier.restoreCheckpoint(checkpoint);
+            try (DataInputStream is = checkpoint.openRobotsInput()) {
+                if (is != null) {
+                    pageProcessor.getRobotsControl().restoreCheckpoint(is);
+                }
+            }
         }
-        else {
-            processAndWaitForPage(futurePage);
+        catch (IOException | UncheckedIOException exc) {
+            throw new IllegalStateException(
+                "cannot restore checkpoint from " + config.getCheckpointFolder(), exc);
         }
+        logger.info("resuming from checkpoint {} with {} pending pages of {} total",
+            checkpoint.getGeneration(), checkpoint.getNumberOfPendingPages(),
+            frontier.getNumberOfScheduledPages());
+        return true;
     }
 
-    private void cancelOrWaitForPage(CompletableFuture<Page> futurePage) {
-        futurePage.complete(null);
-        futurePage.join();
+    private boolean isCheckpointDue() {
+        return checkpoint != null && System.nanoTime()
+            - lastCheckpointNanos >= TimeUnit.SECONDS.toNanos(config.getCheckpointInterval());
     }
 
-    private void processAndWaitForPage(CompletableFuture<Page> futurePage) {
-        futurePage.thenApply(pageProcessor::handleOutgoingLinks).thenAccept(this::schedule).join();
+    /**
+     * Writes a checkpoint, if enabled, and saves the validator store along with it. Failures are
+     * logged, and crawling continues.
+     */
+    private void writeCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        lastCheckpointNanos = System.nanoTime();
+        try {
+            checkpoint.begin();
+            frontier.writeCheckpoint(checkpoint, inFlight.values());
+            pageProcessor.getRobotsControl().writeCheckpoint(checkpoint.openRobotsOutput());
+            checkpoint.commit();
+            logger.info("wrote checkpoint {} with {} pending pages", checkpoint.getGeneration(),
+                checkpoint.getNumberOfPendingPages());
+        }
+        catch (IOException | UncheckedIOException exc) {
+            checkpoint.abort();
+            logger.error("cannot write checkpoint to " + config.getCheckpointFolder(), exc);
+        }
+        try {
+            pageProcessor.saveValidatorStore();
+        }
+        catch (IOException exc) {
+            logger.error("cannot save validator store", exc);
+        }
+    }
+
+    private CompletableFuture<Page> awaitCompletedPage() {
+        try {
+            return completed.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            shutdown();
+            return null;
+        }
+    }
+
+    private void completeOnePage(CompletableFuture<Page> futurePage) {
+        Page page;
+        try {
+            page = futurePage.join();
+        }
+        catch (CompletionException | CancellationException exc) {
+            logger.warn("Failed to load page", exc);
+            return;
+        }
+        schedule(pageProcessor.handleOutgoingLinks(page));
         logger.info("processed {} pages of {} total", frontier.getNumberOfProcessedPages(),
             frontier.getNumberOfScheduledPages());
     }
 
+    /**
+     * Stops waiting for any pages still being loaded. Running tasks will still complete in the
+     * background, but their outgoing links will be ignored.
+     */
+    private void cancelPages() {
+        for (CompletableFuture<Page> futurePage : inFlight.keySet()) {
+            futurePage.complete(null);
+        }
+    }
+
     public void schedule(List<WebTargetImpl> targets) {
         List<WebTargetImpl> newTargets = truncateToMax(targets);
         if (!newTargets.isEmpty()) {
-            List<CompletableFuture<Page>> pages = newTargets.stream().map(this::asyncLoad)
-                .collect(toList());
             frontier.schedule(newTargets);
-            queue.addAll(pages);
+        }
+    }
+
+    /**
+     * Starts loading more targets from the frontier, as long as the number of pages being
+     * loaded is below the maximum number of concurrent fetches. While the parse stage is
+     * saturated, no more targets are loaded, unless there are no pages in flight at all.
+     */
+    private void fillQueue() {
+        if (shuttingDown || !(inFlight.isEmpty() || pageProcessor.canAcceptPages())) {
+            return;
+        }
+        int freeSlots = config.getMaxConcurrentFetches() - inFlight.size();
+        if (freeSlots > 0) {
+            for (WebTargetImpl target : frontier.getNextTargets(freeSlots)) {
+                CompletableFuture<Page> futurePage = asyncLoad(target);
+                inFlight.put(futurePage, target);
+                futurePage.whenComplete((page, exc) -> completed.add(futurePage));
+            }
         }
     }
 
@@ -154,7 +351,8 @@ public class DefaultCrawler implements Crawler {
         List<WebTargetImpl> newTargets = targets;
         int max = config.getMaxPagesToFetch();
         if (max >= 0) {
-            max = config.getMaxPagesToFetch() - (int) frontier.getNumberOfScheduledPages();
+            max = Math.max(0,
+                config.getMaxPagesToFetch() - (int) frontier.getNumberOfScheduledPages());
             if (newTargets.size() > max) {
                 newTargets = newTargets.subList(0, max);
             }
@@ -162,7 +360,35 @@ public class DefaultCrawler implements Crawler {
         return newTargets;
     }
 
+    /**
+     * Loads the given target asynchronously. The target is fetched only when its host is due
+     * according to the politeness delay, so no executor thread is blocked while waiting for a
+     * busy host. In thread per fetch mode, the page is fetched on a thread of its own, which
+     * reserves the time slot of the host only when the task has been started, after waiting
+     * for the task limits. Either way, the page is parsed by the parse stage.
+     */
     private CompletableFuture<Page> asyncLoad(WebTargetImpl target) {
-        return CompletableFuture.supplyAsync(() -> pageProcessor.processPage(target), executor);
+        String host = PolitenessScheduler.getHost(target.getUrl());
+        if (threadPerFetchExecutor != null) {
+            return threadPerFetchExecutor.submit(host, () -> {
+                awaitDue(host);
+                return pageProcessor.processPage(target);
+            }).thenCompose(futurePage -> futurePage);
+        }
+        return politenessScheduler.whenDue(host)
+            .thenCompose(d -> pageProcessor.processPageAsync(target, executor));
+    }
+
+    /**
+     * Waits for the time slot of the given host on the current fetch thread. When interrupted,
+     * the page is still processed, so that the frontier keeps track of it.
+     */
+    private void awaitDue(String host) {
+        try {
+            politenessScheduler.awaitDue(host);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
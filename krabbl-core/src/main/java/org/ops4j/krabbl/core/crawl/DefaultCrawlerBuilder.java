@@ -18,8 +18,13 @@
 package org.ops4j.krabbl.core.crawl;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.ops4j.krabbl.api.Crawler;
 import org.ops4j.krabbl.api.CrawlerBuilder;
@@ -27,8 +32,15 @@ import org.ops4j.krabbl.api.CrawlerConfiguration;
 import org.ops4j.krabbl.api.HttpClientConfiguration;
 import org.ops4j.krabbl.api.PageVisitor;
 import org.ops4j.krabbl.api.RobotsConfiguration;
+import org.ops4j.krabbl.core.fetch.AsyncPageFetcher;
+import org.ops4j.krabbl.core.fetch.ContentArchive;
 import org.ops4j.krabbl.core.fetch.PageFetcher;
+import org.ops4j.krabbl.core.fetch.PolitenessScheduler;
+import org.ops4j.krabbl.core.fetch.ValidatorStore;
 import org.ops4j.krabbl.core.robots.RobotsControl;
+import org.ops4j.krabbl.core.spi.Frontier;
+import org.ops4j.krabbl.core.spi.TargetScorer;
+import org.ops4j.krabbl.core.warc.WarcWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +60,26 @@ public class DefaultCrawlerBuilder extends CrawlerBuilder  {
 
     private PageFetcher pageFetcher;
 
+    private PolitenessScheduler politenessScheduler;
+
+    private boolean virtualThreads;
+
+    private int maxFetchThreads = 1000;
+
+    private int maxFetchThreadsPerHost = 2;
+
+    private ThreadPerFetchExecutor threadPerFetchExecutor;
+
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+
+    private int parseQueueCapacity;
+
+    private ParseStage parseStage;
+
+    private TargetScorer targetScorer;
+
+    private int maxTargetsPerHost = PriorityFrontier.DEFAULT_MAX_TARGETS_PER_HOST;
+
     private boolean closed;
 
     private synchronized ScheduledExecutorService getExecutor() {
@@ -62,6 +94,87 @@ public class DefaultCrawlerBuilder extends CrawlerBuilder  {
         this.executor = executor;
     }
 
+    /**
+     * Runs each blocking page fetch on a virtual thread of its own. This option should be combined
+     * with sufficiently large connection limits in the HTTP client configuration.
+     * <p>
+     * If the JVM does not support virtual threads, a pool of {@link #setMaxFetchThreads(int)}
+     * platform threads is used instead.
+     *
+     * @param virtualThreads
+     *            use virtual threads for fetching?
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Sets the maximum number of concurrent fetch threads for all crawlers. Only applies with
+     * virtual threads enabled.
+     *
+     * @param maxFetchThreads
+     *            maximum number of fetch threads
+     */
+    public void setMaxFetchThreads(int maxFetchThreads) {
+        this.maxFetchThreads = maxFetchThreads;
+    }
+
+    /**
+     * Sets the maximum number of concurrent fetch threads for the same host. Only applies with
+     * virtual threads enabled.
+     *
+     * @param maxFetchThreadsPerHost
+     *            maximum number of fetch threads per host
+     */
+    public void setMaxFetchThreadsPerHost(int maxFetchThreadsPerHost) {
+        this.maxFetchThreadsPerHost = maxFetchThreadsPerHost;
+    }
+
+    /**
+     * Sets the number of threads for parsing and visiting fetched pages, shared by all crawlers.
+     * The default is the number of available processors.
+     *
+     * @param parseThreads
+     *            number of parse threads
+     */
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * Sets the maximum number of fetched pages waiting for or being parsed. When this limit is
+     * reached, crawlers stop fetching new pages until a page has been parsed. The default is
+     * four times the number of parse threads.
+     *
+     * @param parseQueueCapacity
+     *            maximum number of pages in the parse stage
+     */
+    public void setParseQueueCapacity(int parseQueueCapacity) {
+        this.parseQueueCapacity = parseQueueCapacity;
+    }
+
+    /**
+     * Sets a scorer for ordering scheduled targets. When set, crawlers use a
+     * {@link PriorityFrontier} kept in memory, even if a crawl storage folder is configured.
+     *
+     * @param targetScorer
+     *            target scorer, or null for crawling in order of discovery
+     */
+    public void setTargetScorer(TargetScorer targetScorer) {
+        this.targetScorer = targetScorer;
+    }
+
+    /**
+     * Sets the maximum number of pending targets per host. Only applies with a target scorer.
+     * Targets with the lowest score are dropped when this limit is exceeded.
+     *
+     * @param maxTargetsPerHost
+     *            maximum number of pending targets per host
+     */
+    public void setMaxTargetsPerHost(int maxTargetsPerHost) {
+        this.maxTargetsPerHost = maxTargetsPerHost;
+    }
+
     @Override
     public void setHttpClientConfiguration(HttpClientConfiguration httpClientConfiguration) {
         this.httpClientConfiguration = httpClientConfiguration;
@@ -74,11 +187,93 @@ public class DefaultCrawlerBuilder extends CrawlerBuilder  {
 
     @Override
     public Crawler newCrawler(CrawlerConfiguration config, PageVisitor pageVisitor) {
-        RobotsControl robotsControl = new RobotsControl(getRobotsConfiguration(), getPageFetcher());
-        InMemoryFrontier frontier = new InMemoryFrontier();
+        RobotsControl robotsControl = new RobotsControl(getRobotsConfiguration(), getPageFetcher(),
+            getPolitenessScheduler());
+        Frontier frontier = createFrontier(config);
         PageProcessor pageProcessor = new PageProcessor(config, pageVisitor, frontier,
-            getPageFetcher(), robotsControl);
-        return new DefaultCrawler(config, getExecutor(), frontier, pageProcessor, pageVisitor);
+            getPageFetcher(), robotsControl, getParseStage(), createContentArchive(config));
+        pageProcessor.setWarcWriter(createWarcWriter(config));
+        pageProcessor.setValidatorStore(loadValidatorStore(config));
+        return new DefaultCrawler(config, getExecutor(), frontier, pageProcessor, pageVisitor,
+            getPolitenessScheduler(), getThreadPerFetchExecutor());
+    }
+
+    private ContentArchive createContentArchive(CrawlerConfiguration config) {
+        if (config.getArchiveFolder() == null) {
+            return null;
+        }
+        try {
+            return new ContentArchive(Paths.get(config.getArchiveFolder()),
+                config.getArchiveSegmentSize());
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot create content archive in "
+                + config.getArchiveFolder(), exc);
+        }
+    }
+
+    private WarcWriter createWarcWriter(CrawlerConfiguration config) {
+        if (config.getWarcFolder() == null) {
+            return null;
+        }
+        try {
+            return new WarcWriter(Paths.get(config.getWarcFolder()), config.getWarcSegmentSize(),
+                config.getWarcQueueCapacity());
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot create WARC writer in "
+                + config.getWarcFolder(), exc);
+        }
+    }
+
+    private ValidatorStore loadValidatorStore(CrawlerConfiguration config) {
+        if (config.getValidatorStoreFile() == null) {
+            return null;
+        }
+        try {
+            return ValidatorStore.open(Paths.get(config.getValidatorStoreFile()));
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot open validator store "
+                + config.getValidatorStoreFile(), exc);
+        }
+    }
+
+    private Frontier createFrontier(CrawlerConfiguration config) {
+        Frontier frontier = createExactFrontier(config);
+        if (config.getSeenFilterExpectedUrls() > 0) {
+            frontier = new BloomFilterFrontier(frontier, config.getSeenFilterExpectedUrls(),
+                config.getSeenFilterFalsePositiveRate());
+        }
+        return frontier;
+    }
+
+    private Frontier createExactFrontier(CrawlerConfiguration config) {
+        if (config.isContinuous()) {
+            if (targetScorer != null || config.getCrawlStorageFolder() != null) {
+                logger.warn("continuous crawl uses an in-memory recrawl frontier, ignoring the "
+                    + "target scorer and crawl storage folder");
+            }
+            return new RecrawlFrontier(
+                TimeUnit.SECONDS.toMillis(config.getInitialRevisitInterval()),
+                TimeUnit.SECONDS.toMillis(config.getMinRevisitInterval()),
+                TimeUnit.SECONDS.toMillis(config.getMaxRevisitInterval()));
+        }
+        if (targetScorer != null) {
+            return new PriorityFrontier(targetScorer, maxTargetsPerHost);
+        }
+        if (config.getCrawlStorageFolder() == null) {
+            return new InMemoryFrontier();
+        }
+        try {
+            Path storageFolder = Paths.get(config.getCrawlStorageFolder());
+            Files.createDirectories(storageFolder);
+            return new DiskFrontier(Files.createTempDirectory(storageFolder, "frontier-"));
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot create frontier in "
+                + config.getCrawlStorageFolder(), exc);
+        }
     }
 
     @Override
@@ -103,11 +298,42 @@ public class DefaultCrawlerBuilder extends CrawlerBuilder  {
     private synchronized PageFetcher getPageFetcher() {
         requireOpen();
         if (pageFetcher == null) {
-            pageFetcher = new PageFetcher(getHttpClientConfiguration());
+            HttpClientConfiguration clientConfig = getHttpClientConfiguration();
+            if (clientConfig.isAsyncClient()) {
+                pageFetcher = new AsyncPageFetcher(clientConfig);
+            }
+            else {
+                pageFetcher = new PageFetcher(clientConfig);
+            }
         }
         return pageFetcher;
     }
 
+    private synchronized PolitenessScheduler getPolitenessScheduler() {
+        requireOpen();
+        if (politenessScheduler == null) {
+            politenessScheduler = new PolitenessScheduler(getExecutor(),
+                getHttpClientConfiguration().getPolitenessDelay());
+        }
+        return politenessScheduler;
+    }
+
+    private synchronized ThreadPerFetchExecutor getThreadPerFetchExecutor() {
+        if (virtualThreads && threadPerFetchExecutor == null) {
+            threadPerFetchExecutor = new ThreadPerFetchExecutor(maxFetchThreads,
+                maxFetchThreadsPerHost);
+        }
+        return threadPerFetchExecutor;
+    }
+
+    private synchronized ParseStage getParseStage() {
+        if (parseStage == null) {
+            int capacity = (parseQueueCapacity > 0) ? parseQueueCapacity : 4 * parseThreads;
+            parseStage = new ParseStage(parseThreads, capacity);
+        }
+        return parseStage;
+    }
+
     public void requireOpen() {
         if (closed) {
             throw new IllegalStateException("DefaultCrawlerBuilder is closed");
@@ -120,6 +346,12 @@ public class DefaultCrawlerBuilder extends CrawlerBuilder  {
             return;
         }
         this.closed = true;
+        if (threadPerFetchExecutor != null) {
+            threadPerFetchExecutor.shutdown();
+        }
+        if (parseStage != null) {
+            parseStage.shutdown();
+        }
         if (pageFetcher != null) {
             try {
                 pageFetcher.close();
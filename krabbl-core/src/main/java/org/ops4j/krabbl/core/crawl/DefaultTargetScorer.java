@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.spi.TargetScorer;
+
+/**
+ * Default scorer, preferring targets with a high priority hint, many in-links and a low depth.
+ * Each level of depth costs as much as doubling the number of in-links gains.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class DefaultTargetScorer implements TargetScorer {
+
+    @Override
+    public double score(WebTarget target, int inLinks) {
+        double linkScore = Math.log(1 + inLinks) / Math.log(2);
+        return target.getPriority() + linkScore - target.getDepth();
+    }
+}
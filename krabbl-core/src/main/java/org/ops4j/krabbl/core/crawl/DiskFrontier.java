@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.spi.Frontier;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * Frontier for large crawls, keeping its state on disk instead of the heap.
+ * <p>
+ * Scheduled targets are queued in memory-mapped segment files, and the set of targets seen
+ * before is a memory-mapped hash table of URL fingerprints. The heap only holds the mappings of
+ * the current head and tail segments. All files are deleted when the frontier is closed.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class DiskFrontier implements Frontier {
+
+    /**
+     * Default size of queue segment files (64 MiB).
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Default initial number of slots of the seen-set (2^20, i.e. 8 MiB).
+     */
+    public static final long DEFAULT_INITIAL_CAPACITY = 1L << 20;
+
+    private final Path directory;
+
+    private final MappedTargetQueue queue;
+
+    private final MappedFingerprintSet seen;
+
+    private AtomicLong numProcessed = new AtomicLong();
+    private AtomicLong numProcessing = new AtomicLong();
+
+    /**
+     * Creates a disk frontier with default sizes in the given directory.
+     *
+     * @param directory
+     *            directory for the frontier files. The directory will be created if needed. It
+     *            should not be shared with other frontiers.
+     */
+    public DiskFrontier(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a disk frontier in the given directory.
+     *
+     * @param directory
+     *            directory for the frontier files. The directory will be created if needed. It
+     *            should not be shared with other frontiers.
+     * @param segmentSize
+     *            size of queue segment files in bytes
+     * @param initialCapacity
+     *            initial number of slots of the seen-set
+     */
+    public DiskFrontier(Path directory, int segmentSize, long initialCapacity) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            this.queue = new MappedTargetQueue(directory, segmentSize);
+            this.seen = new MappedFingerprintSet(directory, initialCapacity);
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot create frontier in " + directory, exc);
+        }
+    }
+
+    @Override
+    public void setProcessed(WebTarget url) {
+        markSeen(url.getUrl());
+        numProcessing.decrementAndGet();
+        numProcessed.incrementAndGet();
+    }
+
+    @Override
+    public void setProcessing(WebTarget url) {
+        markSeen(url.getUrl());
+        numProcessing.incrementAndGet();
+    }
+
+    @Override
+    public long getNumberOfProcessingPages() {
+        return numProcessing.get();
+    }
+
+    @Override
+    public long getNumberOfProcessedPages() {
+        return numProcessed.get();
+    }
+
+    @Override
+    public long getNumberOfScheduledPages() {
+        return seen.size();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return (numProcessing.get() == 0) && (numProcessed.get() == seen.size());
+    }
+
+    @Override
+    public boolean isSeenBefore(String url) {
+        return seen.contains(UrlFingerprint.of(url));
+    }
+
+    @Override
+    public void schedule(WebTargetImpl url) {
+        if (markSeen(url.getUrl())) {
+            synchronized (queue) {
+                try {
+                    queue.add(url);
+                }
+                catch (IOException exc) {
+                    throw new UncheckedIOException("cannot schedule " + url, exc);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void schedule(List<WebTargetImpl> urls) {
+        urls.forEach(this::schedule);
+    }
+
+    @Override
+    public WebTargetImpl getNextTarget() {
+        synchronized (queue) {
+            try {
+                return queue.poll();
+            }
+            catch (IOException exc) {
+                throw new UncheckedIOException("cannot read frontier in " + directory, exc);
+            }
+        }
+    }
+
+    @Override
+    public void writeCheckpoint(CrawlCheckpoint checkpoint, Collection<WebTargetImpl> inFlight)
+        throws IOException {
+        seen.writeAdded(checkpoint::appendSeen);
+        checkpoint.onCommit(seen::commitAdded);
+        inFlight.forEach(checkpoint::addPending);
+        synchronized (queue) {
+            queue.forEach(checkpoint::addPending);
+        }
+    }
+
+    @Override
+    public void restoreCheckpoint(CrawlCheckpoint checkpoint) throws IOException {
+        checkpoint.readSeen(this::markSeen);
+        synchronized (queue) {
+            checkpoint.readPending(target -> {
+                markSeen(target.getUrl());
+                try {
+                    queue.add(target);
+                }
+                catch (IOException exc) {
+                    throw new UncheckedIOException("cannot schedule " + target, exc);
+                }
+            });
+        }
+        seen.startJournal();
+        numProcessed.set(seen.size() - checkpoint.getNumberOfPendingPages());
+    }
+
+    /**
+     * Closes the frontier and deletes its files. The directory is deleted as well, unless it
+     * contains other files.
+     */
+    @Override
+    public void close() {
+        try {
+            synchronized (queue) {
+                queue.close();
+            }
+            seen.close();
+            if (isEmpty(directory)) {
+                Files.delete(directory);
+            }
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot close frontier in " + directory, exc);
+        }
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return !files.findAny().isPresent();
+        }
+    }
+
+    private boolean markSeen(String url) {
+        return markSeen(UrlFingerprint.of(url));
+    }
+
+    private boolean markSeen(long fingerprint) {
+        try {
+            return seen.add(fingerprint);
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot grow seen-set in " + directory, exc);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Records the fingerprints added to a seen-set since the last committed checkpoint, so that
+ * checkpoints only need to append these fingerprints.
+ * <p>
+ * Written fingerprints are only discarded when the checkpoint has been committed. If the
+ * checkpoint is aborted, the next checkpoint writes them again.
+ * <p>
+ * This class is not thread-safe. It is guarded by the lock of the owning seen-set.
+ *
+ * @author Harald Wellmann
+ *
+ */
+class FingerprintJournal {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Number of fingerprints at the start of the journal passed to the checkpoint in progress.
+     */
+    private int numWritten;
+
+    void add(long fingerprint) {
+        if (size == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, 2 * size);
+        }
+        fingerprints[size++] = fingerprint;
+    }
+
+    /**
+     * Passes all recorded fingerprints to the given consumer. The fingerprints are kept until
+     * {@link #discardWritten()} is called.
+     *
+     * @param consumer
+     *            consumer for fingerprints
+     */
+    void write(LongConsumer consumer) {
+        numWritten = 0;
+        for (int i = 0; i < size; i++) {
+            consumer.accept(fingerprints[i]);
+        }
+        numWritten = size;
+    }
+
+    /**
+     * Discards the fingerprints passed to the most recent {@link #write(LongConsumer)}, after the
+     * checkpoint has been committed. Fingerprints added in the meantime are kept.
+     */
+    void discardWritten() {
+        size -= numWritten;
+        if (size == 0 && fingerprints.length > INITIAL_CAPACITY) {
+            fingerprints = new long[INITIAL_CAPACITY];
+        }
+        else {
+            System.arraycopy(fingerprints, numWritten, fingerprints, 0, size);
+        }
+        numWritten = 0;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.util.function.LongConsumer;
+
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+
+/**
+ * Maps URL fingerprints to page status, using open addressing with linear probing in a
+ * {@code long[]}.
+ * <p>
+ * Each entry holds the fingerprint in its upper 62 bits and the page status in the lowest 2
+ * bits, which are always 0 in a fingerprint, so a URL takes 8 bytes, plus the free slots. An
+ * entry of 0 marks an empty slot, which cannot collide with a stored entry, since all status
+ * codes are non-zero.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+class FingerprintTable {
+
+    private static final long STATUS_MASK = UrlFingerprint.FLAG_MASK;
+
+    private static final PageStatus[] STATUS_VALUES = PageStatus.values();
+
+    private long[] entries;
+
+    private int size;
+
+    private FingerprintJournal journal;
+
+    /**
+     * Whether the fingerprints written before starting the journal have been committed.
+     */
+    private boolean journalCommitted;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param initialCapacity
+     *            initial number of slots, will be rounded up to a power of 2
+     */
+    FingerprintTable(int initialCapacity) {
+        entries = new long[Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1];
+    }
+
+    /**
+     * Sets the status of the given fingerprint.
+     *
+     * @param fingerprint
+     *            fingerprint
+     * @param status
+     *            new status
+     */
+    synchronized void put(long fingerprint, PageStatus status) {
+        int slot = find(fingerprint);
+        if (entries[slot] == 0) {
+            insert(slot, fingerprint, status);
+        }
+        else {
+            entries[slot] = entry(fingerprint, status);
+        }
+    }
+
+    /**
+     * Sets the status of the given fingerprint if it is not contained yet.
+     *
+     * @param fingerprint
+     *            fingerprint
+     * @param status
+     *            new status
+     * @return true if the fingerprint was added, false if it was contained already
+     */
+    synchronized boolean putIfAbsent(long fingerprint, PageStatus status) {
+        int slot = find(fingerprint);
+        if (entries[slot] != 0) {
+            return false;
+        }
+        insert(slot, fingerprint, status);
+        return true;
+    }
+
+    /**
+     * Gets the status of the given fingerprint.
+     *
+     * @param fingerprint
+     *            fingerprint
+     * @return status, or null if the fingerprint is not contained
+     */
+    synchronized PageStatus get(long fingerprint) {
+        long entry = entries[find(fingerprint)];
+        return (entry == 0) ? null : STATUS_VALUES[(int) (entry & STATUS_MASK) - 1];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Passes the fingerprints added since the last committed checkpoint to the given consumer.
+     * Until the first checkpoint has been committed, all fingerprints in the table are passed.
+     *
+     * @param consumer
+     *            consumer for fingerprints without status bits
+     */
+    synchronized void writeAdded(LongConsumer consumer) {
+        if (journal != null && journalCommitted) {
+            journal.write(consumer);
+            return;
+        }
+        for (long entry : entries) {
+            if (entry != 0) {
+                consumer.accept(entry & ~STATUS_MASK);
+            }
+        }
+        journal = new FingerprintJournal();
+    }
+
+    /**
+     * Discards the fingerprints passed to the most recent {@link #writeAdded(LongConsumer)}, after
+     * the checkpoint has been committed.
+     */
+    synchronized void commitAdded() {
+        if (journal != null) {
+            journal.discardWritten();
+            journalCommitted = true;
+        }
+    }
+
+    /**
+     * Starts recording added fingerprints from now on, assuming that all fingerprints in the
+     * table have been saved already.
+     */
+    synchronized void startJournal() {
+        journal = new FingerprintJournal();
+        journalCommitted = true;
+    }
+
+    private void insert(int slot, long fingerprint, PageStatus status) {
+        entries[slot] = entry(fingerprint, status);
+        size++;
+        if (journal != null) {
+            journal.add(fingerprint & ~STATUS_MASK);
+        }
+        if (size > entries.length - (entries.length >>> 2)) {
+            grow();
+        }
+    }
+
+    /**
+     * Finds the slot containing the given fingerprint, or the empty slot where it should be
+     * inserted.
+     */
+    private int find(long fingerprint) {
+        long key = fingerprint & ~STATUS_MASK;
+        int mask = entries.length - 1;
+        int slot = (int) (key >>> 32 ^ key >>> 2) & mask;
+        long entry;
+        while ((entry = entries[slot]) != 0 && (entry & ~STATUS_MASK) != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldEntries = entries;
+        entries = new long[2 * oldEntries.length];
+        for (long entry : oldEntries) {
+            if (entry != 0) {
+                entries[find(entry)] = entry;
+            }
+        }
+    }
+
+    private static long entry(long fingerprint, PageStatus status) {
+        return (fingerprint & ~STATUS_MASK) | (status.ordinal() + 1);
+    }
+}
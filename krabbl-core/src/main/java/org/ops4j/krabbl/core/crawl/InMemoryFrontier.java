@@ -17,30 +17,41 @@
  */
 package org.ops4j.krabbl.core.crawl;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.ops4j.krabbl.api.WebTarget;
 import org.ops4j.krabbl.core.spi.Frontier;
-import org.ops4j.krabbl.core.url.WebTargetBuilder;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
 import org.ops4j.krabbl.core.url.WebTargetImpl;
 
 /**
+ * Frontier keeping all crawl state on the heap.
+ * <p>
+ * The status of each page is stored with the fingerprint of its URL in a primitive hash table,
+ * so the frontier does not keep any targets alive except for those in the queue.
+ *
  * @author Harald Wellmann
  *
  */
 public class InMemoryFrontier implements Frontier {
 
-    private Map<WebTarget, PageStatus> pageMap = new ConcurrentHashMap<>();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private FingerprintTable pageStatus = new FingerprintTable(INITIAL_CAPACITY);
+
+    private Queue<WebTargetImpl> queue = new ConcurrentLinkedQueue<>();
 
     private AtomicLong numProcessed = new AtomicLong();
     private AtomicLong numProcessing = new AtomicLong();
 
     @Override
     public void setProcessed(WebTarget url) {
-        pageMap.put(url, PageStatus.PROCESSED);
+        pageStatus.put(UrlFingerprint.of(url.getUrl()), PageStatus.PROCESSED);
         numProcessing.decrementAndGet();
         numProcessed.incrementAndGet();
 
@@ -58,33 +69,57 @@ public class InMemoryFrontier implements Frontier {
 
     @Override
     public long getNumberOfScheduledPages() {
-        return pageMap.size();
+        return pageStatus.size();
     }
 
     @Override
     public boolean isFinished() {
-        return (numProcessing.get() == 0) && (numProcessed.get() == pageMap.size());
+        return (numProcessing.get() == 0) && (numProcessed.get() == pageStatus.size());
     }
 
     @Override
     public boolean isSeenBefore(String url) {
-        WebTarget target = new WebTargetBuilder(url).build();
-        return pageMap.containsKey(target);
+        return pageStatus.get(UrlFingerprint.of(url)) != null;
     }
 
     @Override
     public void schedule(WebTargetImpl url) {
-        pageMap.put(url, PageStatus.SCHEDULED);
+        if (pageStatus.putIfAbsent(UrlFingerprint.of(url.getUrl()), PageStatus.SCHEDULED)) {
+            queue.add(url);
+        }
     }
-
     @Override
     public void schedule(List<WebTargetImpl> urls) {
         urls.forEach(this::schedule);
     }
 
+    @Override
+    public WebTargetImpl getNextTarget() {
+        return queue.poll();
+    }
+
     @Override
     public void setProcessing(WebTarget target) {
-        pageMap.put(target, PageStatus.PROCESSING);
+        pageStatus.put(UrlFingerprint.of(target.getUrl()), PageStatus.PROCESSING);
         numProcessing.incrementAndGet();
     }
+
+    @Override
+    public void writeCheckpoint(CrawlCheckpoint checkpoint, Collection<WebTargetImpl> inFlight) {
+        pageStatus.writeAdded(checkpoint::appendSeen);
+        checkpoint.onCommit(pageStatus::commitAdded);
+        inFlight.forEach(checkpoint::addPending);
+        queue.forEach(checkpoint::addPending);
+    }
+
+    @Override
+    public void restoreCheckpoint(CrawlCheckpoint checkpoint) throws IOException {
+        checkpoint.readSeen(fingerprint -> pageStatus.put(fingerprint, PageStatus.PROCESSED));
+        checkpoint.readPending(target -> {
+            pageStatus.put(UrlFingerprint.of(target.getUrl()), PageStatus.SCHEDULED);
+            queue.add(target);
+        });
+        pageStatus.startJournal();
+        numProcessed.set(pageStatus.size() - checkpoint.getNumberOfPendingPages());
+    }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of URL fingerprints in a memory-mapped file, using open addressing with linear probing.
+ * The value 0 marks an empty slot.
+ * <p>
+ * The table is mapped in chunks, since a single mapping cannot exceed 2 GiB. When the table is
+ * half full, it is rehashed into a new file of twice the size. Only the pages of the table which
+ * are actually touched need to be resident in memory.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+class MappedFingerprintSet implements Closeable {
+
+    /**
+     * Each chunk holds 2^24 slots, i.e. 128 MiB.
+     */
+    private static final int CHUNK_SHIFT = 24;
+
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final Path directory;
+
+    private int generation;
+
+    private Path file;
+
+    private FileChannel channel;
+
+    private LongBuffer[] chunks;
+
+    private long capacity;
+
+    private long size;
+
+    private FingerprintJournal journal;
+
+    /**
+     * Whether the fingerprints written before starting the journal have been committed.
+     */
+    private boolean journalCommitted;
+
+    /**
+     * Creates an empty set in the given directory.
+     *
+     * @param directory
+     *            directory for the table file
+     * @param initialCapacity
+     *            initial number of slots, will be rounded up to a power of 2
+     * @throws IOException
+     *             when the table file cannot be created
+     */
+    MappedFingerprintSet(Path directory, long initialCapacity) throws IOException {
+        this.directory = directory;
+        long slots = Long.highestOneBit(Math.max(2, initialCapacity - 1)) << 1;
+        allocate(slots);
+    }
+
+    /**
+     * Adds the given fingerprint.
+     *
+     * @param fingerprint
+     *            non-zero fingerprint
+     * @return true if the fingerprint was added, false if it was contained already
+     * @throws IOException
+     *             when the table cannot be grown
+     */
+    synchronized boolean add(long fingerprint) throws IOException {
+        if (chunks == null) {
+            return false;
+        }
+        long slot = find(fingerprint);
+        if (get(slot) == fingerprint) {
+            return false;
+        }
+        put(slot, fingerprint);
+        size++;
+        if (journal != null) {
+            journal.add(fingerprint);
+        }
+        if (size > capacity / 2) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the given fingerprint is contained in this set.
+     *
+     * @param fingerprint
+     *            non-zero fingerprint
+     * @return true if contained
+     */
+    synchronized boolean contains(long fingerprint) {
+        if (chunks == null) {
+            return false;
+        }
+        return get(find(fingerprint)) == fingerprint;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Passes the fingerprints added since the last committed checkpoint to the given consumer.
+     * Until the first checkpoint has been committed, all fingerprints in the set are passed.
+     *
+     * @param consumer
+     *            consumer for fingerprints
+     */
+    synchronized void writeAdded(LongConsumer consumer) {
+        if (journal != null && journalCommitted) {
+            journal.write(consumer);
+            return;
+        }
+        for (LongBuffer chunk : chunks) {
+            for (int slot = 0; slot < chunk.capacity(); slot++) {
+                long fingerprint = chunk.get(slot);
+                if (fingerprint != 0) {
+                    consumer.accept(fingerprint);
+                }
+            }
+        }
+        journal = new FingerprintJournal();
+    }
+
+    /**
+     * Discards the fingerprints passed to the most recent {@link #writeAdded(LongConsumer)}, after
+     * the checkpoint has been committed.
+     */
+    synchronized void commitAdded() {
+        if (journal != null) {
+            journal.discardWritten();
+            journalCommitted = true;
+        }
+    }
+
+    /**
+     * Starts recording added fingerprints from now on, assuming that all fingerprints in the
+     * set have been saved already.
+     */
+    synchronized void startJournal() {
+        journal = new FingerprintJournal();
+        journalCommitted = true;
+    }
+
+    /**
+     * Closes and deletes the table file. A closed set is empty and ignores any additions.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        release();
+    }
+
+    /**
+     * Finds the slot containing the given fingerprint, or the empty slot where it should be
+     * inserted.
+     */
+    private long find(long fingerprint) {
+        long mask = capacity - 1;
+        // the lowest 2 bits of a fingerprint are always 0, see UrlFingerprint
+        long slot = (fingerprint >>> 2) & mask;
+        long value;
+        while ((value = get(slot)) != 0 && value != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private long get(long slot) {
+        return chunks[(int) (slot >>> CHUNK_SHIFT)].get((int) (slot & CHUNK_MASK));
+    }
+
+    private void put(long slot, long fingerprint) {
+        chunks[(int) (slot >>> CHUNK_SHIFT)].put((int) (slot & CHUNK_MASK), fingerprint);
+    }
+
+    private void grow() throws IOException {
+        LongBuffer[] oldChunks = chunks;
+        Path oldFile = file;
+        FileChannel oldChannel = channel;
+        allocate(2 * capacity);
+        for (LongBuffer chunk : oldChunks) {
+            for (int i = 0; i < chunk.capacity(); i++) {
+                long fingerprint = chunk.get(i);
+                if (fingerprint != 0) {
+                    put(find(fingerprint), fingerprint);
+                }
+            }
+        }
+        oldChannel.close();
+        Files.deleteIfExists(oldFile);
+    }
+
+    private void allocate(long slots) throws IOException {
+        file = directory.resolve(String.format("seen-%d.bin", generation++));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        long chunkSlots = Math.min(slots, 1L << CHUNK_SHIFT);
+        chunks = new LongBuffer[(int) (slots / chunkSlots)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = channel
+                .map(MapMode.READ_WRITE, i * chunkSlots * Long.BYTES, chunkSlots * Long.BYTES)
+                .asLongBuffer();
+        }
+        capacity = slots;
+    }
+
+    private void release() throws IOException {
+        if (channel != null) {
+            channel.close();
+            Files.deleteIfExists(file);
+            channel = null;
+            chunks = null;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+import org.ops4j.krabbl.core.url.WebTargetCodec;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * FIFO queue of web targets in memory-mapped segment files.
+ * <p>
+ * Targets are appended to the tail segment and consumed from the head segment. Only these two
+ * segments are mapped at any time. A new tail segment is started when the current one is full,
+ * and the head segment is deleted when all of its targets have been consumed.
+ * <p>
+ * Each record consists of its length as an {@code int}, followed by the encoded target. Segment
+ * files are zero-filled, so a record length of 0 marks the end of a segment.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+class MappedTargetQueue implements Closeable {
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final Deque<Path> segments = new ArrayDeque<>();
+
+    private int nextSegment;
+
+    private Segment head;
+
+    private int readPosition;
+
+    private Segment tail;
+
+    private int writePosition;
+
+    private long size;
+
+    /**
+     * Last target removed from this queue, sharing its referring URL with the next one.
+     */
+    private WebTargetImpl lastPolled;
+
+    /**
+     * Creates an empty queue in the given directory.
+     *
+     * @param directory
+     *            directory for segment files
+     * @param segmentSize
+     *            size of each segment file in bytes
+     */
+    MappedTargetQueue(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Appends the given target to the tail of this queue.
+     *
+     * @param target
+     *            web target
+     * @throws IOException
+     *             when a new segment cannot be created
+     */
+    void add(WebTargetImpl target) throws IOException {
+        byte[] record = WebTargetCodec.encode(target);
+        int needed = Integer.BYTES + record.length;
+        if (tail == null || tail.buffer.capacity() - writePosition < needed) {
+            startSegment(needed);
+        }
+        ByteBuffer buffer = tail.buffer.duplicate();
+        buffer.position(writePosition);
+        buffer.putInt(record.length);
+        buffer.put(record);
+        writePosition += needed;
+        size++;
+    }
+
+    /**
+     * Removes the target at the head of this queue and returns it.
+     *
+     * @return web target, or null if the queue is empty
+     * @throws IOException
+     *             when a consumed segment cannot be deleted
+     */
+    WebTargetImpl poll() throws IOException {
+        if (size == 0) {
+            return null;
+        }
+        if (recordLength() == 0) {
+            nextHeadSegment();
+        }
+        ByteBuffer buffer = head.buffer.duplicate();
+        buffer.position(readPosition);
+        int length = buffer.getInt();
+        WebTargetImpl target = WebTargetCodec.decode(buffer, lastPolled);
+        readPosition += Integer.BYTES + length;
+        size--;
+        lastPolled = target;
+        return target;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Passes all targets in this queue to the given consumer, from head to tail, without
+     * removing them.
+     *
+     * @param consumer
+     *            consumer for targets
+     * @throws IOException
+     *             when a segment cannot be mapped
+     */
+    void forEach(Consumer<WebTargetImpl> consumer) throws IOException {
+        if (size == 0) {
+            return;
+        }
+        Iterator<Path> paths = segments.iterator();
+        paths.next();
+        Segment segment = head;
+        int position = readPosition;
+        long remaining = size;
+        WebTargetImpl previous = null;
+        try {
+            while (remaining > 0) {
+                int length = (segment.buffer.capacity() - position < Integer.BYTES) ? 0
+                    : segment.buffer.getInt(position);
+                if (length == 0) {
+                    closeTemporary(segment);
+                    Path path = paths.next();
+                    segment = path.equals(tail.path) ? tail : Segment.open(path);
+                    position = 0;
+                    continue;
+                }
+                ByteBuffer buffer = segment.buffer.duplicate();
+                buffer.position(position + Integer.BYTES);
+                WebTargetImpl target = WebTargetCodec.decode(buffer, previous);
+                consumer.accept(target);
+                previous = target;
+                position += Integer.BYTES + length;
+                remaining--;
+            }
+        }
+        finally {
+            closeTemporary(segment);
+        }
+    }
+
+    private void closeTemporary(Segment segment) throws IOException {
+        if (segment != head && segment != tail) {
+            segment.channel.close();
+        }
+    }
+
+    /**
+     * Closes and deletes all segment files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (head != null) {
+            head.channel.close();
+        }
+        if (tail != null) {
+            tail.channel.close();
+        }
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+        segments.clear();
+        head = null;
+        tail = null;
+        size = 0;
+    }
+
+    private int recordLength() {
+        if (head.buffer.capacity() - readPosition < Integer.BYTES) {
+            return 0;
+        }
+        return head.buffer.getInt(readPosition);
+    }
+
+    private void startSegment(int needed) throws IOException {
+        Path path = directory.resolve(String.format("queue-%08d.seg", nextSegment++));
+        Segment segment = Segment.create(path, Math.max(segmentSize, needed));
+        segments.addLast(path);
+        if (tail != null && tail != head) {
+            tail.channel.close();
+        }
+        tail = segment;
+        writePosition = 0;
+        if (head == null) {
+            head = tail;
+            readPosition = 0;
+        }
+    }
+
+    private void nextHeadSegment() throws IOException {
+        head.channel.close();
+        Files.deleteIfExists(segments.removeFirst());
+        Path path = segments.getFirst();
+        head = path.equals(tail.path) ? tail : Segment.open(path);
+        readPosition = 0;
+    }
+
+    /**
+     * A mapped segment file.
+     */
+    private static class Segment {
+
+        private final Path path;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path path, FileChannel channel, long size) throws IOException {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = channel.map(MapMode.READ_WRITE, 0, size);
+        }
+
+        static Segment create(Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, channel, size);
+        }
+
+        static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            return new Segment(path, channel, channel.size());
+        }
+    }
+}
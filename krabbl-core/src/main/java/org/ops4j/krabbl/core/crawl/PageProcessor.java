@@ -17,29 +17,42 @@
  */
 package org.ops4j.krabbl.core.crawl;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.apache.http.HttpStatus;
 import org.apache.http.impl.EnglishReasonPhraseCatalog;
 import org.ops4j.krabbl.api.CrawlerConfiguration;
 import org.ops4j.krabbl.api.Page;
 import org.ops4j.krabbl.api.PageVisitor;
-import org.ops4j.krabbl.api.ParseData;
 import org.ops4j.krabbl.api.WebTarget;
 import org.ops4j.krabbl.core.exc.ContentFetchException;
 import org.ops4j.krabbl.core.exc.PageBiggerThanMaxSizeException;
+import org.ops4j.krabbl.core.fetch.ContentArchive;
+import org.ops4j.krabbl.core.fetch.ContentHash;
 import org.ops4j.krabbl.core.fetch.PageFetchResult;
 import org.ops4j.krabbl.core.fetch.PageFetcher;
+import org.ops4j.krabbl.core.fetch.Validator;
+import org.ops4j.krabbl.core.fetch.ValidatorStore;
 import org.ops4j.krabbl.core.parse.HtmlParseData;
-import org.ops4j.krabbl.core.parse.JsoupHtmlParser;
+import org.ops4j.krabbl.core.parse.ParserRegistry;
 import org.ops4j.krabbl.core.robots.RobotsControl;
 import org.ops4j.krabbl.core.spi.Frontier;
 import org.ops4j.krabbl.core.spi.Parser;
+import org.ops4j.krabbl.core.url.ContentTypeUtil;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+import org.ops4j.krabbl.core.url.UrlNormalizer;
 import org.ops4j.krabbl.core.url.WebTargetBuilder;
 import org.ops4j.krabbl.core.url.WebTargetImpl;
+import org.ops4j.krabbl.core.warc.WarcWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,16 +73,52 @@ public class PageProcessor {
     private PageFetcher pageFetcher;
 
     private RobotsControl robotsControl;
-    private Parser parser;
 
-    public PageProcessor(CrawlerConfiguration config, PageVisitor visitor, Frontier frontier, PageFetcher pageFetcher,
-        RobotsControl robotsControl) {
+    private ParserRegistry parsers;
+
+    private ParseStage parseStage;
+
+    private ContentArchive contentArchive;
+
+    private WarcWriter warcWriter;
+
+    private ValidatorStore validatorStore;
+
+    /**
+     * Number of pages handed over to the parse stage and not yet parsed. Guarded by this.
+     */
+    private int numParsing;
+
+    /**
+     * Creates a page processor.
+     *
+     * @param config
+     *            crawler configuration
+     * @param visitor
+     *            page visitor
+     * @param frontier
+     *            frontier of the crawler
+     * @param pageFetcher
+     *            page fetcher
+     * @param robotsControl
+     *            robots control
+     * @param parseStage
+     *            parse stage for parsing and visiting fetched pages, or null to parse pages on
+     *            the fetching thread
+     * @param contentArchive
+     *            archive for the content of fetched pages, or null to keep content in memory
+     */
+    public PageProcessor(CrawlerConfiguration config, PageVisitor visitor, Frontier frontier,
+        PageFetcher pageFetcher, RobotsControl robotsControl, ParseStage parseStage,
+        ContentArchive contentArchive) {
         this.config = config;
         this.visitor = visitor;
         this.frontier = frontier;
-        this.parser = new JsoupHtmlParser();
+        this.parsers = ParserRegistry.load();
         this.pageFetcher = pageFetcher;
         this.robotsControl = robotsControl;
+        this.parseStage = parseStage;
+        this.contentArchive = contentArchive;
     }
 
     public List<WebTargetImpl> handleOutgoingLinks(Page page) {
@@ -81,65 +130,380 @@ public class PageProcessor {
             return Collections.singletonList(redirectedTo);
         }
 
-        if (page.getParseData() == null) {
+        if (page.getParseData() != null) {
+            return processLinks(page, page.getParseData().getOutgoingUrls());
+        }
+        if (page.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            return processLinks(page, getPreviousLinks(page));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Gets the outgoing links recorded when the given page was last fetched with content.
+     */
+    private List<WebTarget> getPreviousLinks(Page page) {
+        if (validatorStore == null) {
             return Collections.emptyList();
         }
-        return processParsedLinks(page);
+        List<String> urls = validatorStore
+            .getLinks(UrlFingerprint.of(page.getWebTarget().getUrl()));
+        List<WebTarget> links = new ArrayList<>(urls.size());
+        for (String link : urls) {
+            links.add(new WebTargetBuilder(link).build());
+        }
+        return links;
+    }
+
+    public RobotsControl getRobotsControl() {
+        return robotsControl;
+    }
+
+    /**
+     * Sets a writer for recording the request and response of each fetched page.
+     *
+     * @param warcWriter
+     *            WARC writer, or null
+     */
+    public void setWarcWriter(WarcWriter warcWriter) {
+        this.warcWriter = warcWriter;
+    }
+
+    /**
+     * Sets a store of validators for sending conditional requests. The validators of all
+     * fetched pages are recorded in this store.
+     *
+     * @param validatorStore
+     *            validator store, or null
+     */
+    public void setValidatorStore(ValidatorStore validatorStore) {
+        this.validatorStore = validatorStore;
+    }
+
+    /**
+     * Appends the validators changed since the previous save to the validator store, if any.
+     * Called with each checkpoint and on closing, so that the validators of an interrupted crawl
+     * are not lost.
+     *
+     * @throws IOException
+     *             when the store cannot be saved
+     */
+    public void saveValidatorStore() throws IOException {
+        if (validatorStore != null) {
+            validatorStore.save();
+        }
     }
 
-    public Page processPage(WebTargetImpl target) {
+    /**
+     * Checks if the parse stage can accept more pages without queueing them.
+     *
+     * @return true if there is no parse stage or if it has capacity
+     */
+    public boolean canAcceptPages() {
+        return parseStage == null || parseStage.hasCapacity();
+    }
+
+    /**
+     * Waits for all pages handed over to the parse stage to be parsed, then closes the WARC
+     * writer and the content archive, if any. Archived content remains accessible. The
+     * validator store is saved and closed, if configured.
+     */
+    public void close() {
+        awaitParsing();
+        if (warcWriter != null) {
+            warcWriter.close();
+        }
+        if (validatorStore != null) {
+            try {
+                validatorStore.close();
+            }
+            catch (IOException exc) {
+                logger.warn("error saving validator store", exc);
+            }
+        }
+        if (contentArchive != null) {
+            try {
+                contentArchive.close();
+            }
+            catch (IOException exc) {
+                logger.warn("error closing content archive", exc);
+            }
+        }
+    }
+
+    /**
+     * Fetches the given target, blocking the current thread, and hands the fetched content over
+     * to the parse stage.
+     *
+     * @param target
+     *            target to be fetched
+     * @return future page, completed when the page has been parsed and visited
+     */
+    public CompletableFuture<Page> processPage(WebTargetImpl target) {
         if (target == null) {
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
         frontier.setProcessing(target);
+        PageFetchResult fetchResult;
+        try {
+            fetchResult = pageFetcher.fetchPage(target, getValidator(target));
+        }
+        catch (Exception exc) {
+            return completePage(target, null, exc);
+        }
+        return completePage(target, fetchResult, null);
+    }
+
+    /**
+     * Fetches and processes the given target asynchronously. With a non-blocking page fetcher,
+     * no thread is occupied while the request is in flight. The content is read on the given
+     * executor and then handed over to the parse stage.
+     *
+     * @param target
+     *            target to be fetched
+     * @param executor
+     *            executor for processing the fetch result
+     * @return future fetched page
+     */
+    public CompletableFuture<Page> processPageAsync(WebTargetImpl target, Executor executor) {
+        if (target == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        frontier.setProcessing(target);
+        return pageFetcher.fetchPageAsync(target, getValidator(target), executor)
+            .handleAsync((fetchResult, exc) -> completePage(target, fetchResult, unwrap(exc)),
+                executor)
+            .thenCompose(futurePage -> futurePage);
+    }
+
+    private Validator getValidator(WebTarget target) {
+        if (validatorStore == null) {
+            return null;
+        }
+        Validator validator = validatorStore.get(UrlFingerprint.of(target.getUrl()));
+        return (validator != null && validator.isConditional()) ? validator : null;
+    }
+
+    /**
+     * Handles the fetch result on the I/O side. If the fetch yields content to be parsed, the
+     * page is handed over to the parse stage. Otherwise, the target is processed immediately.
+     */
+    private CompletableFuture<Page> completePage(WebTargetImpl target,
+        PageFetchResult fetchResult, Throwable fetchFailure) {
         Page page = new Page(target);
+        // the URL of the target may change when processing the result
+        long fingerprint = UrlFingerprint.of(target.getUrl());
+        boolean fetched = false;
+        if (fetchFailure == null) {
+            try {
+                fetched = processFetchResult(page, fetchResult, target, fingerprint);
+            }
+            catch (Exception exc) {
+                handleFailure(target, exc);
+            }
+            finally {
+                fetchResult.discardContentIfNotConsumed();
+            }
+        }
+        else {
+            handleFailure(target, fetchFailure);
+        }
+        if (!fetched) {
+            if (fetchFailure == null) {
+                writeWarc(fetchResult, page);
+            }
+            frontier.setProcessed(target, getUnmodifiedContentHash(page, fingerprint));
+            return CompletableFuture.completedFuture(page);
+        }
+        if (parseStage == null) {
+            return CompletableFuture
+                .completedFuture(parsePage(page, target, fetchResult, fingerprint));
+        }
+        synchronized (this) {
+            numParsing++;
+        }
+        CompletableFuture<Page> futurePage = parseStage
+            .submit(() -> parsePage(page, target, fetchResult, fingerprint));
+        futurePage.whenComplete((parsedPage, exc) -> parsingDone());
+        return futurePage;
+    }
+
+    private synchronized void parsingDone() {
+        if (--numParsing == 0) {
+            notifyAll();
+        }
+    }
 
-        PageFetchResult fetchResult = null;
+    private synchronized void awaitParsing() {
         try {
-            fetchResult = pageFetcher.fetchPage(target);
-            int statusCode = fetchResult.getStatusCode();
-            visitor.handlePageStatusCode(target, statusCode,
-                EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode, Locale.ENGLISH));
-
-            page.setFetchResponseHeaders(fetchResult.getResponseHeaders());
-            page.setStatusCode(statusCode);
-            if (statusCode < 200 || statusCode > 299) {
-                if (isRedirect(statusCode)) {
-                    handleRedirect(page, fetchResult, target);
-                }
-                else {
-                    handleUnexpectedStatus(fetchResult, target);
-                }
-            }
-            else { // if status code is 200
-                handleSuccess(page, fetchResult, target);
+            while (numParsing > 0) {
+                wait();
             }
         }
-        catch (PageBiggerThanMaxSizeException e) {
-            visitor.onPageBiggerThanMaxSize(target.getUrl(), e.getPageSize());
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
         }
-        catch (ContentFetchException cfe) {
-            visitor.onContentFetchError(target);
+    }
+
+    /**
+     * Parses and visits a fetched page. This is the CPU-bound part of processing a page, which
+     * includes compressing WARC records and hashing the content. The content buffer of the page
+     * is released afterwards.
+     */
+    private Page parsePage(Page page, WebTargetImpl target, PageFetchResult fetchResult,
+        long fingerprint) {
+        long contentHash = 0;
+        try {
+            writeWarc(fetchResult, page);
+            contentHash = hashContent(page);
+            Parser parser = parsers.getParser(page.getContentType());
+            if (parser != null) {
+                parser.parse(page, target.getUrl(), config.getMaxOutgoingLinksToFollow());
+            }
+            updateValidator(page, fingerprint, contentHash);
+            if (!noIndex(page)) {
+                visitor.visit(page);
+            }
         }
-        catch (Exception e) {
-            visitor.onUnhandledException(target, e);
+        catch (Exception exc) {
+            handleFailure(target, exc);
         }
         finally {
-            if (fetchResult != null) {
-                fetchResult.discardContentIfNotConsumed();
+            page.releaseContent();
+            frontier.setProcessed(target, contentHash);
+        }
+        return page;
+    }
+
+    /**
+     * Computes the content hash of a fetched page, if needed for validators or revisits.
+     */
+    private long hashContent(Page page) {
+        if (validatorStore == null && !frontier.isContinuous()) {
+            return 0;
+        }
+        ByteBuffer content = page.getContent();
+        return (content == null) ? 0 : ContentHash.of(content);
+    }
+
+    /**
+     * Gets the content hash of a page which has not been modified since the previous fetch.
+     *
+     * @return previous content hash, or 0 if the page was not fetched or has been modified
+     */
+    private long getUnmodifiedContentHash(Page page, long fingerprint) {
+        if (validatorStore == null || page.getStatusCode() != HttpStatus.SC_NOT_MODIFIED) {
+            return 0;
+        }
+        Validator validator = validatorStore.get(fingerprint);
+        return (validator == null) ? 0 : validator.getContentHash();
+    }
+
+    /**
+     * Records the validators of a fetched page, together with its outgoing links, to be followed
+     * again when a later request finds the page not modified.
+     */
+    private void updateValidator(Page page, long fingerprint, long contentHash) {
+        if (validatorStore == null) {
+            return;
+        }
+        Validator validator = Validator.fromHeaders(page.getFetchResponseHeaders(), contentHash);
+        List<String> links = new ArrayList<>();
+        if (validator.isConditional() && page.getParseData() != null) {
+            for (WebTarget link : page.getParseData().getOutgoingUrls()) {
+                links.add(link.getUrl());
             }
         }
-        frontier.setProcessed(target);
+        validatorStore.put(fingerprint, validator, links);
+    }
 
-        return page;
+    private void writeWarc(PageFetchResult fetchResult, Page page) {
+        if (warcWriter != null) {
+            warcWriter.write(fetchResult, page);
+        }
+    }
+
+    /**
+     * Processes the given fetch result.
+     *
+     * @return true if the content of a successful response was fetched, to be parsed next
+     */
+    private boolean processFetchResult(Page page, PageFetchResult fetchResult,
+        WebTargetImpl target, long fingerprint) {
+        int statusCode = fetchResult.getStatusCode();
+        visitor.handlePageStatusCode(target, statusCode,
+            EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode, Locale.ENGLISH));
+
+        page.setFetchResponseHeaders(fetchResult.getResponseHeaders());
+        page.setStatusCode(statusCode);
+        if (statusCode < 200 || statusCode > 299) {
+            if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                handleNotModified(page, fingerprint);
+            }
+            else if (isRedirect(statusCode)) {
+                handleRedirect(page, fetchResult, target);
+            }
+            else {
+                handleUnexpectedStatus(fetchResult, target);
+            }
+            return false;
+        }
+        // if status code is 200
+        return handleSuccess(page, fetchResult, target);
+    }
+
+    /**
+     * Handles a page which has not been modified since it was fetched before. The validator is
+     * refreshed with any validators of the response, keeping the content hash and the links.
+     */
+    private void handleNotModified(Page page, long fingerprint) {
+        logger.debug("{} has not been modified", page.getWebTarget());
+        if (validatorStore != null) {
+            Validator previous = validatorStore.get(fingerprint);
+            Validator current = Validator.fromHeaders(page.getFetchResponseHeaders(), 0);
+            if (previous != null) {
+                validatorStore.update(fingerprint, new Validator(
+                    (current.getEtag() == null) ? previous.getEtag() : current.getEtag(),
+                    (current.getLastModified() == 0) ? previous.getLastModified()
+                        : current.getLastModified(),
+                    previous.getContentHash()));
+            }
+        }
+        visitor.onNotModified(page);
+    }
+
+    private void handleFailure(WebTarget target, Throwable exc) {
+        if (exc instanceof PageBiggerThanMaxSizeException) {
+            visitor.onPageBiggerThanMaxSize(target.getUrl(),
+                ((PageBiggerThanMaxSizeException) exc).getPageSize());
+        }
+        else if (exc instanceof ContentFetchException) {
+            visitor.onContentFetchError(target);
+        }
+        else {
+            visitor.onUnhandledException(target, exc);
+        }
+    }
+
+    private static Throwable unwrap(Throwable exc) {
+        if (exc instanceof CompletionException && exc.getCause() != null) {
+            return exc.getCause();
+        }
+        return exc;
     }
 
     private void handleUnexpectedStatus(PageFetchResult fetchResult, WebTarget curUrl) {
         // the status reason for all known statuses
-        String contentType = fetchResult.getEntity() == null ? ""
-            : fetchResult.getEntity().getContentType() == null ? ""
-                : fetchResult.getEntity().getContentType().getValue();
-        visitor.onUnexpectedStatusCode(curUrl.getUrl(), fetchResult.getStatusCode(), contentType);
+        String contentType = getContentType(fetchResult);
+        visitor.onUnexpectedStatusCode(curUrl.getUrl(), fetchResult.getStatusCode(),
+            (contentType == null) ? "" : contentType);
+    }
+
+    private static String getContentType(PageFetchResult fetchResult) {
+        if (fetchResult.getEntity() == null || fetchResult.getEntity().getContentType() == null) {
+            return null;
+        }
+        return fetchResult.getEntity().getContentType().getValue();
     }
 
     private void handleRedirect(Page page, PageFetchResult fetchResult, WebTarget curUrl) {
@@ -158,16 +522,28 @@ public class PageProcessor {
         visitor.onRedirectedStatusCode(page);
     }
 
-    private void handleSuccess(Page page, PageFetchResult fetchResult, WebTargetImpl curUrl)
+    private boolean handleSuccess(Page page, PageFetchResult fetchResult, WebTargetImpl curUrl)
         throws ContentFetchException {
         if (!curUrl.getUrl().equals(fetchResult.getFetchedUrl())) {
-            if (frontier.isSeenBefore(fetchResult.getFetchedUrl())) {
+            String fetchedUrl = UrlNormalizer.normalize(fetchResult.getFetchedUrl());
+            if (fetchedUrl == null) {
+                fetchedUrl = fetchResult.getFetchedUrl();
+            }
+            if (frontier.isSeenBefore(fetchedUrl)) {
                 logger.debug("Redirect page: {} has already been seen", curUrl);
-                return;
+                return false;
             }
-            curUrl.setUrl(fetchResult.getFetchedUrl());
+            curUrl.setUrl(fetchedUrl);
+        }
+
+        String contentType = getContentType(fetchResult);
+        if (!config.isIncludeBinaryContentInCrawling()
+            && ContentTypeUtil.hasBinaryContent(contentType)) {
+            logger.debug("Skipping binary content {} of {}", contentType, curUrl);
+            return false;
         }
 
+        fetchResult.setContentArchive(contentArchive);
         if (!fetchResult.fetchContent(page, config.getMaxDownloadSize())) {
             throw new ContentFetchException();
         }
@@ -176,12 +552,7 @@ public class PageProcessor {
             logger.warn("page size exceeded maxDownloadSize, truncated to {} bytes, at URL {}",
                 config.getMaxDownloadSize(), curUrl.getUrl());
         }
-
-        parser.parse(page, curUrl.getUrl());
-
-        if (!noIndex(page)) {
-            visitor.visit(page);
-        }
+        return true;
     }
 
     private WebTargetImpl handleRedirects(Page page) {
@@ -207,7 +578,7 @@ public class PageProcessor {
         return null;
     }
 
-    private List<WebTargetImpl> processParsedLinks(Page page) {
+    private List<WebTargetImpl> processLinks(Page page, Collection<WebTarget> outgoingUrls) {
         WebTarget curUrl = page.getWebTarget();
         if (!visitor.shouldFollowLinksIn(page.getWebTarget())) {
             logger.debug("Not looking for links in page {}, "
@@ -215,22 +586,29 @@ public class PageProcessor {
             return Collections.emptyList();
         }
 
-        ParseData parseData = page.getParseData();
         List<WebTargetImpl> toSchedule = new ArrayList<>();
         int maxCrawlDepth = config.getMaxDepthOfCrawling();
-        for (WebTarget target : parseData.getOutgoingUrls()) {
+        int numLinksToFollow = config.getMaxOutgoingLinksToFollow();
+        for (WebTarget target : outgoingUrls) {
+            if (numLinksToFollow-- <= 0) {
+                logger.debug("Not following more than {} links in page {}",
+                    config.getMaxOutgoingLinksToFollow(), curUrl.getUrl());
+                break;
+            }
             WebTargetImpl webUrl = (WebTargetImpl) target;
             webUrl.setReferringUrl(curUrl.getUrl());
             if (frontier.isSeenBefore(webUrl.getUrl())) {
                 // This is not the first time that this Url is visited. So, we set the
                 // depth to a negative number.
                 webUrl.setDepth((short) -1);
+                frontier.addInLink(webUrl);
             }
             else {
                 webUrl.setDepth(curUrl.getDepth() + 1);
                 if ((maxCrawlDepth == -1) || (curUrl.getDepth() < maxCrawlDepth)) {
                     if (visitor.shouldVisit(page, webUrl)) {
                         if (robotsControl.allows(webUrl)) {
+                            webUrl.setPriority(visitor.getPriority(page, webUrl));
                             toSchedule.add(webUrl);
                         } else {
                             logger.debug(
@@ -260,8 +638,7 @@ public class PageProcessor {
      * @return
      */
     private boolean noIndex(Page page) {
-        return config.isRespectNoIndex() && page.getContentType() != null
-            && page.getContentType().contains("html")
+        return config.isRespectNoIndex() && page.getParseData() instanceof HtmlParseData
             && ((HtmlParseData) page.getParseData()).getMetaTagValue("robots").contains("noindex");
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs CPU-bound parse tasks on a work stealing pool, separated from the threads fetching
+ * pages.
+ * <p>
+ * The number of tasks handed over to the pool but not yet completed is bounded. Submitting a
+ * task never blocks. When the bound is reached, further tasks wait in a queue and are handed
+ * over to the pool as running tasks complete. Crawlers check {@link #hasCapacity()} before
+ * fetching more pages, so fetching cannot run arbitrarily far ahead of parsing.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class ParseStage {
+
+    private final ForkJoinPool pool;
+
+    private final int maxPendingTasks;
+
+    /**
+     * Tasks waiting for a free slot. Guarded by this.
+     */
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+    /**
+     * Number of tasks handed over to the pool and not yet completed. Guarded by this.
+     */
+    private int numPending;
+
+    /**
+     * Creates a parse stage.
+     *
+     * @param parallelism
+     *            number of parse threads
+     * @param maxPendingTasks
+     *            maximum number of tasks queued or running in the pool at the same time
+     */
+    public ParseStage(int parallelism, int maxPendingTasks) {
+        if (parallelism <= 0 || maxPendingTasks <= 0) {
+            throw new IllegalArgumentException("Parse stage limits must be positive");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxPendingTasks = maxPendingTasks;
+    }
+
+    /**
+     * Hands the given task over to the parse threads. If the maximum number of pending tasks is
+     * reached, the task is queued until a pending task completes. This method does not block.
+     *
+     * @param task
+     *            CPU-bound task
+     * @return future result of the task
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable start = () -> pool.execute(() -> run(task, future));
+        synchronized (this) {
+            if (numPending >= maxPendingTasks) {
+                waiting.add(start);
+                return future;
+            }
+            numPending++;
+        }
+        try {
+            start.run();
+        }
+        catch (RuntimeException exc) {
+            startNext();
+            throw exc;
+        }
+        return future;
+    }
+
+    private <T> void run(Supplier<T> task, CompletableFuture<T> future) {
+        try {
+            future.complete(task.get());
+        }
+        catch (Throwable exc) {
+            future.completeExceptionally(exc);
+        }
+        finally {
+            startNext();
+        }
+    }
+
+    /**
+     * Hands over the slot of a completed task to the next waiting task, or releases the slot.
+     */
+    private void startNext() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                numPending--;
+                notifyAll();
+                return;
+            }
+        }
+        next.run();
+    }
+
+    /**
+     * Checks if this stage can accept another task without queueing it.
+     *
+     * @return true if the number of pending tasks is below the maximum
+     */
+    public synchronized boolean hasCapacity() {
+        return numPending < maxPendingTasks;
+    }
+
+    /**
+     * Gets the number of parse threads.
+     *
+     * @return parallelism
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts down this stage and waits for all pending and queued tasks to complete. If the
+     * current thread is interrupted while waiting, this method returns early, with the interrupt
+     * status set.
+     */
+    public void shutdown() {
+        try {
+            synchronized (this) {
+                while (numPending > 0) {
+                    wait();
+                }
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.fetch.PolitenessScheduler;
+import org.ops4j.krabbl.core.spi.Frontier;
+import org.ops4j.krabbl.core.spi.TargetScorer;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * Frontier handing out targets in order of a pluggable score.
+ * <p>
+ * Pending targets are kept in a bounded queue per host, ordered by score. When the queue of a
+ * host is full, the target with the lowest score is dropped and will not be crawled. Hosts with
+ * pending targets take turns in a global rotation, so each call of {@link #getNextTargets(int)}
+ * returns the best targets of as many different hosts as possible.
+ * <p>
+ * The score of a target is computed when it is scheduled, and again whenever another link to
+ * the target is found while it is pending.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class PriorityFrontier implements Frontier {
+
+    /**
+     * Default maximum number of pending targets per host.
+     */
+    public static final int DEFAULT_MAX_TARGETS_PER_HOST = 10_000;
+
+    private static final Comparator<Entry> BEST_FIRST = Comparator
+        .comparingDouble((Entry entry) -> -entry.score).thenComparingLong(entry -> entry.sequence);
+
+    private final TargetScorer scorer;
+
+    private final int maxTargetsPerHost;
+
+    private final FingerprintTable pageStatus = new FingerprintTable(1024);
+
+    /**
+     * Hosts with pending targets. A host is removed when its last pending target is handed out.
+     */
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+
+    /**
+     * Hosts with pending targets, in order of their next turn.
+     */
+    private final Deque<HostQueue> rotation = new ArrayDeque<>();
+
+    /**
+     * Pending targets by fingerprint.
+     */
+    private final Map<Long, Entry> pending = new HashMap<>();
+
+    private long sequence;
+
+    private long numDropped;
+
+    private AtomicLong numProcessed = new AtomicLong();
+    private AtomicLong numProcessing = new AtomicLong();
+
+    /**
+     * Creates a priority frontier.
+     *
+     * @param scorer
+     *            target scorer
+     * @param maxTargetsPerHost
+     *            maximum number of pending targets per host
+     */
+    public PriorityFrontier(TargetScorer scorer, int maxTargetsPerHost) {
+        this.scorer = scorer;
+        this.maxTargetsPerHost = maxTargetsPerHost;
+    }
+
+    @Override
+    public synchronized void schedule(WebTargetImpl url) {
+        long fingerprint = UrlFingerprint.of(url.getUrl());
+        if (pageStatus.putIfAbsent(fingerprint, PageStatus.SCHEDULED)) {
+            enqueue(new Entry(url, fingerprint, sequence++));
+        }
+    }
+
+    @Override
+    public void schedule(List<WebTargetImpl> urls) {
+        urls.forEach(this::schedule);
+    }
+
+    @Override
+    public synchronized void addInLink(WebTargetImpl target) {
+        Entry entry = pending.get(UrlFingerprint.of(target.getUrl()));
+        if (entry != null) {
+            HostQueue hostQueue = entry.hostQueue;
+            hostQueue.targets.remove(entry);
+            entry.inLinks++;
+            entry.score = scorer.score(entry.target, entry.inLinks);
+            hostQueue.targets.add(entry);
+        }
+    }
+
+    @Override
+    public synchronized WebTargetImpl getNextTarget() {
+        List<WebTargetImpl> targets = getNextTargets(1);
+        return targets.isEmpty() ? null : targets.get(0);
+    }
+
+    @Override
+    public synchronized List<WebTargetImpl> getNextTargets(int max) {
+        List<WebTargetImpl> targets = new ArrayList<>();
+        while (targets.size() < max && !rotation.isEmpty()) {
+            HostQueue hostQueue = rotation.pollFirst();
+            Entry entry = hostQueue.targets.pollFirst();
+            pending.remove(entry.fingerprint);
+            targets.add(entry.target);
+            if (hostQueue.targets.isEmpty()) {
+                hosts.remove(hostQueue.host);
+            }
+            else {
+                rotation.addLast(hostQueue);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public void setProcessed(WebTarget url) {
+        pageStatus.put(UrlFingerprint.of(url.getUrl()), PageStatus.PROCESSED);
+        numProcessing.decrementAndGet();
+        numProcessed.incrementAndGet();
+    }
+
+    @Override
+    public void setProcessing(WebTarget url) {
+        pageStatus.put(UrlFingerprint.of(url.getUrl()), PageStatus.PROCESSING);
+        numProcessing.incrementAndGet();
+    }
+
+    @Override
+    public long getNumberOfProcessingPages() {
+        return numProcessing.get();
+    }
+
+    @Override
+    public long getNumberOfProcessedPages() {
+        return numProcessed.get();
+    }
+
+    @Override
+    public synchronized long getNumberOfScheduledPages() {
+        return pageStatus.size() - numDropped;
+    }
+
+    /**
+     * Gets the number of targets dropped because the queue of their host was full.
+     *
+     * @return number of dropped targets
+     */
+    public synchronized long getNumberOfDroppedPages() {
+        return numDropped;
+    }
+
+    /**
+     * Gets the number of hosts with pending targets.
+     *
+     * @return number of hosts
+     */
+    public synchronized int getNumberOfHosts() {
+        return hosts.size();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return (numProcessing.get() == 0)
+            && (numProcessed.get() == getNumberOfScheduledPages());
+    }
+
+    @Override
+    public boolean isSeenBefore(String url) {
+        return pageStatus.get(UrlFingerprint.of(url)) != null;
+    }
+
+    @Override
+    public synchronized void writeCheckpoint(CrawlCheckpoint checkpoint,
+        Collection<WebTargetImpl> inFlight) {
+        pageStatus.writeAdded(checkpoint::appendSeen);
+        checkpoint.onCommit(pageStatus::commitAdded);
+        inFlight.forEach(checkpoint::addPending);
+        pending.values().forEach(entry -> checkpoint.addPending(entry.target));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * In-link counts are not saved, and targets dropped before the checkpoint are counted as
+     * processed.
+     */
+    @Override
+    public synchronized void restoreCheckpoint(CrawlCheckpoint checkpoint) throws IOException {
+        checkpoint.readSeen(fingerprint -> pageStatus.put(fingerprint, PageStatus.PROCESSED));
+        checkpoint.readPending(target -> {
+            long fingerprint = UrlFingerprint.of(target.getUrl());
+            pageStatus.put(fingerprint, PageStatus.SCHEDULED);
+            enqueue(new Entry(target, fingerprint, sequence++));
+        });
+        pageStatus.startJournal();
+        numProcessed.set(pageStatus.size() - checkpoint.getNumberOfPendingPages());
+    }
+
+    private void enqueue(Entry entry) {
+        String host = PolitenessScheduler.getHost(entry.target.getUrl());
+        HostQueue hostQueue = hosts.get(host);
+        if (hostQueue == null) {
+            hostQueue = new HostQueue(host);
+            hosts.put(host, hostQueue);
+            rotation.addLast(hostQueue);
+        }
+        entry.hostQueue = hostQueue;
+        entry.score = scorer.score(entry.target, entry.inLinks);
+        if (hostQueue.targets.size() >= maxTargetsPerHost) {
+            Entry worst = hostQueue.targets.last();
+            numDropped++;
+            if (BEST_FIRST.compare(entry, worst) >= 0) {
+                return;
+            }
+            hostQueue.targets.pollLast();
+            pending.remove(worst.fingerprint);
+        }
+        hostQueue.targets.add(entry);
+        pending.put(entry.fingerprint, entry);
+    }
+
+    /**
+     * Pending targets of a host. A host queue is in the rotation while it is not empty.
+     */
+    private static class HostQueue {
+
+        private final String host;
+
+        private final TreeSet<Entry> targets = new TreeSet<>(BEST_FIRST);
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+    }
+
+    /**
+     * A pending target with its score.
+     */
+    private static class Entry {
+
+        private final WebTargetImpl target;
+
+        private final long fingerprint;
+
+        private final long sequence;
+
+        private HostQueue hostQueue;
+
+        private int inLinks;
+
+        private double score;
+
+        Entry(WebTargetImpl target, long fingerprint, long sequence) {
+            this.target = target;
+            this.fingerprint = fingerprint;
+            this.sequence = sequence;
+        }
+    }
+}
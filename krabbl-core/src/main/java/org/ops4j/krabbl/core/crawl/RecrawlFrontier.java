@@ -0,0 +1,307 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.LongSupplier;
+
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.spi.Frontier;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * Frontier for continuous crawling, which revisits each processed target after an adaptive
+ * interval.
+ * <p>
+ * New targets are handed out in order of discovery. When a target has been processed, its next
+ * visit is scheduled in a heap ordered by due time. The revisit interval of each target starts
+ * with an initial value. It is halved whenever the content hash of the target has changed since
+ * the previous visit, and it grows by half whenever the content is unchanged or could not be
+ * fetched, always staying between a minimum and a maximum. Thus, revisits concentrate on the
+ * pages which actually change.
+ * <p>
+ * Due revisits take precedence over new targets. All targets are kept in memory.
+ * <p>
+ * A target is revisited by the URL it was scheduled with. When its URL changes while processing
+ * it, e.g. by following a redirect, the original URL is restored when the target is handed out
+ * again.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class RecrawlFrontier implements Frontier {
+
+    private static final Comparator<Entry> EARLIEST_FIRST = Comparator
+        .comparingLong((Entry entry) -> entry.due).thenComparingLong(entry -> entry.sequence);
+
+    private final long initialInterval;
+
+    private final long minInterval;
+
+    private final long maxInterval;
+
+    private final LongSupplier clock;
+
+    /**
+     * All known targets by fingerprint.
+     */
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    /**
+     * New targets, in order of discovery.
+     */
+    private final Queue<Entry> newTargets = new ArrayDeque<>();
+
+    /**
+     * Targets handed out and not yet processed, by identity, since their URL may change while
+     * processing them.
+     */
+    private final Map<WebTarget, Entry> handedOut = new IdentityHashMap<>();
+
+    /**
+     * Processed targets, ordered by the due time of their next visit.
+     */
+    private final PriorityQueue<Entry> revisits = new PriorityQueue<>(EARLIEST_FIRST);
+
+    private long sequence;
+
+    private long numProcessing;
+
+    private long numProcessed;
+
+    /**
+     * Creates a recrawl frontier.
+     *
+     * @param initialInterval
+     *            revisit interval after the first visit, in milliseconds
+     * @param minInterval
+     *            minimum revisit interval in milliseconds
+     * @param maxInterval
+     *            maximum revisit interval in milliseconds
+     */
+    public RecrawlFrontier(long initialInterval, long minInterval, long maxInterval) {
+        this(initialInterval, minInterval, maxInterval, System::currentTimeMillis);
+    }
+
+    RecrawlFrontier(long initialInterval, long minInterval, long maxInterval,
+        LongSupplier clock) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+        this.initialInterval = clamp(initialInterval);
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized void schedule(WebTargetImpl url) {
+        long fingerprint = UrlFingerprint.of(url.getUrl());
+        if (!entries.containsKey(fingerprint)) {
+            Entry entry = new Entry(url, initialInterval);
+            entries.put(fingerprint, entry);
+            newTargets.add(entry);
+        }
+    }
+
+    @Override
+    public void schedule(List<WebTargetImpl> urls) {
+        urls.forEach(this::schedule);
+    }
+
+    @Override
+    public synchronized WebTargetImpl getNextTarget() {
+        List<WebTargetImpl> targets = getNextTargets(1);
+        return targets.isEmpty() ? null : targets.get(0);
+    }
+
+    @Override
+    public synchronized List<WebTargetImpl> getNextTargets(int max) {
+        List<WebTargetImpl> targets = new ArrayList<>();
+        long now = clock.getAsLong();
+        while (targets.size() < max) {
+            Entry entry = revisits.peek();
+            if (entry != null && entry.due <= now) {
+                revisits.poll();
+            }
+            else {
+                entry = newTargets.poll();
+                if (entry == null) {
+                    break;
+                }
+            }
+            if (!entry.target.getUrl().equals(entry.url)) {
+                entry.target.setUrl(entry.url);
+            }
+            handedOut.put(entry.target, entry);
+            targets.add(entry.target);
+        }
+        return targets;
+    }
+
+    @Override
+    public synchronized void setProcessing(WebTarget url) {
+        numProcessing++;
+    }
+
+    @Override
+    public void setProcessed(WebTarget url) {
+        setProcessed(url, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Schedules the next visit of the target, adapting its revisit interval to the content
+     * change. The visit is scheduled for the target as handed out by this frontier, even if its
+     * URL has changed in the meantime.
+     */
+    @Override
+    public synchronized void setProcessed(WebTarget url, long contentHash) {
+        numProcessing--;
+        numProcessed++;
+        Entry entry = handedOut.remove(url);
+        if (entry == null) {
+            long fingerprint = UrlFingerprint.of(url.getUrl());
+            entry = entries.get(fingerprint);
+            if (entry == null) {
+                // target not handed out by this frontier
+                entry = new Entry((WebTargetImpl) url, initialInterval);
+                entries.put(fingerprint, entry);
+            }
+        }
+        if (entry.contentHash != 0 && contentHash != 0 && contentHash != entry.contentHash) {
+            entry.interval = clamp(entry.interval / 2);
+        }
+        else if (entry.contentHash != 0 || contentHash == 0) {
+            entry.interval = clamp(entry.interval + entry.interval / 2);
+        }
+        if (contentHash != 0) {
+            entry.contentHash = contentHash;
+        }
+        entry.due = clock.getAsLong() + entry.interval;
+        entry.sequence = sequence++;
+        revisits.add(entry);
+    }
+
+    /**
+     * Gets the current revisit interval of the given URL.
+     *
+     * @param url
+     *            normalized URL
+     * @return interval in milliseconds, or -1 if the URL is unknown
+     */
+    public synchronized long getRevisitInterval(String url) {
+        Entry entry = entries.get(UrlFingerprint.of(url));
+        return (entry == null) ? -1 : entry.interval;
+    }
+
+    @Override
+    public synchronized long getNumberOfProcessingPages() {
+        return numProcessing;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each revisit is counted.
+     */
+    @Override
+    public synchronized long getNumberOfProcessedPages() {
+        return numProcessed;
+    }
+
+    @Override
+    public synchronized long getNumberOfScheduledPages() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized boolean isFinished() {
+        return numProcessing == 0 && newTargets.isEmpty() && revisits.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean isSeenBefore(String url) {
+        return entries.containsKey(UrlFingerprint.of(url));
+    }
+
+    @Override
+    public boolean isContinuous() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All known targets are saved as pending. Revisit intervals and content hashes are not
+     * saved, so after restoring the checkpoint, every target is visited once more before
+     * adapting its interval again.
+     */
+    @Override
+    public synchronized void writeCheckpoint(CrawlCheckpoint checkpoint,
+        Collection<WebTargetImpl> inFlight) {
+        inFlight.forEach(checkpoint::addPending);
+        newTargets.forEach(entry -> checkpoint.addPending(entry.target));
+        revisits.forEach(entry -> checkpoint.addPending(entry.target));
+    }
+
+    @Override
+    public synchronized void restoreCheckpoint(CrawlCheckpoint checkpoint) throws IOException {
+        checkpoint.readPending(this::schedule);
+    }
+
+    private long clamp(long interval) {
+        return Math.max(minInterval, Math.min(maxInterval, interval));
+    }
+
+    /**
+     * A known target with its revisit state.
+     */
+    private static class Entry {
+
+        private final WebTargetImpl target;
+
+        /**
+         * URL of the target when it was scheduled.
+         */
+        private final String url;
+
+        private long interval;
+
+        private long due;
+
+        private long sequence;
+
+        private long contentHash;
+
+        Entry(WebTargetImpl target, long interval) {
+            this.target = target;
+            this.url = target.getUrl();
+            this.interval = interval;
+        }
+    }
+}
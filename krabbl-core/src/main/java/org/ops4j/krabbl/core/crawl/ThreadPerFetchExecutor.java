@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs each blocking fetch task on a thread of its own.
+ * <p>
+ * On a JVM supporting virtual threads, each task gets a new virtual thread, so blocking I/O
+ * scales to a very large number of concurrent fetches without tuning a thread pool. On older
+ * JVMs, tasks run on a fixed pool of platform threads with the same size as the global
+ * concurrency cap.
+ * <p>
+ * The number of tasks running at the same time is limited by a global cap and by a cap per
+ * host. Tasks exceeding the cap of their host are queued per host and only handed to a thread
+ * when a task of the same host has finished, so a waiting task holds neither a thread nor a
+ * global permit.
+ * <p>
+ * When the underlying executor rejects a task, e.g. after shutdown, the future of the task
+ * completes exceptionally with a {@link RejectedExecutionException}, and its host slot is
+ * handed over to the next waiting task.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class ThreadPerFetchExecutor {
+
+    private static Logger logger = LoggerFactory.getLogger(ThreadPerFetchExecutor.class);
+
+    /**
+     * Running and waiting tasks of a given host. Guarded by the map entry, i.e. only accessed
+     * within {@code compute} methods of {@link #hosts}.
+     */
+    private static class HostTasks {
+
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+        private int running;
+    }
+
+    private final ExecutorService threads;
+
+    private final Semaphore permits;
+
+    private final int maxTasksPerHost;
+
+    private final ConcurrentMap<String, HostTasks> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an executor with the given limits.
+     *
+     * @param maxTasks
+     *            maximum number of tasks running at the same time
+     * @param maxTasksPerHost
+     *            maximum number of tasks for the same host running at the same time
+     */
+    public ThreadPerFetchExecutor(int maxTasks, int maxTasksPerHost) {
+        if (maxTasks <= 0 || maxTasksPerHost <= 0) {
+            throw new IllegalArgumentException("Task limits must be positive");
+        }
+        this.permits = new Semaphore(maxTasks);
+        this.maxTasksPerHost = maxTasksPerHost;
+        this.threads = newThreadPerTaskExecutor(maxTasks);
+    }
+
+    /**
+     * Creates an executor with the given limits, running tasks on the given executor service.
+     *
+     * @param maxTasks
+     *            maximum number of tasks running at the same time
+     * @param maxTasksPerHost
+     *            maximum number of tasks for the same host running at the same time
+     * @param threads
+     *            executor service for running tasks
+     */
+    ThreadPerFetchExecutor(int maxTasks, int maxTasksPerHost, ExecutorService threads) {
+        if (maxTasks <= 0 || maxTasksPerHost <= 0) {
+            throw new IllegalArgumentException("Task limits must be positive");
+        }
+        this.permits = new Semaphore(maxTasks);
+        this.maxTasksPerHost = maxTasksPerHost;
+        this.threads = threads;
+    }
+
+    /**
+     * Creates a virtual thread per task executor if supported by the JVM, or else a fixed thread
+     * pool with the given size.
+     */
+    private static ExecutorService newThreadPerTaskExecutor(int poolSize) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            logger.debug("Using virtual threads for fetching");
+            return executor;
+        }
+        catch (ReflectiveOperationException | RuntimeException exc) {
+            logger.warn("Virtual threads are not supported by this JVM, "
+                + "using a pool of {} platform threads", poolSize);
+            return Executors.newFixedThreadPool(poolSize);
+        }
+    }
+
+    /**
+     * Runs the given blocking task for the given host on a thread of its own, as soon as the
+     * limits permit.
+     *
+     * @param host
+     *            host addressed by the task
+     * @param task
+     *            blocking task
+     * @return future result of the task
+     */
+    public <T> CompletableFuture<T> submit(String host, Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable start = () -> start(host, task, future);
+        boolean[] hasSlot = new boolean[1];
+        hosts.compute(host, (key, value) -> {
+            HostTasks tasks = (value == null) ? new HostTasks() : value;
+            if (tasks.running < maxTasksPerHost) {
+                tasks.running++;
+                hasSlot[0] = true;
+            }
+            else {
+                tasks.waiting.add(start);
+            }
+            return tasks;
+        });
+        if (hasSlot[0]) {
+            start.run();
+        }
+        return future;
+    }
+
+    /**
+     * Starts a task holding a host slot. The task is started outside of the map entry of its
+     * host, so that a rejected task can release its slot.
+     */
+    private <T> void start(String host, Supplier<T> task, CompletableFuture<T> future) {
+        try {
+            threads.execute(() -> run(host, task, future));
+        }
+        catch (RejectedExecutionException exc) {
+            startNext(host);
+            future.completeExceptionally(exc);
+        }
+    }
+
+    private <T> void run(String host, Supplier<T> task, CompletableFuture<T> future) {
+        T result = null;
+        Throwable failure = null;
+        permits.acquireUninterruptibly();
+        try {
+            result = task.get();
+        }
+        catch (Throwable exc) {
+            failure = exc;
+        }
+        finally {
+            permits.release();
+            startNext(host);
+        }
+        if (failure == null) {
+            future.complete(result);
+        }
+        else {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Hands over the host slot of a finished task to the next waiting task of the same host, or
+     * releases the slot.
+     */
+    private void startNext(String host) {
+        Runnable[] next = new Runnable[1];
+        hosts.computeIfPresent(host, (key, tasks) -> {
+            next[0] = tasks.waiting.poll();
+            if (next[0] != null) {
+                return tasks;
+            }
+            return (--tasks.running == 0) ? null : tasks;
+        });
+        if (next[0] != null) {
+            next[0].run();
+        }
+    }
+
+    /**
+     * Gets the number of hosts with running or waiting tasks.
+     *
+     * @return number of hosts
+     */
+    public int getNumberOfActiveHosts() {
+        return hosts.size();
+    }
+
+    /**
+     * Shuts down this executor. Running tasks will be completed.
+     */
+    public void shutdown() {
+        threads.shutdown();
+    }
+}
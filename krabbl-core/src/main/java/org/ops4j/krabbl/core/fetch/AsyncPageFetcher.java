@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.ops4j.krabbl.api.HttpClientConfiguration;
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.exc.PageBiggerThanMaxSizeException;
+
+/**
+ * Fetches pages with a non-blocking HTTP client.
+ * <p>
+ * {@link #fetchPageAsync(WebTarget, Validator, Executor)} does not occupy any thread while a
+ * request is in flight, so thousands of requests can be handled by a small number of I/O
+ * dispatcher threads.
+ * The inherited blocking {@link #fetchPage(WebTarget)} method is still available for occasional
+ * synchronous requests like fetching {@code robots.txt}.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class AsyncPageFetcher extends PageFetcher {
+
+    protected CloseableHttpAsyncClient asyncClient;
+
+    public AsyncPageFetcher(HttpClientConfiguration config) {
+        super(config);
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+            .setSoTimeout(config.getSocketTimeout())
+            .setConnectTimeout(config.getConnectionTimeout()).build();
+
+        HttpAsyncClientBuilder clientBuilder = HttpAsyncClients.custom();
+        clientBuilder.setDefaultIOReactorConfig(ioReactorConfig);
+        clientBuilder.setDefaultRequestConfig(createRequestConfig(config));
+        clientBuilder.setSSLStrategy(SSLIOSessionStrategy.getSystemDefaultStrategy());
+        clientBuilder.setMaxConnTotal(config.getMaxTotalConnections());
+        clientBuilder.setMaxConnPerRoute(config.getMaxConnectionsPerHost());
+        clientBuilder.setUserAgent(config.getUserAgentString());
+        clientBuilder.setDefaultHeaders(config.getDefaultHeaders());
+
+        if (config.getProxyHost() != null) {
+            if (config.getProxyUsername() != null) {
+                BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(
+                    new AuthScope(config.getProxyHost(), config.getProxyPort()),
+                    new UsernamePasswordCredentials(config.getProxyUsername(),
+                        config.getProxyPassword()));
+                clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+            }
+
+            HttpHost proxy = new HttpHost(config.getProxyHost(), config.getProxyPort());
+            clientBuilder.setProxy(proxy);
+        }
+
+        asyncClient = clientBuilder.build();
+        asyncClient.start();
+    }
+
+    /**
+     * Fetches the given page without blocking. The executor is not used, since the returned
+     * future is completed by the I/O dispatcher threads of the non-blocking client. Dependent
+     * stages doing any substantial work should therefore be run on a separate executor.
+     */
+    @Override
+    public CompletableFuture<PageFetchResult> fetchPageAsync(WebTarget webUrl,
+        Validator validator, Executor executor) {
+        logger.info("fetching {}", webUrl);
+        CompletableFuture<PageFetchResult> future = new CompletableFuture<>();
+        try {
+            String toFetchURL = webUrl.getUrl();
+            HttpUriRequest request = newHttpUriRequest(toFetchURL);
+            addConditionalHeaders(request, validator);
+            SizeLimitedResponseConsumer consumer = new SizeLimitedResponseConsumer(
+                getConfig().getMaxDownloadSize());
+            HttpClientContext context = HttpClientContext.create();
+            asyncClient.execute(HttpAsyncMethods.create(request), consumer, context,
+                new FutureCallback<HttpResponse>() {
+
+                    @Override
+                    public void completed(HttpResponse response) {
+                        try {
+                            PageFetchResult fetchResult = createFetchResult(toFetchURL, request,
+                                response);
+                            fetchResult.setRequest(getSentRequest(context, request));
+                            future.complete(fetchResult);
+                        }
+                        catch (IOException | RuntimeException exc) {
+                            future.completeExceptionally(exc);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception exc) {
+                        HttpResponse truncatedResponse = consumer.getTruncatedResponse();
+                        if (truncatedResponse != null) {
+                            completed(truncatedResponse);
+                        }
+                        else if (exc instanceof ContentTooLongException) {
+                            future.completeExceptionally(
+                                new PageBiggerThanMaxSizeException(consumer.getContentSize()));
+                        }
+                        else {
+                            future.completeExceptionally(exc);
+                        }
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        future.cancel(false);
+                    }
+                });
+        }
+        catch (RuntimeException exc) {
+            future.completeExceptionally(exc);
+        }
+        return future;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            asyncClient.close();
+        }
+        finally {
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Pool of reusable byte buffers for response bodies.
+ * <p>
+ * Buffer capacities are powers of two from {@value #MIN_CAPACITY} bytes up to a maximum
+ * capacity. The free list of each size class holds buffers up to a given total number of bytes,
+ * so fewer large buffers than small buffers are kept. Requests for
+ * buffers larger than the maximum capacity are served by unpooled buffers.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class BufferPool {
+
+    /**
+     * Capacity of the smallest size class.
+     */
+    public static final int MIN_CAPACITY = 4096;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+
+    private final boolean direct;
+
+    private final int[] maxFreeBuffers;
+
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> freeLists;
+
+    private final AtomicIntegerArray freeCounts;
+
+    /**
+     * Creates a buffer pool.
+     *
+     * @param maxCapacity
+     *            capacity of the largest pooled buffers, rounded up to a power of two
+     * @param maxFreeBytesPerClass
+     *            maximum number of bytes in free buffers kept per size class. At least one
+     *            buffer is kept per class.
+     * @param direct
+     *            allocate direct buffers instead of heap buffers?
+     */
+    public BufferPool(int maxCapacity, int maxFreeBytesPerClass, boolean direct) {
+        this.direct = direct;
+        int numClasses = sizeClass(Math.max(maxCapacity, MIN_CAPACITY)) + 1;
+        this.freeLists = new ArrayList<>(numClasses);
+        this.maxFreeBuffers = new int[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            freeLists.add(new ConcurrentLinkedQueue<>());
+            maxFreeBuffers[i] = Math.max(1, maxFreeBytesPerClass / (MIN_CAPACITY << i));
+        }
+        this.freeCounts = new AtomicIntegerArray(numClasses);
+    }
+
+    /**
+     * Gets the size class of the smallest buffer with the given minimum capacity.
+     */
+    private static int sizeClass(int minCapacity) {
+        if (minCapacity <= MIN_CAPACITY) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(minCapacity - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Gets a cleared buffer with at least the given capacity.
+     *
+     * @param minCapacity
+     *            minimum capacity
+     * @return buffer with position 0 and limit equal to its capacity
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClass(minCapacity);
+        if (sizeClass >= freeLists.size()) {
+            return allocate(minCapacity);
+        }
+        ByteBuffer buffer = freeLists.get(sizeClass).poll();
+        if (buffer == null) {
+            return allocate(MIN_CAPACITY << sizeClass);
+        }
+        freeCounts.decrementAndGet(sizeClass);
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns the given buffer to this pool. Buffers not acquired from this pool or exceeding the
+     * free list limit are left to the garbage collector. The caller must not use the buffer
+     * afterwards.
+     *
+     * @param buffer
+     *            buffer
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (buffer.isDirect() != direct || buffer.isReadOnly() || Integer.bitCount(capacity) != 1
+            || capacity < MIN_CAPACITY) {
+            return;
+        }
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass >= freeLists.size()) {
+            return;
+        }
+        if (freeCounts.incrementAndGet(sizeClass) > maxFreeBuffers[sizeClass]) {
+            freeCounts.decrementAndGet(sizeClass);
+            return;
+        }
+        freeLists.get(sizeClass).offer(buffer);
+    }
+
+    /**
+     * Gets the number of free buffers in this pool.
+     *
+     * @return number of free buffers
+     */
+    public int getNumberOfFreeBuffers() {
+        int count = 0;
+        for (int i = 0; i < freeCounts.length(); i++) {
+            count += freeCounts.get(i);
+        }
+        return count;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ops4j.krabbl.api.Page;
+
+/**
+ * Archive for the content of fetched pages, stored in segment files. The content of each page
+ * is streamed from the network into a region of the current segment with a channel transfer,
+ * so it is never held on the heap. The page only keeps the offset and length of its region,
+ * and its content is read back through a memory-mapped view.
+ * <p>
+ * Since the length of a response is not always known in advance, each fetch reserves a region
+ * for the announced content length or the maximum download size, so that concurrent fetches
+ * can write to the same segment without waiting for each other. The unused part of a region is
+ * given back if no other region has been reserved after it. Otherwise, it remains a hole in
+ * the segment file, which takes no disk space on most file systems.
+ * <p>
+ * When a segment exceeds the segment size, a new segment is started. Segments are named
+ * {@code content-NNNNNN.seg}. Existing segments are never overwritten, so several archives may
+ * share the same directory.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class ContentArchive implements Closeable {
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    private Segment current;
+
+    private int nextIndex;
+
+    private boolean closed;
+
+    /**
+     * A segment file with its write position.
+     */
+    private static final class Segment {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        /**
+         * End of the last reserved region, guarded by the archive.
+         */
+        private long position;
+
+        Segment(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        /**
+         * Maps the given region of this segment. When the segment has been closed, the file
+         * is opened again, so that archived content remains accessible.
+         */
+        ByteBuffer map(long offset, int length) {
+            if (length == 0) {
+                return ByteBuffer.allocate(0);
+            }
+            try {
+                try {
+                    return channel.map(MapMode.READ_ONLY, offset, length);
+                }
+                catch (ClosedChannelException exc) {
+                    try (FileChannel readChannel = FileChannel.open(file,
+                        StandardOpenOption.READ)) {
+                        return readChannel.map(MapMode.READ_ONLY, offset, length);
+                    }
+                }
+            }
+            catch (IOException exc) {
+                throw new UncheckedIOException("cannot map content from " + file, exc);
+            }
+        }
+    }
+
+    /**
+     * Creates an archive in the given directory. The first segment is created on demand.
+     *
+     * @param directory
+     *            directory for segment files, will be created if needed
+     * @param segmentSize
+     *            size in bytes after which a new segment is started
+     * @throws IOException
+     *             when the directory cannot be created
+     */
+    public ContentArchive(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Streams content from the given input stream into this archive and sets it as archived
+     * content of the given page. The stream is not closed.
+     *
+     * @param page
+     *            page receiving the content
+     * @param is
+     *            input stream with the content
+     * @param contentLength
+     *            announced content length, or -1 if unknown
+     * @param maxBytes
+     *            maximum number of bytes to store. Further content is discarded, and the page is
+     *            marked as truncated. If not positive, the content is limited by the segment
+     *            size.
+     * @throws IOException
+     *             when reading or writing fails
+     */
+    public void store(Page page, InputStream is, long contentLength, int maxBytes)
+        throws IOException {
+        int limit = (int) Math.min((maxBytes > 0) ? maxBytes : segmentSize, Integer.MAX_VALUE);
+        int reserved = (contentLength >= 0) ? (int) Math.min(contentLength, limit) : limit;
+        Segment segment;
+        long offset;
+        synchronized (this) {
+            segment = reserve(reserved);
+            offset = segment.position - reserved;
+        }
+        if (reserved > 0) {
+            // extends the file, since a channel transfer does not write beyond the end
+            segment.channel.write(ByteBuffer.allocate(1), offset + reserved - 1);
+        }
+        ReadableByteChannel source = Channels.newChannel(is);
+        long length = 0;
+        while (length < reserved) {
+            long numTransferred = segment.channel.transferFrom(source, offset + length,
+                reserved - length);
+            if (numTransferred <= 0) {
+                break;
+            }
+            length += numTransferred;
+        }
+        boolean truncated = length == limit && is.read() != -1;
+        synchronized (this) {
+            if (segment.position == offset + reserved) {
+                segment.position = offset + length;
+            }
+        }
+        int contentSize = (int) length;
+        page.setTrunctated(truncated);
+        page.setArchivedContent(offset, contentSize, () -> segment.map(offset, contentSize));
+    }
+
+    /**
+     * Reserves a region of the given size at the end of the current segment, starting a new
+     * segment if needed. Must be called while holding the lock of this archive.
+     */
+    private Segment reserve(int size) throws IOException {
+        if (closed) {
+            throw new IOException("content archive is closed");
+        }
+        if (current == null || (current.position > 0 && current.position + size > segmentSize)) {
+            current = createSegment();
+            segments.add(current);
+        }
+        current.position += size;
+        return current;
+    }
+
+    private Segment createSegment() throws IOException {
+        while (true) {
+            Path file = directory.resolve(String.format("content-%06d.seg", nextIndex++));
+            try {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                return new Segment(file, channel);
+            }
+            catch (FileAlreadyExistsException exc) {
+                // segment of a previous crawl, try next index
+            }
+        }
+    }
+
+    /**
+     * Gets the segment files of this archive, in order of creation.
+     *
+     * @return segment files
+     */
+    public synchronized List<Path> getSegments() {
+        List<Path> files = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            files.add(segment.file);
+        }
+        return files;
+    }
+
+    /**
+     * Closes all segments, truncating each segment file after its last region. The content of
+     * archived pages remains accessible.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        for (Segment segment : segments) {
+            try (FileChannel channel = segment.channel) {
+                channel.truncate(segment.position);
+            }
+            catch (IOException exc) {
+                if (failure == null) {
+                    failure = exc;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Computes 64-bit hashes of page content, for detecting content changes between two fetches.
+ * The content is processed eight bytes at a time.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class ContentHash {
+
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+
+    private static final long MULTIPLIER = 0xc2b2ae3d27d4eb4fL;
+
+    private ContentHash() {
+        // hidden constructor
+    }
+
+    /**
+     * Computes the hash of the given content. The buffer is not modified.
+     *
+     * @param content
+     *            content from position to limit
+     * @return non-zero hash
+     */
+    public static long of(ByteBuffer content) {
+        ByteBuffer buffer = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        long hash = SEED ^ (limit - pos);
+        for (; pos + 8 <= limit; pos += 8) {
+            hash = Long.rotateLeft(hash ^ buffer.getLong(pos) * MULTIPLIER, 31) * SEED;
+        }
+        for (; pos < limit; pos++) {
+            hash = Long.rotateLeft(hash ^ (buffer.get(pos) & 0xFF) * MULTIPLIER, 31) * SEED;
+        }
+        hash = mix(hash);
+        return (hash == 0) ? 1 : hash;
+    }
+
+    /**
+     * Final avalanche step of MurmurHash3.
+     */
+    private static long mix(long hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
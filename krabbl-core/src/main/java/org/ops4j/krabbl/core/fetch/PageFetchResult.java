@@ -19,12 +19,14 @@ package org.ops4j.krabbl.core.fetch;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.StatusLine;
 import org.apache.http.entity.ContentType;
-import org.apache.http.util.ByteArrayBuffer;
 import org.apache.http.util.EntityUtils;
 import org.ops4j.krabbl.api.Page;
 import org.slf4j.Logger;
@@ -38,10 +40,15 @@ public class PageFetchResult {
     protected static final Logger logger = LoggerFactory.getLogger(PageFetchResult.class);
 
     protected int statusCode;
+    protected StatusLine statusLine;
+    protected HttpRequest request;
+    protected long fetchTime;
     protected HttpEntity entity;
     protected Header[] responseHeaders;
     protected String fetchedUrl;
     protected String movedToUrl;
+    protected BufferPool bufferPool;
+    protected ContentArchive contentArchive;
 
     public int getStatusCode() {
         return statusCode;
@@ -51,6 +58,45 @@ public class PageFetchResult {
         this.statusCode = statusCode;
     }
 
+    /**
+     * Gets the status line of the response, including the protocol version and reason phrase.
+     *
+     * @return status line, or null if unknown
+     */
+    public StatusLine getStatusLine() {
+        return statusLine;
+    }
+
+    public void setStatusLine(StatusLine statusLine) {
+        this.statusLine = statusLine;
+    }
+
+    /**
+     * Gets the request as sent to the server, including the headers added by the HTTP client.
+     *
+     * @return request, or null if unknown
+     */
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    public void setRequest(HttpRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Gets the time when the response was received.
+     *
+     * @return time in milliseconds since the epoch
+     */
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    public void setFetchTime(long fetchTime) {
+        this.fetchTime = fetchTime;
+    }
+
     public HttpEntity getEntity() {
         return entity;
     }
@@ -111,57 +157,146 @@ public class PageFetchResult {
             page.setContentCharset(charset.displayName());
         }
 
-        toByteArray(page, entity, maxBytes);
+        if (contentArchive == null) {
+            toByteArray(page, entity, maxBytes);
+        }
+        else {
+            toArchive(page, entity, maxBytes);
+        }
+    }
+
+    /**
+     * Streams contents from an entity into the content archive of this result, with a specified
+     * maximum. The page only keeps the offset and length of the archived content.
+     *
+     * @param entity The entity from which to read
+     * @param maxBytes The maximum number of bytes to read
+     *
+     * @throws IOException Thrown when reading or writing fails for any reason
+     */
+    protected void toArchive(Page page, HttpEntity entity, int maxBytes) throws IOException {
+        if (entity == null) {
+            page.setContentData(new byte[0]);
+            return;
+        }
+        try (InputStream is = entity.getContent()) {
+            contentArchive.store(page, is, entity.getContentLength(), maxBytes);
+        }
     }
 
     /**
      * Read contents from an entity, with a specified maximum. This is a replacement of
      * EntityUtils.toByteArray because that function does not impose a maximum size.
+     * <p>
+     * The content is read into a buffer from the buffer pool of this result, if any. The buffer
+     * starts with the announced content length, or with the smallest pooled size, and grows by
+     * doubling. The page returns the buffer to the pool when its content is released.
      *
      * @param entity The entity from which to read
      * @param maxBytes The maximum number of bytes to read
-     * @return A byte array containing maxBytes or fewer bytes read from the entity
      *
      * @throws IOException Thrown when reading fails for any reason
      */
     protected void toByteArray(Page page, HttpEntity entity, int maxBytes) throws IOException {
         if (entity == null) {
             page.setContentData(new byte[0]);
+            return;
         }
+        int limit = (maxBytes > 0) ? maxBytes : Integer.MAX_VALUE;
+        long size = entity.getContentLength();
+        // one more byte than announced, to detect the end of the stream without growing
+        int initialCapacity = (size >= 0) ? (int) Math.min(size + 1, limit)
+            : BufferPool.MIN_CAPACITY;
+        ByteBuffer buffer = acquire(initialCapacity);
         try (InputStream is = entity.getContent()) {
-            int size = (int) entity.getContentLength();
-            int readBufferLength = size;
-
-            if (readBufferLength <= 0) {
-                readBufferLength = 4096;
-            }
-            // in case when the maxBytes is less than the actual page size
-            readBufferLength = Math.min(readBufferLength, maxBytes);
-
-            // We allocate the buffer with either the actual size of the entity (if available)
-            // or with the default 4KiB if the server did not return a value to avoid allocating
-            // the full maxBytes (for the cases when the actual size will be smaller than maxBytes).
-            ByteArrayBuffer buffer = new ByteArrayBuffer(readBufferLength);
-
-            byte[] tmpBuff = new byte[4096];
-            int dataLength;
+            byte[] transfer = null;
             boolean truncated = false;
-            while ((dataLength = is.read(tmpBuff)) != -1) {
-                if (maxBytes > 0 && (buffer.length() + dataLength) > maxBytes) {
-                    truncated = true;
-                    dataLength = maxBytes - buffer.length();
+            while (true) {
+                int length = Math.min(buffer.remaining(), limit - buffer.position());
+                if (length == 0) {
+                    if (buffer.position() >= limit) {
+                        truncated = is.read() != -1;
+                        break;
+                    }
+                    buffer = grow(buffer, limit);
+                    continue;
+                }
+                int numRead;
+                if (buffer.hasArray()) {
+                    numRead = is.read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                        length);
+                    if (numRead > 0) {
+                        buffer.position(buffer.position() + numRead);
+                    }
+                }
+                else {
+                    if (transfer == null) {
+                        transfer = new byte[BufferPool.MIN_CAPACITY];
+                    }
+                    numRead = is.read(transfer, 0, Math.min(length, transfer.length));
+                    if (numRead > 0) {
+                        buffer.put(transfer, 0, numRead);
+                    }
                 }
-                buffer.append(tmpBuff, 0, dataLength);
-                if (truncated) {
+                if (numRead < 0) {
                     break;
                 }
             }
+            buffer.flip();
             page.setTrunctated(truncated);
-            page.setContentData(buffer.toByteArray());
+            ByteBuffer content = buffer;
+            page.setContent(content,
+                (bufferPool == null) ? null : () -> bufferPool.release(content));
+        }
+        catch (IOException | RuntimeException exc) {
+            release(buffer);
+            throw exc;
         }
     }
 
+    private ByteBuffer grow(ByteBuffer buffer, int limit) {
+        int capacity = (int) Math.min(2L * buffer.capacity(), limit);
+        ByteBuffer larger = acquire(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
 
+    private ByteBuffer acquire(int capacity) {
+        if (bufferPool == null) {
+            return ByteBuffer.allocate(capacity);
+        }
+        return bufferPool.acquire(capacity);
+    }
+
+    private void release(ByteBuffer buffer) {
+        if (bufferPool != null) {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Sets the pool for content buffers. Without a pool, a new buffer is allocated for each
+     * page.
+     *
+     * @param bufferPool
+     *            buffer pool, or null
+     */
+    public void setBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Sets the archive for content. When set, content is streamed into the archive instead of a
+     * buffer in memory.
+     *
+     * @param contentArchive
+     *            content archive, or null
+     */
+    public void setContentArchive(ContentArchive contentArchive) {
+        this.contentArchive = contentArchive;
+    }
 
     public void discardContentIfNotConsumed() {
         try {
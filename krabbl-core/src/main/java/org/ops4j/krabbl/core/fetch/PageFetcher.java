@@ -19,10 +19,16 @@ package org.ops4j.krabbl.core.fetch;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -31,6 +37,8 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
@@ -40,6 +48,8 @@ import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
 import org.ops4j.krabbl.api.HttpClientConfiguration;
 import org.ops4j.krabbl.api.WebTarget;
 import org.ops4j.krabbl.core.exc.PageBiggerThanMaxSizeException;
@@ -48,22 +58,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Fetches pages with a blocking HTTP client.
+ * <p>
+ * The fetcher does not apply any politeness delay. Callers are expected to obtain a time slot
+ * for the given host from a {@link PolitenessScheduler} before fetching a page.
+ *
  * @author Yasser Ganjisaffar
  */
 public class PageFetcher implements Closeable {
 
+    /**
+     * Maximum number of bytes in free content buffers per size class.
+     */
+    private static final int FREE_BUFFER_BYTES_PER_CLASS = 8 * 1024 * 1024;
+
     protected static final Logger logger = LoggerFactory.getLogger(PageFetcher.class);
     protected PoolingHttpClientConnectionManager connectionManager;
     protected CloseableHttpClient httpClient;
-    protected long lastFetchTime = 0;
     private HttpClientConfiguration config;
+    private BufferPool bufferPool;
 
     public PageFetcher(HttpClientConfiguration config) {
         this.config = config;
-        RequestConfig requestConfig = RequestConfig.custom().setExpectContinueEnabled(false)
-            .setCookieSpec(CookieSpecs.STANDARD).setRedirectsEnabled(false)
-            .setSocketTimeout(config.getSocketTimeout())
-            .setConnectTimeout(config.getConnectionTimeout()).build();
+        this.bufferPool = new BufferPool(config.getMaxDownloadSize(), FREE_BUFFER_BYTES_PER_CLASS,
+            config.isDirectContentBuffers());
+        RequestConfig requestConfig = createRequestConfig(config);
 
         RegistryBuilder<ConnectionSocketFactory> connRegistryBuilder = RegistryBuilder.create();
         connRegistryBuilder.register("http", PlainConnectionSocketFactory.INSTANCE);
@@ -101,62 +120,185 @@ public class PageFetcher implements Closeable {
     }
 
     public PageFetchResult fetchPage(WebTarget webUrl)
-        throws InterruptedException, IOException, PageBiggerThanMaxSizeException {
+        throws IOException, PageBiggerThanMaxSizeException {
+        return fetchPage(webUrl, null);
+    }
+
+    /**
+     * Fetches the given page, sending a conditional request if there is a validator from a
+     * previous fetch. If the page has not been modified, the result has status code 304 and no
+     * entity.
+     *
+     * @param webUrl
+     *            target to be fetched
+     * @param validator
+     *            validator of a previous fetch, or null
+     * @return fetch result
+     * @throws IOException
+     *             when the request fails
+     * @throws PageBiggerThanMaxSizeException
+     *             when the announced content length exceeds the maximum download size
+     */
+    public PageFetchResult fetchPage(WebTarget webUrl, Validator validator)
+        throws IOException, PageBiggerThanMaxSizeException {
         logger.info("fetching {}", webUrl);
         // Getting URL, setting headers & content
-        PageFetchResult fetchResult = new PageFetchResult();
-        String toFetchURL = webUrl.getUrl();
+        PageFetchResult fetchResult = null;
         HttpUriRequest request = null;
         try {
-            request = newHttpUriRequest(toFetchURL);
-            applyPolitenessDelay();
-
-            CloseableHttpResponse response = httpClient.execute(request);
-            fetchResult.setEntity(response.getEntity());
-            fetchResult.setResponseHeaders(response.getAllHeaders());
-
-            // Setting HttpStatus
-            int statusCode = response.getStatusLine().getStatusCode();
-
-            // If Redirect ( 3xx )
-            if (statusCode == HttpStatus.SC_MOVED_PERMANENTLY
-                || statusCode == HttpStatus.SC_MOVED_TEMPORARILY
-                || statusCode == HttpStatus.SC_MULTIPLE_CHOICES
-                || statusCode == HttpStatus.SC_SEE_OTHER
-                || statusCode == HttpStatus.SC_TEMPORARY_REDIRECT || statusCode == 308) {
-
-                Header header = response.getFirstHeader("Location");
-                if (header != null) {
-                    String movedToUrl = UrlNormalizer.normalize(header.getValue(), toFetchURL);
-                    fetchResult.setMovedToUrl(movedToUrl);
-                }
+            request = newHttpUriRequest(webUrl.getUrl());
+            addConditionalHeaders(request, validator);
+            HttpClientContext context = HttpClientContext.create();
+            CloseableHttpResponse response = httpClient.execute(request, context);
+            fetchResult = createFetchResult(webUrl.getUrl(), request, response);
+            fetchResult.setRequest(getSentRequest(context, request));
+            return fetchResult;
+        }
+        finally {
+            if ((fetchResult == null || fetchResult.getEntity() == null) && (request != null)) {
+                request.abort();
             }
-            else if (statusCode >= 200 && statusCode <= 299) {
-                fetchResult.setFetchedUrl(toFetchURL);
-                String uri = request.getURI().toString();
-                if (!uri.equals(toFetchURL)) {
-                    if (!UrlNormalizer.normalize(uri).equals(toFetchURL)) {
-                        fetchResult.setFetchedUrl(uri);
-                    }
-                }
+        }
+    }
 
-                if (fetchResult.getEntity() != null) {
-                    checkSize(fetchResult, response);
-                }
+    /**
+     * Fetches the given page asynchronously, without any validator.
+     *
+     * @param webUrl
+     *            target to be fetched
+     * @param executor
+     *            executor for blocking tasks
+     * @return future fetch result. The future completes exceptionally with the same exceptions
+     *         thrown by {@link #fetchPage(WebTarget)}.
+     */
+    public CompletableFuture<PageFetchResult> fetchPageAsync(WebTarget webUrl, Executor executor) {
+        return fetchPageAsync(webUrl, null, executor);
+    }
+
+    /**
+     * Fetches the given page asynchronously, sending a conditional request if there is a
+     * validator from a previous fetch. This implementation runs the blocking
+     * {@link #fetchPage(WebTarget, Validator)} method on the given executor. Subclasses using a
+     * non-blocking client shall override this method.
+     *
+     * @param webUrl
+     *            target to be fetched
+     * @param validator
+     *            validator of a previous fetch, or null
+     * @param executor
+     *            executor for blocking tasks
+     * @return future fetch result. The future completes exceptionally with the same exceptions
+     *         thrown by {@link #fetchPage(WebTarget, Validator)}.
+     */
+    public CompletableFuture<PageFetchResult> fetchPageAsync(WebTarget webUrl,
+        Validator validator, Executor executor) {
+        CompletableFuture<PageFetchResult> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(fetchPage(webUrl, validator));
+            }
+            catch (Exception | Error exc) {
+                future.completeExceptionally(exc);
             }
+        });
+        return future;
+    }
 
-            fetchResult.setStatusCode(statusCode);
-            return fetchResult;
+    /**
+     * Creates a fetch result from the given request and the response received for it.
+     *
+     * @param toFetchURL
+     *            normalized URL of the fetched target
+     * @param request
+     *            HTTP request
+     * @param response
+     *            HTTP response
+     * @return fetch result
+     * @throws IOException
+     *             when the response cannot be closed
+     * @throws PageBiggerThanMaxSizeException
+     *             when the announced content length exceeds the maximum download size
+     */
+    protected PageFetchResult createFetchResult(String toFetchURL, HttpUriRequest request,
+        HttpResponse response) throws IOException, PageBiggerThanMaxSizeException {
+        PageFetchResult fetchResult = new PageFetchResult();
+        fetchResult.setBufferPool(bufferPool);
+        fetchResult.setEntity(response.getEntity());
+        fetchResult.setResponseHeaders(response.getAllHeaders());
+        fetchResult.setStatusLine(response.getStatusLine());
+        fetchResult.setRequest(request);
+        fetchResult.setFetchTime(System.currentTimeMillis());
+
+        // Setting HttpStatus
+        int statusCode = response.getStatusLine().getStatusCode();
 
+        // If Redirect ( 3xx )
+        if (statusCode == HttpStatus.SC_MOVED_PERMANENTLY
+            || statusCode == HttpStatus.SC_MOVED_TEMPORARILY
+            || statusCode == HttpStatus.SC_MULTIPLE_CHOICES
+            || statusCode == HttpStatus.SC_SEE_OTHER
+            || statusCode == HttpStatus.SC_TEMPORARY_REDIRECT || statusCode == 308) {
+
+            Header header = response.getFirstHeader("Location");
+            if (header != null) {
+                String movedToUrl = UrlNormalizer.normalize(header.getValue(), toFetchURL);
+                fetchResult.setMovedToUrl(movedToUrl);
+            }
         }
-        finally {
-            if ((fetchResult.getEntity() == null) && (request != null)) {
-                request.abort();
+        else if (statusCode >= 200 && statusCode <= 299) {
+            fetchResult.setFetchedUrl(toFetchURL);
+            String uri = request.getURI().toString();
+            if (!uri.equals(toFetchURL)) {
+                if (!UrlNormalizer.normalize(uri).equals(toFetchURL)) {
+                    fetchResult.setFetchedUrl(uri);
+                }
+            }
+
+            if (fetchResult.getEntity() != null) {
+                checkSize(fetchResult, response);
             }
         }
+
+        fetchResult.setStatusCode(statusCode);
+        return fetchResult;
+    }
+
+    /**
+     * Adds the conditional request headers for the given validator, if any.
+     *
+     * @param request
+     *            request
+     * @param validator
+     *            validator of a previous fetch, or null
+     */
+    protected void addConditionalHeaders(HttpUriRequest request, Validator validator) {
+        if (validator == null) {
+            return;
+        }
+        if (validator.getEtag() != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, validator.getEtag());
+        }
+        if (validator.getLastModified() != 0) {
+            request.addHeader(HttpHeaders.IF_MODIFIED_SINCE,
+                DateUtils.formatDate(new Date(validator.getLastModified())));
+        }
     }
 
-    private void checkSize(PageFetchResult fetchResult, CloseableHttpResponse response)
+    /**
+     * Gets the request as sent by the HTTP client, including the headers added by the client.
+     *
+     * @param context
+     *            context of the executed request
+     * @param request
+     *            original request, returned if the context has no request
+     * @return sent request
+     */
+    protected static HttpRequest getSentRequest(HttpContext context, HttpRequest request) {
+        HttpRequest sentRequest = HttpCoreContext.adapt(context).getRequest();
+        return (sentRequest == null) ? request : sentRequest;
+    }
+
+    private void checkSize(PageFetchResult fetchResult, HttpResponse response)
         throws IOException, PageBiggerThanMaxSizeException {
         long size = fetchResult.getEntity().getContentLength();
         if (size == -1) {
@@ -166,26 +308,38 @@ public class PageFetcher implements Closeable {
             }
         }
         if (size > config.getMaxDownloadSize()) {
-            response.close();
+            if (response instanceof Closeable) {
+                ((Closeable) response).close();
+            }
             throw new PageBiggerThanMaxSizeException(size);
         }
     }
 
     /**
-     * Applies a politeness delay between two fetches.
-     * <p>
-     * TODO This delay is global, and it blocks the current thread. We should rather track the last
-     * fetch time per host and use scheduled tasks to avoid sleeping.
+     * Creates a request configuration with the timeouts from the given client configuration.
      *
-     * @throws InterruptedException
+     * @param config
+     *            HTTP client configuration
+     * @return request configuration
      */
-    private synchronized void applyPolitenessDelay() throws InterruptedException {
-        long now = System.currentTimeMillis();
-        long delay = config.getPolitenessDelay() - (now - lastFetchTime);
-        if (delay > 0) {
-            Thread.sleep(delay);
-        }
-        lastFetchTime = System.currentTimeMillis();
+    protected static RequestConfig createRequestConfig(HttpClientConfiguration config) {
+        return RequestConfig.custom().setExpectContinueEnabled(false)
+            .setCookieSpec(CookieSpecs.STANDARD).setRedirectsEnabled(false)
+            .setSocketTimeout(config.getSocketTimeout())
+            .setConnectTimeout(config.getConnectionTimeout()).build();
+    }
+
+    protected HttpClientConfiguration getConfig() {
+        return config;
+    }
+
+    /**
+     * Gets the pool of buffers for the content of fetched pages.
+     *
+     * @return buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
     }
 
     /**
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the politeness delay per host.
+ * <p>
+ * For each host, the scheduler remembers the time slot reserved for the most recent request.
+ * The next request to the same host is released no earlier than one politeness delay after
+ * that slot. Requests to different hosts never wait for each other, and no thread is blocked
+ * while waiting for a host to become due.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class PolitenessScheduler {
+
+    /**
+     * Minimum number of hosts before stale entries are purged.
+     */
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final ScheduledExecutorService executor;
+
+    private final long politenessDelay;
+
+    /**
+     * Maps each host to the time in milliseconds reserved for its most recent request.
+     */
+    private final ConcurrentMap<String, Long> reservedSlots = new ConcurrentHashMap<>();
+
+    private volatile int purgeLimit = PURGE_THRESHOLD;
+
+    /**
+     * Creates a politeness scheduler.
+     *
+     * @param executor
+     *            executor for releasing delayed requests
+     * @param politenessDelay
+     *            minimum delay in milliseconds between two requests to the same host
+     */
+    public PolitenessScheduler(ScheduledExecutorService executor, long politenessDelay) {
+        this.executor = executor;
+        this.politenessDelay = politenessDelay;
+    }
+
+    /**
+     * Reserves the next time slot for a request to the given host.
+     *
+     * @param host
+     *            host name, optionally including the port
+     * @return delay in milliseconds until the reserved slot, or 0 if the host is due now
+     */
+    public long reserve(String host) {
+        long now = System.currentTimeMillis();
+        long slot = reservedSlots.merge(host, now,
+            (previous, current) -> Math.max(previous + politenessDelay, current));
+        if (reservedSlots.size() > purgeLimit) {
+            purge(now);
+        }
+        return Math.max(0, slot - now);
+    }
+
+    /**
+     * Reserves the next time slot for a request to the given host and returns a future
+     * which completes when the slot is due.
+     *
+     * @param host
+     *            host name, optionally including the port
+     * @return future completed when the request may be sent
+     */
+    public CompletableFuture<Void> whenDue(String host) {
+        long delay = reserve(host);
+        if (delay == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> due = new CompletableFuture<>();
+        executor.schedule(() -> due.complete(null), delay, TimeUnit.MILLISECONDS);
+        return due;
+    }
+
+    /**
+     * Reserves the next time slot for a request to the given host and blocks the current
+     * thread until the slot is due. This is meant for occasional requests like fetching
+     * {@code robots.txt}, which are issued synchronously, and for fetches running on a thread of
+     * their own.
+     *
+     * @param host
+     *            host name, optionally including the port
+     * @throws InterruptedException
+     *             when interrupted while waiting
+     */
+    public void awaitDue(String host) throws InterruptedException {
+        long delay = reserve(host);
+        if (delay > 0) {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
+    }
+
+    /**
+     * Gets the number of hosts currently tracked by this scheduler.
+     *
+     * @return number of hosts
+     */
+    public int getNumberOfHosts() {
+        return reservedSlots.size();
+    }
+
+    /**
+     * Removes all hosts whose most recent slot is older than the politeness delay. These
+     * hosts would be due immediately anyway.
+     */
+    private void purge(long now) {
+        reservedSlots.values().removeIf(slot -> slot + politenessDelay <= now);
+        purgeLimit = Math.max(PURGE_THRESHOLD, 2 * reservedSlots.size());
+    }
+
+    /**
+     * Extracts the host part, including the port, from the given absolute URL.
+     *
+     * @param url
+     *            absolute URL
+     * @return host and port
+     */
+    public static String getHost(String url) {
+        int start = url.indexOf("//");
+        start = (start < 0) ? 0 : start + 2;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        return url.substring(start, end);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.ByteArrayBuffer;
+
+/**
+ * Buffers the response entity received by a non-blocking client in memory, up to a given
+ * maximum size.
+ * <p>
+ * A response announcing a content length above the maximum is rejected before reading the
+ * content, and the request fails with a {@link ContentTooLongException}. A response of unknown
+ * length is truncated as soon as it exceeds the maximum, and its connection is shut down, so that
+ * the rest of the content is never read. The request then fails as well, but the truncated
+ * response is available from {@link #getTruncatedResponse()}. Like the blocking fetcher, it has
+ * one byte beyond the maximum, so that the page is marked as truncated when loading its content.
+ *
+ * @author Harald Wellmann
+ *
+ */
+class SizeLimitedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final int maxBytes;
+
+    private HttpResponse response;
+
+    private ByteArrayBuffer content;
+
+    private ByteBuffer chunk;
+
+    private long contentLength = -1;
+
+    private long numBytesReceived;
+
+    private HttpResponse truncatedResponse;
+
+    SizeLimitedResponseConsumer(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the size of the content, as announced by the response or as received so far.
+     *
+     * @return content size in bytes
+     */
+    long getContentSize() {
+        return (contentLength >= 0) ? contentLength : numBytesReceived;
+    }
+
+    /**
+     * Gets the truncated response, if the content of unknown length exceeded the maximum size.
+     *
+     * @return truncated response, or null
+     */
+    HttpResponse getTruncatedResponse() {
+        return truncatedResponse;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse httpResponse) {
+        this.response = httpResponse;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+        contentLength = entity.getContentLength();
+        if (contentLength > maxBytes) {
+            throw new ContentTooLongException("Content length " + contentLength
+                + " exceeds maximum download size " + maxBytes);
+        }
+        int capacity = (contentLength >= 0) ? (int) contentLength : 4096;
+        content = new ByteArrayBuffer(Math.max(1, Math.min(capacity, maxBytes)));
+        chunk = ByteBuffer.allocate(CHUNK_SIZE);
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioControl)
+        throws IOException {
+        int numBytes;
+        while ((numBytes = decoder.read(chunk)) > 0) {
+            numBytesReceived += numBytes;
+            if (numBytesReceived > maxBytes) {
+                content.append(chunk.array(), 0,
+                    (int) (numBytes - (numBytesReceived - maxBytes - 1)));
+                truncatedResponse = buildResult(null);
+                ioControl.shutdown();
+                throw new ContentTooLongException("Content exceeds maximum download size "
+                    + maxBytes);
+            }
+            content.append(chunk.array(), 0, numBytes);
+            chunk.clear();
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) {
+        if (content != null) {
+            HttpEntity original = response.getEntity();
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(new ByteArrayInputStream(content.buffer(), 0, content.length()));
+            entity.setContentLength(contentLength);
+            entity.setContentType(original.getContentType());
+            entity.setContentEncoding(original.getContentEncoding());
+            response.setEntity(entity);
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        response = null;
+        content = null;
+        chunk = null;
+    }
+}
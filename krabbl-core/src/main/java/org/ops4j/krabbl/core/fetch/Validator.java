@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Validators of a previously fetched page, used for sending a conditional request when the page
+ * is fetched again. Besides the {@code ETag} and {@code Last-Modified} values of the response,
+ * a validator holds a hash of the content, for detecting changes of pages without any HTTP
+ * validators.
+ * <p>
+ * Instances of this class are immutable.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public final class Validator {
+
+    private final String etag;
+
+    private final long lastModified;
+
+    private final long contentHash;
+
+    /**
+     * Creates a validator.
+     *
+     * @param etag
+     *            entity tag, or null
+     * @param lastModified
+     *            last modification time in milliseconds since the epoch, or 0 if unknown
+     * @param contentHash
+     *            content hash, or 0 if unknown
+     */
+    public Validator(String etag, long lastModified, long contentHash) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Creates a validator from the given response headers.
+     *
+     * @param headers
+     *            response headers, may be null
+     * @param contentHash
+     *            content hash, or 0 if unknown
+     * @return validator
+     */
+    public static Validator fromHeaders(Header[] headers, long contentHash) {
+        String etag = null;
+        long lastModified = 0;
+        if (headers != null) {
+            for (Header header : headers) {
+                if (HttpHeaders.ETAG.equalsIgnoreCase(header.getName())) {
+                    etag = header.getValue();
+                }
+                else if (HttpHeaders.LAST_MODIFIED.equalsIgnoreCase(header.getName())) {
+                    Date date = DateUtils.parseDate(header.getValue());
+                    lastModified = (date == null) ? 0 : date.getTime();
+                }
+            }
+        }
+        return new Validator(etag, lastModified, contentHash);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Checks if this validator can be used for a conditional request.
+     *
+     * @return true if there is an entity tag or a modification time
+     */
+    public boolean isConditional() {
+        return etag != null || lastModified != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Validator [etag=" + etag + ", lastModified=" + lastModified + ", contentHash="
+            + Long.toHexString(contentHash) + "]";
+    }
+}
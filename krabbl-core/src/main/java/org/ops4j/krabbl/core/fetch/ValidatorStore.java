@@ -0,0 +1,602 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ops4j.krabbl.core.fetch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps URL fingerprints to the validators of previously fetched pages, using open addressing
+ * with linear probing in parallel arrays. A fingerprint of 0 marks an empty slot.
+ * <p>
+ * Entity tags are kept as strings. Modification times, content hashes and link offsets take 8
+ * bytes each, so an entry without entity tag takes 40 bytes, plus the free slots.
+ * <p>
+ * The outgoing links of a page are not kept on the heap. A store opened by {@link #open(Path)}
+ * appends them to a links file next to the store file, and each entry only holds the offset of
+ * its links record. Links put since the last {@link #save()} are kept in memory until then.
+ * <p>
+ * The store file is a log of entries, similar to the seen-set of a crawl checkpoint. Saving only
+ * appends the entries changed since the previous save, and the last record of a fingerprint wins
+ * when opening the store again. When most records of an opened store are stale, both files are
+ * compacted. A store created by {@link #ValidatorStore(int)} is not backed by any files and
+ * keeps all links in memory.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class ValidatorStore implements Closeable {
+
+    private static final int MAGIC = 0x4b52564c;
+
+    private static final int VERSION = 3;
+
+    /**
+     * Version of store files written as a whole, without links. Converted when opening.
+     */
+    private static final int VERSION_SNAPSHOT = 1;
+
+    /**
+     * Magic number, version and generation of the links file.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Size of an entry record without the bytes of the entity tag.
+     */
+    private static final int RECORD_SIZE = 36;
+
+    private static final long NO_LINKS = -1;
+
+    /**
+     * Minimum number of records in the store file before it is compacted.
+     */
+    static final int MIN_RECORDS_FOR_COMPACTION = 1024;
+
+    private long[] fingerprints;
+
+    private String[] etags;
+
+    private long[] lastModified;
+
+    private long[] contentHashes;
+
+    private long[] linkOffsets;
+
+    private int size;
+
+    /**
+     * Links put since the last save, by fingerprint.
+     */
+    private final Map<Long, List<String>> pendingLinks = new HashMap<>();
+
+    /**
+     * Fingerprints of the entries changed since the last save, only recorded with a store file.
+     */
+    private long[] changed = new long[64];
+
+    private int numChanged;
+
+    private Path file;
+
+    private FileChannel storeChannel;
+
+    private FileChannel linksChannel;
+
+    private long linksGeneration;
+
+    /**
+     * Number of entry records in the store file, including stale ones.
+     */
+    private long numRecords;
+
+    /**
+     * End of the last complete record in the store file.
+     */
+    private long storeEnd;
+
+    /**
+     * Creates an empty store which is not backed by any files.
+     *
+     * @param initialCapacity
+     *            initial number of slots, will be rounded up to a power of 2
+     */
+    public ValidatorStore(int initialCapacity) {
+        allocate(Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1);
+    }
+
+    /**
+     * Opens the store backed by the given file, creating the file if needed. A store file
+     * written by an earlier version without links is converted.
+     *
+     * @param file
+     *            store file
+     * @return opened store
+     * @throws IOException
+     *             when the file cannot be read or is invalid
+     */
+    public static ValidatorStore open(Path file) throws IOException {
+        ValidatorStore store = new ValidatorStore(1024);
+        store.file = file;
+        if (!Files.exists(file)) {
+            store.rewrite();
+            return store;
+        }
+        int version;
+        try (DataInputStream is = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(file)))) {
+            if (is.readInt() != MAGIC) {
+                throw new IOException("invalid validator store " + file);
+            }
+            version = is.readInt();
+            if (version == VERSION_SNAPSHOT) {
+                store.readSnapshot(is);
+            }
+            else if (version == VERSION) {
+                store.linksGeneration = is.readLong();
+                store.readLog(is);
+            }
+            else {
+                throw new IOException("invalid validator store " + file);
+            }
+        }
+        if (version == VERSION_SNAPSHOT) {
+            store.rewrite();
+            return store;
+        }
+        store.openChannels();
+        if (store.numRecords >= MIN_RECORDS_FOR_COMPACTION && store.numRecords > 2L * store.size) {
+            store.rewrite();
+        }
+        return store;
+    }
+
+    private void readSnapshot(DataInputStream is) throws IOException {
+        int numEntries = is.readInt();
+        for (int i = 0; i < numEntries; i++) {
+            long fingerprint = is.readLong();
+            String etag = is.readBoolean() ? is.readUTF() : null;
+            long modified = is.readLong();
+            long contentHash = is.readLong();
+            putEntry(fingerprint, etag, modified, contentHash, NO_LINKS);
+        }
+    }
+
+    /**
+     * Reads all complete entry records. A partial record at the end, left by a crash while
+     * saving, is discarded when opening the channels.
+     */
+    private void readLog(DataInputStream is) throws IOException {
+        storeEnd = HEADER_SIZE;
+        try {
+            while (true) {
+                long fingerprint = is.readLong();
+                long modified = is.readLong();
+                long contentHash = is.readLong();
+                long offset = is.readLong();
+                int etagLength = is.readInt();
+                String etag = null;
+                if (etagLength >= 0) {
+                    byte[] bytes = new byte[etagLength];
+                    is.readFully(bytes);
+                    etag = new String(bytes, StandardCharsets.UTF_8);
+                }
+                putEntry(fingerprint, etag, modified, contentHash, offset);
+                numRecords++;
+                storeEnd += RECORD_SIZE + Math.max(0, etagLength);
+            }
+        }
+        catch (EOFException exc) {
+            // end of log
+        }
+    }
+
+    private void openChannels() throws IOException {
+        storeChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+        storeChannel.truncate(storeEnd);
+        storeChannel.position(storeEnd);
+        linksChannel = FileChannel.open(linksFile(linksGeneration), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        linksChannel.position(linksChannel.size());
+    }
+
+    /**
+     * Gets the validator of the given fingerprint. The links of the page are not included, see
+     * {@link #getLinks(long)}.
+     *
+     * @param fingerprint
+     *            non-zero URL fingerprint
+     * @return validator, or null if the fingerprint is not contained
+     */
+    public synchronized Validator get(long fingerprint) {
+        int slot = find(fingerprint);
+        if (fingerprints[slot] == 0) {
+            return null;
+        }
+        return new Validator(etags[slot], lastModified[slot], contentHashes[slot]);
+    }
+
+    /**
+     * Gets the outgoing links of the page with the given fingerprint, reading them from the
+     * links file if needed.
+     *
+     * @param fingerprint
+     *            non-zero URL fingerprint
+     * @return normalized URLs, empty if the fingerprint is not contained
+     * @throws UncheckedIOException
+     *             when the links cannot be read
+     */
+    public synchronized List<String> getLinks(long fingerprint) {
+        int slot = find(fingerprint);
+        if (fingerprints[slot] == 0) {
+            return Collections.emptyList();
+        }
+        List<String> links = pendingLinks.get(fingerprint);
+        if (links != null) {
+            return Collections.unmodifiableList(links);
+        }
+        if (linkOffsets[slot] == NO_LINKS) {
+            return Collections.emptyList();
+        }
+        try {
+            return readLinks(linkOffsets[slot]);
+        }
+        catch (IOException exc) {
+            throw new UncheckedIOException("cannot read links from " + file, exc);
+        }
+    }
+
+    /**
+     * Sets the validator of the given fingerprint, without any links.
+     *
+     * @param fingerprint
+     *            non-zero URL fingerprint
+     * @param validator
+     *            validator
+     */
+    public void put(long fingerprint, Validator validator) {
+        put(fingerprint, validator, Collections.emptyList());
+    }
+
+    /**
+     * Sets the validator and the outgoing links of the given fingerprint.
+     *
+     * @param fingerprint
+     *            non-zero URL fingerprint
+     * @param validator
+     *            validator
+     * @param links
+     *            normalized URLs of the outgoing links of the page
+     */
+    public synchronized void put(long fingerprint, Validator validator, List<String> links) {
+        putEntry(fingerprint, validator.getEtag(), validator.getLastModified(),
+            validator.getContentHash(), NO_LINKS);
+        if (links.isEmpty()) {
+            pendingLinks.remove(fingerprint);
+        }
+        else {
+            pendingLinks.put(fingerprint, new ArrayList<>(links));
+        }
+        markChanged(fingerprint);
+    }
+
+    /**
+     * Replaces the validator of the given fingerprint, keeping its links. Does nothing if the
+     * fingerprint is not contained.
+     *
+     * @param fingerprint
+     *            non-zero URL fingerprint
+     * @param validator
+     *            validator
+     */
+    public synchronized void update(long fingerprint, Validator validator) {
+        int slot = find(fingerprint);
+        if (fingerprints[slot] == 0) {
+            return;
+        }
+        etags[slot] = validator.getEtag();
+        lastModified[slot] = validator.getLastModified();
+        contentHashes[slot] = validator.getContentHash();
+        markChanged(fingerprint);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends the links and entries changed since the previous save to the files of this store.
+     * Does nothing for a store without files.
+     *
+     * @throws IOException
+     *             when the files cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (storeChannel == null || numChanged == 0) {
+            return;
+        }
+        Map<Long, Long> offsets = new HashMap<>();
+        long linksEnd = linksChannel.position();
+        DataOutputStream links = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(linksChannel)));
+        for (Map.Entry<Long, List<String>> entry : pendingLinks.entrySet()) {
+            offsets.put(entry.getKey(), linksEnd + links.size());
+            writeLinks(links, entry.getValue());
+        }
+        links.flush();
+        linksChannel.force(false);
+
+        Set<Long> written = new HashSet<>();
+        DataOutputStream os = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(storeChannel)));
+        for (int i = 0; i < numChanged; i++) {
+            long fingerprint = changed[i];
+            if (written.add(fingerprint)) {
+                int slot = find(fingerprint);
+                Long offset = offsets.get(fingerprint);
+                if (offset != null) {
+                    linkOffsets[slot] = offset;
+                }
+                writeRecord(os, slot);
+                numRecords++;
+            }
+        }
+        os.flush();
+        storeChannel.force(false);
+        pendingLinks.clear();
+        numChanged = 0;
+        if (changed.length > 64) {
+            changed = new long[64];
+        }
+    }
+
+    /**
+     * Saves this store and closes its files.
+     *
+     * @throws IOException
+     *             when the files cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (storeChannel == null) {
+            return;
+        }
+        try {
+            save();
+        }
+        finally {
+            storeChannel.close();
+            linksChannel.close();
+            storeChannel = null;
+            linksChannel = null;
+        }
+    }
+
+    /**
+     * Writes all entries to a new store file and their links to a new links file, replacing the
+     * previous files atomically.
+     */
+    private void rewrite() throws IOException {
+        long generation = linksGeneration + 1;
+        Path newLinksFile = linksFile(generation);
+        try (FileChannel channel = FileChannel.open(newLinksFile, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (int slot = 0; slot < fingerprints.length; slot++) {
+                if (fingerprints[slot] == 0) {
+                    continue;
+                }
+                List<String> links = pendingLinks.get(fingerprints[slot]);
+                if (links == null && linkOffsets[slot] != NO_LINKS) {
+                    links = readLinks(linkOffsets[slot]);
+                }
+                if (links == null) {
+                    linkOffsets[slot] = NO_LINKS;
+                }
+                else {
+                    linkOffsets[slot] = os.size();
+                    writeLinks(os, links);
+                }
+            }
+            os.flush();
+            channel.force(true);
+        }
+
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream os = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeLong(generation);
+            for (int slot = 0; slot < fingerprints.length; slot++) {
+                if (fingerprints[slot] != 0) {
+                    writeRecord(os, slot);
+                }
+            }
+            os.flush();
+            channel.force(true);
+            storeEnd = os.size();
+        }
+        if (storeChannel != null) {
+            storeChannel.close();
+            linksChannel.close();
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(linksFile(linksGeneration));
+
+        linksGeneration = generation;
+        numRecords = size;
+        pendingLinks.clear();
+        numChanged = 0;
+        openChannels();
+    }
+
+    private Path linksFile(long generation) {
+        return file.resolveSibling(file.getFileName() + ".links-" + generation);
+    }
+
+    private void writeRecord(DataOutputStream os, int slot) throws IOException {
+        os.writeLong(fingerprints[slot]);
+        os.writeLong(lastModified[slot]);
+        os.writeLong(contentHashes[slot]);
+        os.writeLong(linkOffsets[slot]);
+        if (etags[slot] == null) {
+            os.writeInt(-1);
+        }
+        else {
+            byte[] bytes = etags[slot].getBytes(StandardCharsets.UTF_8);
+            os.writeInt(bytes.length);
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Writes a links record, consisting of its length, the number of links and the links.
+     */
+    private static void writeLinks(DataOutputStream os, List<String> links) throws IOException {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream ros = new DataOutputStream(record);
+        ros.writeInt(links.size());
+        for (String link : links) {
+            ros.writeUTF(link);
+        }
+        os.writeInt(record.size());
+        record.writeTo(os);
+    }
+
+    private List<String> readLinks(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(record, offset + Integer.BYTES);
+        DataInputStream is = new DataInputStream(new ByteArrayInputStream(record.array()));
+        String[] links = new String[is.readInt()];
+        for (int i = 0; i < links.length; i++) {
+            links[i] = is.readUTF();
+        }
+        return Collections.unmodifiableList(Arrays.asList(links));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (linksChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("truncated links file " + linksFile(linksGeneration));
+            }
+        }
+    }
+
+    private void markChanged(long fingerprint) {
+        if (file == null) {
+            return;
+        }
+        if (numChanged == changed.length) {
+            changed = Arrays.copyOf(changed, 2 * numChanged);
+        }
+        changed[numChanged++] = fingerprint;
+    }
+
+    private void putEntry(long fingerprint, String etag, long modified, long contentHash,
+        long linkOffset) {
+        int slot = find(fingerprint);
+        boolean inserted = fingerprints[slot] == 0;
+        set(slot, fingerprint, etag, modified, contentHash, linkOffset);
+        if (inserted) {
+            size++;
+            if (size > fingerprints.length - (fingerprints.length >>> 2)) {
+                grow();
+            }
+        }
+    }
+
+    /**
+     * Finds the slot containing the given fingerprint, or the empty slot where it should be
+     * inserted.
+     */
+    private int find(long fingerprint) {
+        int mask = fingerprints.length - 1;
+        int slot = (int) (fingerprint >>> 32 ^ fingerprint >>> 2) & mask;
+        long key;
+        while ((key = fingerprints[slot]) != 0 && key != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void set(int slot, long fingerprint, String etag, long modified, long contentHash,
+        long linkOffset) {
+        fingerprints[slot] = fingerprint;
+        etags[slot] = etag;
+        lastModified[slot] = modified;
+        contentHashes[slot] = contentHash;
+        linkOffsets[slot] = linkOffset;
+    }
+
+    private void allocate(int capacity) {
+        fingerprints = new long[capacity];
+        etags = new String[capacity];
+        lastModified = new long[capacity];
+        contentHashes = new long[capacity];
+        linkOffsets = new long[capacity];
+    }
+
+    private void grow() {
+        long[] oldFingerprints = fingerprints;
+        String[] oldEtags = etags;
+        long[] oldLastModified = lastModified;
+        long[] oldContentHashes = contentHashes;
+        long[] oldLinkOffsets = linkOffsets;
+        allocate(2 * oldFingerprints.length);
+        for (int i = 0; i < oldFingerprints.length; i++) {
+            if (oldFingerprints[i] != 0) {
+                set(find(oldFingerprints[i]), oldFingerprints[i], oldEtags[i], oldLastModified[i],
+                    oldContentHashes[i], oldLinkOffsets[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ops4j.krabbl.api.ParseData;
+import org.ops4j.krabbl.api.WebTarget;
+
+/**
+ * Parse data of binary content. Binary content has no outgoing links, unless a specialized
+ * parser finds some.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class BinaryParseData implements ParseData {
+
+    private Set<WebTarget> outgoingUrls = new HashSet<>();
+
+    @Override
+    public Set<WebTarget> getOutgoingUrls() {
+        return outgoingUrls;
+    }
+
+    @Override
+    public void setOutgoingUrls(Set<WebTarget> outgoingUrls) {
+        this.outgoingUrls = outgoingUrls;
+    }
+}
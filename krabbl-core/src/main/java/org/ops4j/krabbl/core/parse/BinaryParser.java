@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.spi.Parser;
+
+/**
+ * Fallback parser for all content types not handled by any other parser. The content is not
+ * inspected at all.
+ * <p>
+ * The priority of this parser is below {@link Parser#DEFAULT_PRIORITY}, so that any other parser
+ * for {@value ParserRegistry#ANY_MIME_TYPE} replaces it, including parsers which do not declare
+ * any MIME types.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class BinaryParser implements Parser {
+
+    @Override
+    public Collection<String> getMimeTypes() {
+        return Collections.singletonList(ParserRegistry.ANY_MIME_TYPE);
+    }
+
+    @Override
+    public int getPriority() {
+        return DEFAULT_PRIORITY - 1;
+    }
+
+    @Override
+    public void parse(Page page, String contextUrl) {
+        page.setParseData(new BinaryParseData());
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Locale;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.parser.Parser;
+
+/**
+ * Single pass scanner for HTML markup, following the tokenizer rules of HTML5 closely enough to
+ * find the same start tags as a full parser. The scanner works on the raw bytes of an
+ * ASCII-compatible encoding, and only decodes the attribute values it is interested in. The
+ * content buffer is accessed by absolute indexes only, so it may be a read-only or a direct
+ * buffer.
+ * <p>
+ * Comments, doctypes, processing instructions and the contents of raw text elements like
+ * {@code script} or {@code style} are skipped.
+ *
+ * @author Harald Wellmann
+ *
+ */
+class HtmlLinkScanner {
+
+    /** Element with a link in its {@code href} attribute. */
+    private static final int HREF = 1;
+
+    /** Element with a link in its {@code src} attribute. */
+    private static final int SRC = 2;
+
+    private static final int META = 4;
+
+    private static final int TITLE = 8;
+
+    /** Element whose content is not markup. */
+    private static final int RAW_TEXT = 16;
+
+    /** Element whose content extends to the end of the document. */
+    private static final int PLAIN_TEXT = 32;
+
+    private static final String[] TAG_NAMES = { "a", "area", "link", "img", "image", "embed",
+        "frame", "iframe", "script", "meta", "title", "style", "textarea", "xmp", "noembed",
+        "noframes", "plaintext" };
+
+    private static final int[] TAG_TYPES = { HREF, HREF, HREF, SRC, SRC, SRC, SRC,
+        SRC | RAW_TEXT, SRC | RAW_TEXT, META, TITLE | RAW_TEXT, RAW_TEXT, RAW_TEXT, RAW_TEXT,
+        RAW_TEXT, RAW_TEXT, PLAIN_TEXT };
+
+    private final ByteBuffer data;
+
+    private final OutgoingLinks links;
+
+    private final HtmlParseData parseData;
+
+    /**
+     * Charset for decoding attribute values.
+     */
+    private Charset charset;
+
+    /**
+     * If true, the charset was not specified by the response and may be taken from a meta tag.
+     */
+    private boolean detectCharset;
+
+    private int pos;
+
+    private String href;
+
+    private String src;
+
+    private String httpEquiv;
+
+    private String name;
+
+    private String content;
+
+    private String metaCharset;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param data
+     *            HTML content in an ASCII-compatible encoding, from position 0 to the limit
+     * @param charset
+     *            charset of the content, or null to detect the charset from a meta tag
+     * @param links
+     *            outgoing links of the page, which has a parse data object to be filled
+     */
+    HtmlLinkScanner(ByteBuffer data, Charset charset, OutgoingLinks links) {
+        this.data = data;
+        this.links = links;
+        this.parseData = (HtmlParseData) links.getPage().getParseData();
+        this.detectCharset = (charset == null);
+        this.charset = detectCharset ? StandardCharsets.UTF_8 : charset;
+    }
+
+    /**
+     * Scans the content, adding all outgoing links, the title and the meta tags to the parse
+     * data of the page.
+     */
+    void scan() {
+        parseData.setTitle("");
+        parseData.setMetaTags(new HashMap<>());
+        boolean titleFound = false;
+        int length = data.limit();
+        while (pos < length) {
+            int lt = indexOf('<', pos);
+            if (lt < 0) {
+                break;
+            }
+            pos = lt + 1;
+            if (pos >= length) {
+                break;
+            }
+            byte b = data.get(pos);
+            if (isLetter(b)) {
+                int type = scanStartTag();
+                if (type < 0) {
+                    break;
+                }
+                if ((type & PLAIN_TEXT) != 0) {
+                    break;
+                }
+                if ((type & RAW_TEXT) != 0) {
+                    int start = pos;
+                    int end = skipRawText(TAG_NAMES[type >>> 8]);
+                    if ((type & TITLE) != 0 && !titleFound) {
+                        parseData.setTitle(decodeTitle(start, end));
+                        titleFound = true;
+                    }
+                }
+            }
+            else if (b == '/') {
+                pos++;
+                if (pos < length && isLetter(data.get(pos))) {
+                    skipTagName();
+                    skipAttributes(false);
+                }
+                else {
+                    skipBogusComment();
+                }
+            }
+            else if (b == '!') {
+                if (startsWith("!--", pos)) {
+                    int end = indexOf("-->", pos + 3);
+                    pos = (end < 0) ? length : end + 3;
+                }
+                else {
+                    skipBogusComment();
+                }
+            }
+            else if (b == '?') {
+                skipBogusComment();
+            }
+        }
+    }
+
+    /**
+     * Scans a start tag, with the current position at the first letter of the tag name, and
+     * handles any links in it. On return, the current position is after the end of the tag.
+     *
+     * @return tag type flags, with the index of the tag name in the upper bits, or -1 if the tag
+     *         is not terminated
+     */
+    private int scanStartTag() {
+        int start = pos;
+        skipTagName();
+        int index = findTagName(start, pos);
+        int type = (index < 0) ? 0 : TAG_TYPES[index];
+        // once the link limit is reached, only meta tags are of interest
+        boolean record = (type & META) != 0
+            || ((type & (HREF | SRC)) != 0 && !links.isFull());
+        if (record) {
+            href = null;
+            src = null;
+            httpEquiv = null;
+            name = null;
+            content = null;
+            metaCharset = null;
+        }
+        if (!skipAttributes(record)) {
+            return -1;
+        }
+        if ((type & HREF) != 0 && href != null) {
+            links.add(href);
+        }
+        if ((type & SRC) != 0 && src != null) {
+            links.add(src);
+        }
+        if ((type & META) != 0) {
+            handleMeta();
+        }
+        return (index < 0) ? 0 : (type | (index << 8));
+    }
+
+    private void handleMeta() {
+        String equiv = (httpEquiv == null || httpEquiv.isEmpty()) ? name : httpEquiv;
+        if (equiv != null && !equiv.isEmpty() && content != null) {
+            equiv = equiv.toLowerCase(Locale.ROOT);
+            parseData.getMetaTags().putIfAbsent(equiv, content);
+            JsoupHtmlParser.addMetaTagLinks(links, equiv, content);
+            if ("content-type".equals(equiv)) {
+                int charsetPos = content.toLowerCase(Locale.ROOT).indexOf("charset=");
+                if (charsetPos >= 0) {
+                    switchCharset(content.substring(charsetPos + 8));
+                }
+            }
+        }
+        if (metaCharset != null) {
+            switchCharset(metaCharset);
+        }
+    }
+
+    /**
+     * Switches to the charset declared by a meta tag, unless the charset was specified by the
+     * response or the declared charset is not ASCII-compatible.
+     */
+    private void switchCharset(String charsetName) {
+        if (!detectCharset) {
+            return;
+        }
+        try {
+            Charset declared = Charset.forName(charsetName.trim().replace("\"", ""));
+            if (StreamingHtmlParser.isAsciiCompatible(declared)) {
+                charset = declared;
+                detectCharset = false;
+            }
+        }
+        catch (IllegalCharsetNameException | UnsupportedCharsetException exc) {
+            // keep the current charset
+        }
+    }
+
+    /**
+     * Skips the attributes of a tag up to and including the closing bracket.
+     *
+     * @param record
+     *            if true, the values of relevant attributes are recorded
+     * @return false if the document ends within the tag
+     */
+    private boolean skipAttributes(boolean record) {
+        int length = data.limit();
+        while (pos < length) {
+            byte b = data.get(pos);
+            if (b == '>') {
+                pos++;
+                return true;
+            }
+            if (isWhitespace(b) || b == '/') {
+                pos++;
+                continue;
+            }
+            int nameStart = pos;
+            pos++;
+            while (pos < length && !isWhitespace(data.get(pos)) && data.get(pos) != '/'
+                && data.get(pos) != '=' && data.get(pos) != '>') {
+                pos++;
+            }
+            int nameEnd = pos;
+            skipWhitespace();
+            if (pos < length && data.get(pos) == '=') {
+                pos++;
+                skipWhitespace();
+                if (pos >= length) {
+                    return false;
+                }
+                int valueStart;
+                int valueEnd;
+                byte quote = data.get(pos);
+                if (quote == '"' || quote == '\'') {
+                    valueStart = pos + 1;
+                    valueEnd = indexOf((char) quote, valueStart);
+                    if (valueEnd < 0) {
+                        return false;
+                    }
+                    pos = valueEnd + 1;
+                }
+                else {
+                    valueStart = pos;
+                    while (pos < length && !isWhitespace(data.get(pos))
+                        && data.get(pos) != '>') {
+                        pos++;
+                    }
+                    valueEnd = pos;
+                }
+                if (record) {
+                    recordAttribute(nameStart, nameEnd, valueStart, valueEnd);
+                }
+            }
+            else if (record) {
+                recordAttribute(nameStart, nameEnd, pos, pos);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the value of a relevant attribute. For repeated attributes, the last occurrence
+     * wins, like in Jsoup.
+     */
+    private void recordAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (equalsIgnoreCase("href", nameStart, nameEnd)) {
+            href = decodeValue(valueStart, valueEnd);
+        }
+        else if (equalsIgnoreCase("src", nameStart, nameEnd)) {
+            src = decodeValue(valueStart, valueEnd);
+        }
+        else if (equalsIgnoreCase("http-equiv", nameStart, nameEnd)) {
+            httpEquiv = decodeValue(valueStart, valueEnd);
+        }
+        else if (equalsIgnoreCase("name", nameStart, nameEnd)) {
+            name = decodeValue(valueStart, valueEnd);
+        }
+        else if (equalsIgnoreCase("content", nameStart, nameEnd)) {
+            content = decodeValue(valueStart, valueEnd);
+        }
+        else if (equalsIgnoreCase("charset", nameStart, nameEnd)) {
+            metaCharset = decodeValue(valueStart, valueEnd);
+        }
+    }
+
+    private String decodeValue(int start, int end) {
+        String value = decode(start, end);
+        if (value.indexOf('&') >= 0) {
+            value = Parser.unescapeEntities(value, true);
+        }
+        return value;
+    }
+
+    private String decodeTitle(int start, int end) {
+        String title = decode(start, end);
+        if (title.indexOf('&') >= 0) {
+            title = Parser.unescapeEntities(title, false);
+        }
+        return StringUtil.normaliseWhitespace(title).trim();
+    }
+
+    private String decode(int start, int end) {
+        ByteBuffer slice = data.duplicate();
+        slice.limit(end);
+        slice.position(start);
+        return charset.decode(slice).toString();
+    }
+
+    /**
+     * Skips the content of a raw text element and its end tag.
+     *
+     * @param tagName
+     *            lower case tag name
+     * @return end of the element content
+     */
+    private int skipRawText(String tagName) {
+        int length = data.limit();
+        int from = pos;
+        while (true) {
+            int lt = indexOf("</", from);
+            if (lt < 0) {
+                pos = length;
+                return length;
+            }
+            int nameEnd = lt + 2 + tagName.length();
+            if (nameEnd <= length && equalsIgnoreCase(tagName, lt + 2, nameEnd)
+                && (nameEnd == length || isWhitespace(data.get(nameEnd))
+                    || data.get(nameEnd) == '/' || data.get(nameEnd) == '>')) {
+                pos = nameEnd;
+                skipAttributes(false);
+                return lt;
+            }
+            from = lt + 2;
+        }
+    }
+
+    private void skipTagName() {
+        int length = data.limit();
+        while (pos < length && !isWhitespace(data.get(pos)) && data.get(pos) != '/'
+            && data.get(pos) != '>') {
+            pos++;
+        }
+    }
+
+    private void skipBogusComment() {
+        int end = indexOf('>', pos);
+        pos = (end < 0) ? data.limit() : end + 1;
+    }
+
+    private void skipWhitespace() {
+        while (pos < data.limit() && isWhitespace(data.get(pos))) {
+            pos++;
+        }
+    }
+
+    private int findTagName(int start, int end) {
+        for (int i = 0; i < TAG_NAMES.length; i++) {
+            if (equalsIgnoreCase(TAG_NAMES[i], start, end)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(char c, int from) {
+        for (int i = from; i < data.limit(); i++) {
+            if (data.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(String s, int from) {
+        int last = data.limit() - s.length();
+        for (int i = from; i <= last; i++) {
+            if (startsWith(s, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(String s, int from) {
+        if (from + s.length() > data.limit()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (data.get(from + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares a byte range with a lower case ASCII string, ignoring the case of the bytes.
+     */
+    private boolean equalsIgnoreCase(String s, int start, int end) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            int b = data.get(start + i);
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+}
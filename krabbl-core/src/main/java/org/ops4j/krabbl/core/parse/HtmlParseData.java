@@ -19,55 +19,151 @@ package org.ops4j.krabbl.core.parse;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.ops4j.krabbl.api.ParseData;
 import org.ops4j.krabbl.api.WebTarget;
 
+/**
+ * Parse data of an HTML page.
+ * <p>
+ * Outgoing links are always available. HTML, text, title and meta tags are computed on first
+ * access from the Jsoup document of the page and then cached. A parser may provide the document
+ * directly, or a loader which parses the content only when the document is needed.
+ */
 public class HtmlParseData implements ParseData {
 
+    private Supplier<Document> documentLoader;
+    private Document document;
     private String html;
     private String text;
     private String title;
-    private Map<String, String> metaTags = new HashMap<>();
+    private Map<String, String> metaTags;
 
     private Set<WebTarget> outgoingUrls = new HashSet<>();
 
-    public String getHtml() {
+    /**
+     * Gets the Jsoup document of this page, parsing the content on first access. For a deferred
+     * parse, the content of the page must still be available, see
+     * {@link org.ops4j.krabbl.api.Page#getContent()}.
+     *
+     * @return document, or null if not available
+     * @throws IllegalStateException
+     *             if the content of the page has been released before the first access
+     */
+    public synchronized Document getDocument() {
+        if (document == null && documentLoader != null) {
+            document = documentLoader.get();
+            documentLoader = null;
+        }
+        return document;
+    }
+
+    public synchronized void setDocument(Document document) {
+        this.document = document;
+        this.documentLoader = null;
+    }
+
+    /**
+     * Sets a loader for the Jsoup document of this page, which will be invoked at most once,
+     * when the document, the HTML or the text of the page is requested.
+     *
+     * @param documentLoader
+     *            document loader
+     */
+    public synchronized void setDocumentLoader(Supplier<Document> documentLoader) {
+        this.documentLoader = documentLoader;
+    }
+
+    public synchronized String getHtml() {
+        if (html == null && getDocument() != null) {
+            html = document.html();
+        }
         return html;
     }
 
-    public void setHtml(String html) {
+    public synchronized void setHtml(String html) {
         this.html = html;
     }
 
-    public String getText() {
+    public synchronized String getText() {
+        if (text == null && getDocument() != null) {
+            text = document.text();
+        }
         return text;
     }
 
-    public void setText(String text) {
+    public synchronized void setText(String text) {
         this.text = text;
     }
 
-    public String getTitle() {
+    /**
+     * Gets the title of this page. If the title was not set by the parser, it is taken from a
+     * document already parsed, but this method never triggers parsing the document.
+     *
+     * @return title, or null if not available
+     */
+    public synchronized String getTitle() {
+        if (title == null && document != null) {
+            title = document.title();
+        }
         return title;
     }
 
-    public void setTitle(String title) {
+    public synchronized void setTitle(String title) {
         this.title = title;
     }
 
-    public Map<String, String> getMetaTags() {
+    /**
+     * Gets the meta tags of this page, mapping the lower case {@code http-equiv} or {@code name}
+     * attributes to the {@code content} attribute. If the meta tags were not set by the parser,
+     * they are taken from a document already parsed, but this method never triggers parsing the
+     * document.
+     *
+     * @return modifiable map of meta tags
+     */
+    public synchronized Map<String, String> getMetaTags() {
+        if (metaTags == null) {
+            metaTags = new HashMap<>();
+            if (document != null) {
+                for (Element meta : document.select("meta[content]")) {
+                    String name = getMetaTagName(meta);
+                    if (!name.isEmpty()) {
+                        metaTags.putIfAbsent(name, meta.attr("content"));
+                    }
+                }
+            }
+        }
         return metaTags;
     }
 
-    public void setMetaTags(Map<String, String> metaTags) {
+    public synchronized void setMetaTags(Map<String, String> metaTags) {
         this.metaTags = metaTags;
     }
 
     public String getMetaTagValue(String metaTag) {
-        return metaTags.getOrDefault(metaTag, "");
+        return getMetaTags().getOrDefault(metaTag, "");
+    }
+
+    /**
+     * Gets the name of the given meta tag, taken from the {@code http-equiv} or the {@code name}
+     * attribute.
+     *
+     * @param meta
+     *            meta element
+     * @return lower case name, or an empty string
+     */
+    static String getMetaTagName(Element meta) {
+        String name = meta.attr("http-equiv");
+        if (name.isEmpty()) {
+            name = meta.attr("name");
+        }
+        return name.toLowerCase(Locale.ROOT);
     }
 
     @Override
@@ -80,8 +176,12 @@ public class HtmlParseData implements ParseData {
         this.outgoingUrls = outgoingUrls;
     }
 
+    /**
+     * Returns the text of this page, if already computed. This method never triggers parsing
+     * the document.
+     */
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return text;
     }
 }
\ No newline at end of file
@@ -17,21 +17,19 @@
  */
 package org.ops4j.krabbl.core.parse;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.ops4j.krabbl.api.Page;
-import org.ops4j.krabbl.api.WebTarget;
 import org.ops4j.krabbl.core.exc.ParseException;
 import org.ops4j.krabbl.core.spi.Parser;
-import org.ops4j.krabbl.core.url.UrlNormalizer;
-import org.ops4j.krabbl.core.url.WebTargetBuilder;
-import org.ops4j.krabbl.core.url.WebTargetImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,91 +39,112 @@ import org.slf4j.LoggerFactory;
  */
 public class JsoupHtmlParser implements Parser {
 
-    private Logger logger = LoggerFactory.getLogger(JsoupHtmlParser.class);
+    /**
+     * MIME types of HTML content.
+     */
+    static final List<String> HTML_MIME_TYPES = Arrays.asList("text/html", "application/xhtml+xml");
+
+    private static Logger logger = LoggerFactory.getLogger(JsoupHtmlParser.class);
+
+    @Override
+    public Collection<String> getMimeTypes() {
+        return HTML_MIME_TYPES;
+    }
 
     @Override
     public void parse(Page page, String contextUrl) {
-        HtmlParseData parseData = new HtmlParseData();
-        page.setParseData(parseData);
-        try (InputStream is = new ByteArrayInputStream(page.getContentData())) {
-            Document document = Jsoup.parse(is, page.getContentCharset(), contextUrl);
-            parseDocument(page, contextUrl, document, parseData);
-        }
-        catch (IOException exc) {
-            logger.error("Error parsing content of {}", page, exc);
-            throw new ParseException();
-        }
+        parse(page, contextUrl, Integer.MAX_VALUE);
     }
 
-    private void parseDocument(Page page, String contextUrl, Document document, HtmlParseData parseData) {
-        parseData.setHtml(document.html());
-        parseData.setTitle(document.title());
-        parseData.setText(document.text());
+    @Override
+    public void parse(Page page, String contextUrl, int maxOutgoingLinks) {
+        HtmlParseData parseData = new HtmlParseData();
+        page.setParseData(parseData);
+        Document document = parseDocument(page, contextUrl);
+        parseData.setDocument(document);
 
-        findMetaTags(page, contextUrl, document);
-        findHrefLinks(page, contextUrl, document);
-        findSrcLinks(page, contextUrl, document);
+        OutgoingLinks links = new OutgoingLinks(page, contextUrl, maxOutgoingLinks);
+        findMetaTags(links, document);
+        findHrefLinks(links, document);
+        findSrcLinks(links, document);
     }
 
-    private void findHrefLinks(Page page, String contextUrl, Document document) {
-        Elements links = document.select("a[href], area[href], link[href]");
-        for (Element link : links) {
-            addToOutgoingUrls(page, contextUrl, link.attr("href"));
+    /**
+     * Parses the HTML content of the given page into a Jsoup document.
+     *
+     * @param page
+     *            page with content, and with the content charset if known
+     * @param contextUrl
+     *            base URL of the document
+     * @return document
+     * @throws IllegalStateException
+     *             if the content of the page has been released
+     */
+    static Document parseDocument(Page page, String contextUrl) {
+        ByteBuffer content = page.getContent();
+        if (content == null) {
+            throw new IllegalStateException("content of " + contextUrl + " has been released");
         }
-    }
-
-    private void findSrcLinks(Page page, String contextUrl, Document document) {
-        Elements links = document.select("img[src], embed[src], frame[src], iframe[src], script[src]");
-        for (Element link : links) {
-            addToOutgoingUrls(page, contextUrl, link.attr("src"));
+        try (InputStream is = new ByteBufferInputStream(content)) {
+            return Jsoup.parse(is, page.getContentCharset(), contextUrl);
         }
-    }
-
-    private void addToOutgoingUrls(Page page, String contextUrl, String relativeUrl) {
-        String outgoing = UrlNormalizer.normalize(relativeUrl, contextUrl);
-        if (outgoing != null) {
-            WebTarget target = buildWebTarget(outgoing, page.getWebTarget());
-            page.getParseData().getOutgoingUrls().add(target);
+        catch (IOException exc) {
+            logger.error("Error parsing content of {}", contextUrl, exc);
+            throw new ParseException();
         }
     }
 
-    private void findMetaTags(Page page, String contextUrl, Document document) {
-        Elements metas = document.select("meta");
-        for (Element meta : metas) {
-            parseMetaTag(meta, page, contextUrl);
+    private void findHrefLinks(OutgoingLinks links, Document document) {
+        for (Element link : document.select("a[href], area[href], link[href]")) {
+            if (links.isFull()) {
+                return;
+            }
+            links.add(link.attr("href"));
         }
     }
 
-    private void parseMetaTag(Element meta, Page page, String contextUrl) {
-        String equiv = meta.attr("http-equiv");
-        if (equiv == null) {
-            equiv = meta.attr("name");
+    private void findSrcLinks(OutgoingLinks links, Document document) {
+        for (Element link : document
+            .select("img[src], embed[src], frame[src], iframe[src], script[src]")) {
+            if (links.isFull()) {
+                return;
+            }
+            links.add(link.attr("src"));
         }
+    }
 
-        String content = meta.attr("content");
-        if (equiv != null && content != null) {
-
-            // http-equiv="refresh" content="0; URL=http://foo.bar/..."
-            if ("refresh".equals(equiv)) {
-                int pos = content.toLowerCase().indexOf("url=");
-                if (pos != -1) {
-                    String metaRefresh = content.substring(pos + 4);
-                    addToOutgoingUrls(page, contextUrl, metaRefresh);
-                }
+    private void findMetaTags(OutgoingLinks links, Document document) {
+        for (Element meta : document.select("meta")) {
+            String equiv = HtmlParseData.getMetaTagName(meta);
+            if (!equiv.isEmpty() && meta.hasAttr("content")) {
+                addMetaTagLinks(links, equiv, meta.attr("content"));
             }
+        }
+    }
 
-            // http-equiv="location" content="http://foo.bar/..."
-            if ("location".equals(equiv)) {
-                addToOutgoingUrls(page, contextUrl, content);
+    /**
+     * Adds any link contained in the given meta tag to the outgoing URLs.
+     *
+     * @param links
+     *            outgoing links of the page containing the meta tag
+     * @param equiv
+     *            lower case value of the {@code http-equiv} or {@code name} attribute
+     * @param content
+     *            value of the {@code content} attribute
+     */
+    static void addMetaTagLinks(OutgoingLinks links, String equiv, String content) {
+        // http-equiv="refresh" content="0; URL=http://foo.bar/..."
+        if ("refresh".equals(equiv)) {
+            int pos = content.toLowerCase().indexOf("url=");
+            if (pos != -1) {
+                String metaRefresh = content.substring(pos + 4);
+                links.add(metaRefresh);
             }
         }
-    }
 
-    private WebTarget buildWebTarget(String outgoing, WebTarget parent) {
-        WebTargetImpl webTarget = new WebTargetBuilder(outgoing).build();
-        webTarget.setUrl(outgoing);
-        webTarget.setReferringUrl(parent.getUrl());
-        webTarget.setDepth(parent.getDepth() + 1);
-        return webTarget;
+        // http-equiv="location" content="http://foo.bar/..."
+        if ("location".equals(equiv)) {
+            links.add(content);
+        }
     }
 }
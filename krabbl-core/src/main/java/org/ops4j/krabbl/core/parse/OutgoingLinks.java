@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.url.UrlNormalizer;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * Collects the outgoing links of a page while the page is being parsed.
+ * <p>
+ * Raw links are deduplicated before they are normalized, using an open addressing table with
+ * linear probing. After a given number of distinct raw links, any further links are ignored, so
+ * that pages with huge numbers of links cost a bounded amount of time and memory.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+final class OutgoingLinks {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Page page;
+
+    private final String contextUrl;
+
+    private final int maxLinks;
+
+    /**
+     * Raw links seen so far. The length is a power of two, and the table is at most half full.
+     */
+    private String[] links = new String[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Creates a link collector for the given page. The parse data of the page must be set.
+     *
+     * @param page
+     *            page being parsed
+     * @param contextUrl
+     *            base URL for relative links
+     * @param maxLinks
+     *            maximum number of distinct raw links to process
+     */
+    OutgoingLinks(Page page, String contextUrl, int maxLinks) {
+        this.page = page;
+        this.contextUrl = contextUrl;
+        this.maxLinks = maxLinks;
+    }
+
+    Page getPage() {
+        return page;
+    }
+
+    String getContextUrl() {
+        return contextUrl;
+    }
+
+    /**
+     * Checks if the maximum number of links has been reached, so that the parser need not look
+     * for any further links.
+     *
+     * @return true if further links will be ignored
+     */
+    boolean isFull() {
+        return size >= maxLinks;
+    }
+
+    /**
+     * Adds the given link to the outgoing URLs of the page, unless the same raw link has been
+     * added before, the link is invalid, or the maximum number of links has been reached.
+     *
+     * @param relativeUrl
+     *            raw link, relative to the context URL
+     */
+    void add(String relativeUrl) {
+        if (isFull() || !insert(relativeUrl)) {
+            return;
+        }
+        String outgoing = UrlNormalizer.normalize(relativeUrl, contextUrl);
+        if (outgoing != null) {
+            WebTarget target = buildWebTarget(outgoing, page.getWebTarget());
+            page.getParseData().getOutgoingUrls().add(target);
+        }
+    }
+
+    /**
+     * Inserts the given link into the table of raw links.
+     *
+     * @return false if the link is already contained in the table
+     */
+    private boolean insert(String link) {
+        int mask = links.length - 1;
+        int index = spread(link.hashCode()) & mask;
+        while (links[index] != null) {
+            if (links[index].equals(link)) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        links[index] = link;
+        size++;
+        if (2 * size > links.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    private void rehash() {
+        String[] oldLinks = links;
+        links = new String[2 * oldLinks.length];
+        int mask = links.length - 1;
+        for (String link : oldLinks) {
+            if (link != null) {
+                int index = spread(link.hashCode()) & mask;
+                while (links[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                links[index] = link;
+            }
+        }
+    }
+
+    /**
+     * Mixes the high bits of a hash code into the low bits used as table index.
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static WebTarget buildWebTarget(String outgoing, WebTarget parent) {
+        WebTargetImpl webTarget = WebTargetBuilder.fromNormalizedUrl(outgoing);
+        webTarget.setReferringUrl(parent.getUrl());
+        webTarget.setDepth(parent.getDepth() + 1);
+        return webTarget;
+    }
+}
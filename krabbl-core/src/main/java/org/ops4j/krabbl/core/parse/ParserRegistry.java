@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.ops4j.krabbl.core.spi.Parser;
+import org.ops4j.krabbl.core.url.ContentTypeUtil;
+
+/**
+ * Selects the parser for a given MIME type.
+ * <p>
+ * A parser is looked up by the exact MIME type first, then by the wildcard subtype like
+ * {@code image/*}, and finally by {@value #ANY_MIME_TYPE}. For each MIME type, the parser with
+ * the highest priority wins, and a tie is broken by the fully qualified class names.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class ParserRegistry {
+
+    /**
+     * Wildcard matching all MIME types.
+     */
+    public static final String ANY_MIME_TYPE = "*/*";
+
+    /**
+     * MIME type assumed for pages without a content type.
+     */
+    public static final String DEFAULT_MIME_TYPE = "text/html";
+
+    private final Map<String, Parser> parsers = new HashMap<>();
+
+    /**
+     * Creates a registry with all parsers registered via the Java {@link ServiceLoader}.
+     *
+     * @return parser registry
+     */
+    public static ParserRegistry load() {
+        ParserRegistry registry = new ParserRegistry();
+        for (Parser parser : ServiceLoader.load(Parser.class)) {
+            registry.register(parser);
+        }
+        return registry;
+    }
+
+    /**
+     * Registers the given parser for all its MIME types, unless a parser with a higher
+     * priority is already registered for a given type.
+     *
+     * @param parser
+     *            parser
+     */
+    public void register(Parser parser) {
+        for (String mimeType : parser.getMimeTypes()) {
+            parsers.merge(mimeType.toLowerCase(Locale.ROOT), parser, ParserRegistry::preferred);
+        }
+    }
+
+    private static Parser preferred(Parser left, Parser right) {
+        if (left.getPriority() != right.getPriority()) {
+            return (left.getPriority() > right.getPriority()) ? left : right;
+        }
+        return (left.getClass().getName().compareTo(right.getClass().getName()) <= 0) ? left
+            : right;
+    }
+
+    /**
+     * Gets the parser for the given content type.
+     *
+     * @param contentType
+     *            content type, optionally with parameters, or null for the default type
+     * @return parser, or null if there is no matching parser
+     */
+    public Parser getParser(String contentType) {
+        String mimeType = ContentTypeUtil.getMimeType(contentType);
+        if (mimeType == null) {
+            mimeType = DEFAULT_MIME_TYPE;
+        }
+        Parser parser = parsers.get(mimeType);
+        if (parser == null) {
+            int slash = mimeType.indexOf('/');
+            if (slash > 0) {
+                parser = parsers.get(mimeType.substring(0, slash) + "/*");
+            }
+        }
+        if (parser == null) {
+            parser = parsers.get(ANY_MIME_TYPE);
+        }
+        return parser;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.spi.Parser;
+
+/**
+ * HTML parser extracting outgoing links, title and meta tags in a single pass over the content
+ * bytes, without building a DOM.
+ * <p>
+ * The HTML and text of the page are only computed when requested from the
+ * {@link HtmlParseData}, by a full Jsoup parse. This requires the content of the page, so it
+ * must happen while the page is being visited, unless the visitor retains the content.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class StreamingHtmlParser implements Parser {
+
+    private static final byte[] ASCII_PROBE = "<a href=\"/?&#\">"
+        .getBytes(StandardCharsets.US_ASCII);
+
+    private static final Map<Charset, Boolean> ASCII_COMPATIBLE = new ConcurrentHashMap<>();
+
+    @Override
+    public Collection<String> getMimeTypes() {
+        return JsoupHtmlParser.HTML_MIME_TYPES;
+    }
+
+    @Override
+    public void parse(Page page, String contextUrl) {
+        parse(page, contextUrl, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void parse(Page page, String contextUrl, int maxOutgoingLinks) {
+        HtmlParseData parseData = new HtmlParseData();
+        page.setParseData(parseData);
+        ByteBuffer content = page.getContent();
+        Charset charset = toCharset(page.getContentCharset());
+        if (charset == null) {
+            charset = detectUnicodeBom(content);
+        }
+        if (charset != null && !isAsciiCompatible(charset)) {
+            content = StandardCharsets.UTF_8.encode(charset.decode(content));
+            charset = StandardCharsets.UTF_8;
+        }
+        OutgoingLinks links = new OutgoingLinks(page, contextUrl, maxOutgoingLinks);
+        new HtmlLinkScanner(content, charset, links).scan();
+
+        parseData.setDocumentLoader(() -> JsoupHtmlParser.parseDocument(page, contextUrl));
+    }
+
+    static Charset toCharset(String charsetName) {
+        if (charsetName == null) {
+            return null;
+        }
+        try {
+            return Charset.forName(charsetName);
+        }
+        catch (IllegalCharsetNameException | UnsupportedCharsetException exc) {
+            return null;
+        }
+    }
+
+    /**
+     * Detects a UTF-16 byte order mark. Other charsets are detected by the scanner from meta
+     * tags.
+     */
+    private static Charset detectUnicodeBom(ByteBuffer content) {
+        if (content.limit() >= 2) {
+            byte first = content.get(0);
+            byte second = content.get(1);
+            if ((first == (byte) 0xFE && second == (byte) 0xFF)
+                || (first == (byte) 0xFF && second == (byte) 0xFE)) {
+                return StandardCharsets.UTF_16;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the given charset encodes ASCII characters as single ASCII bytes, so that the
+     * markup can be scanned byte by byte.
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        return ASCII_COMPATIBLE.computeIfAbsent(charset, c -> Arrays.equals(ASCII_PROBE,
+            new String(ASCII_PROBE, StandardCharsets.US_ASCII).getBytes(c)));
+    }
+}
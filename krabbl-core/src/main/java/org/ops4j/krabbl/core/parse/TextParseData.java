@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ops4j.krabbl.api.ParseData;
+import org.ops4j.krabbl.api.WebTarget;
+
+/**
+ * Parse data of a plain text page.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class TextParseData implements ParseData {
+
+    private String text;
+
+    private Set<WebTarget> outgoingUrls = new HashSet<>();
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public Set<WebTarget> getOutgoingUrls() {
+        return outgoingUrls;
+    }
+
+    @Override
+    public void setOutgoingUrls(Set<WebTarget> outgoingUrls) {
+        this.outgoingUrls = outgoingUrls;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
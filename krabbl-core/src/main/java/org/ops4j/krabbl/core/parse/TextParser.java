@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.spi.Parser;
+
+/**
+ * Parser for plain text content. The content is decoded to text, and no links are extracted.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class TextParser implements Parser {
+
+    @Override
+    public Collection<String> getMimeTypes() {
+        return Collections.singletonList("text/*");
+    }
+
+    @Override
+    public void parse(Page page, String contextUrl) {
+        Charset charset = StreamingHtmlParser.toCharset(page.getContentCharset());
+        if (charset == null) {
+            charset = StandardCharsets.UTF_8;
+        }
+        TextParseData parseData = new TextParseData();
+        parseData.setText(charset.decode(page.getContent()).toString());
+        page.setParseData(parseData);
+    }
+}
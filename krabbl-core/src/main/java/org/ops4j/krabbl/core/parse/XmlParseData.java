@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.ops4j.krabbl.api.ParseData;
+import org.ops4j.krabbl.api.WebTarget;
+
+/**
+ * Parse data of an XML document, like a sitemap or a news feed.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class XmlParseData implements ParseData {
+
+    private String rootElement;
+
+    private Set<WebTarget> outgoingUrls = new HashSet<>();
+
+    /**
+     * Gets the local name of the root element, e.g. {@code urlset} for a sitemap.
+     *
+     * @return root element name, or null if the document is empty
+     */
+    public String getRootElement() {
+        return rootElement;
+    }
+
+    public void setRootElement(String rootElement) {
+        this.rootElement = rootElement;
+    }
+
+    @Override
+    public Set<WebTarget> getOutgoingUrls() {
+        return outgoingUrls;
+    }
+
+    @Override
+    public void setOutgoingUrls(Set<WebTarget> outgoingUrls) {
+        this.outgoingUrls = outgoingUrls;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.spi.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming parser for XML documents, extracting links from sitemaps, sitemap indexes and news
+ * feeds.
+ * <p>
+ * Links are taken from the text of {@code loc} elements (sitemaps), the text of {@code link}
+ * elements (RSS) and the {@code href} attribute of {@code link} elements (Atom). Namespaces are
+ * ignored. DTDs and external entities are not processed.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class XmlParser implements Parser {
+
+    private static final List<String> XML_MIME_TYPES = Arrays.asList("text/xml",
+        "application/xml", "application/rss+xml", "application/atom+xml");
+
+    private static Logger logger = LoggerFactory.getLogger(XmlParser.class);
+
+    /**
+     * Input factory per parse thread. The StAX API does not require factories to be thread-safe,
+     * and the JDK implementation keeps mutable state for creating readers.
+     */
+    private final ThreadLocal<XMLInputFactory> factories = ThreadLocal
+        .withInitial(XmlParser::createFactory);
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    @Override
+    public Collection<String> getMimeTypes() {
+        return XML_MIME_TYPES;
+    }
+
+    @Override
+    public void parse(Page page, String contextUrl) {
+        parse(page, contextUrl, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parses the given XML page. Malformed documents are not an error: the links found before
+     * the first syntax error are kept. Parsing stops when the maximum number of links has been
+     * found.
+     */
+    @Override
+    public void parse(Page page, String contextUrl, int maxOutgoingLinks) {
+        XmlParseData parseData = new XmlParseData();
+        page.setParseData(parseData);
+        XMLStreamReader reader = null;
+        try {
+            XMLInputFactory factory = factories.get();
+            ByteBufferInputStream is = new ByteBufferInputStream(page.getContent());
+            if (page.getContentCharset() == null) {
+                reader = factory.createXMLStreamReader(is);
+            }
+            else {
+                reader = factory.createXMLStreamReader(is, page.getContentCharset());
+            }
+            OutgoingLinks links = new OutgoingLinks(page, contextUrl, maxOutgoingLinks);
+            parseElements(reader, links, parseData);
+        }
+        catch (XMLStreamException exc) {
+            logger.debug("Malformed XML in {}: {}", contextUrl, exc.getMessage());
+        }
+        finally {
+            close(reader);
+        }
+    }
+
+    private void parseElements(XMLStreamReader reader, OutgoingLinks links,
+        XmlParseData parseData) throws XMLStreamException {
+        while (reader.hasNext() && !links.isFull()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = reader.getLocalName();
+            if (parseData.getRootElement() == null) {
+                parseData.setRootElement(name);
+            }
+            if ("loc".equals(name)) {
+                addLink(links, reader.getElementText());
+            }
+            else if ("link".equals(name)) {
+                String href = reader.getAttributeValue(null, "href");
+                if (href != null) {
+                    addLink(links, href);
+                }
+                else if ("rss".equals(parseData.getRootElement())) {
+                    addLink(links, reader.getElementText());
+                }
+            }
+        }
+    }
+
+    private void addLink(OutgoingLinks links, String url) {
+        String trimmed = url.trim();
+        if (!trimmed.isEmpty()) {
+            links.add(trimmed);
+        }
+    }
+
+    private void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            }
+            catch (XMLStreamException exc) {
+                logger.debug("cannot close XML reader", exc);
+            }
+        }
+    }
+}
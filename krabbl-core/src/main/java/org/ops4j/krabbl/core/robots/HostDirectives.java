@@ -41,11 +41,25 @@ public class HostDirectives {
 
     private final long timeFetched;
     private long timeLastAccessed;
+    /** The raw content of robots.txt, or null if there was none. */
+    private String content;
     private RobotsConfiguration config;
     private String userAgent;
 
     public HostDirectives(RobotsConfiguration configuration) {
-        timeFetched = System.currentTimeMillis();
+        this(configuration, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates empty directives fetched at the given time.
+     *
+     * @param configuration
+     *            robots configuration
+     * @param timeFetched
+     *            time of fetching robots.txt in milliseconds since the epoch
+     */
+    public HostDirectives(RobotsConfiguration configuration, long timeFetched) {
+        this.timeFetched = timeFetched;
         config = configuration;
         userAgent = config.getUserAgentName().toLowerCase();
         rules = new TreeSet<UserAgentDirectives>(
@@ -144,16 +158,34 @@ public class HostDirectives {
     }
 
     /**
-     * Store set of directives
+     * Store set of directives, compiling their path rules
      *
      * @param directives
      *            The set of directives to add to this host
      */
     public void addDirectives(UserAgentDirectives directives) {
+        directives.compile();
         rules.add(directives);
     }
 
     public long getLastAccessTime() {
         return timeLastAccessed;
     }
+
+    public long getTimeFetched() {
+        return timeFetched;
+    }
+
+    /**
+     * Gets the raw content of robots.txt these directives were parsed from.
+     *
+     * @return content, or null if there was no robots.txt
+     */
+    public String getContent() {
+        return content;
+    }
+
+    void setContent(String content) {
+        this.content = content;
+    }
 }
@@ -11,6 +11,7 @@ public class PathRule {
 
     private int type;
     private Pattern pattern;
+    private String source;
 
     /**
      * Match a pattern defined in a robots.txt file to a path Following the pattern definition as
@@ -126,6 +127,7 @@ public class PathRule {
     public PathRule(int type, String pattern) {
         this.type = type;
         this.pattern = robotsPatternToRegexp(pattern);
+        this.source = pattern;
     }
 
     /**
@@ -146,4 +148,13 @@ public class PathRule {
     public Pattern getPattern() {
         return pattern;
     }
+
+    /**
+     * Gets the robots.txt pattern of this rule.
+     *
+     * @return pattern as given in robots.txt
+     */
+    public String getSource() {
+        return source;
+    }
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.robots;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Path rules of a robots.txt clause, compiled into a prefix trie for checking a path in a single
+ * pass.
+ * <p>
+ * Rules without wildcards are stored at the trie node of their literal path, either as prefix
+ * rules or, when ending with {@code $}, as exact rules. A rule with wildcards is attached to the
+ * node of its literal prefix up to the first {@code *}, and the remainder of the path is matched
+ * against the rest of the rule when the walk reaches that node.
+ * <p>
+ * The patterns have the same meaning as in {@link PathRule#robotsPatternToRegexp(String)}. Of
+ * all matching rules, the one with the longest pattern wins. Among rules of the same length,
+ * an allow rule wins over a disallow rule.
+ * <p>
+ * Instances are immutable and thread-safe. Checking a path does not allocate any objects.
+ *
+ * @author Harald Wellmann
+ *
+ */
+final class PathRuleTrie {
+
+    /**
+     * Score of a node without any matching rule. The score of a rule is twice the length of its
+     * pattern, plus one for an allow rule, so that the greatest score is the verdict.
+     */
+    private static final int NONE = -1;
+
+    private static final char[] NO_KEYS = new char[0];
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final WildcardRule[] NO_WILDCARDS = new WildcardRule[0];
+
+    private final Node root;
+
+    private PathRuleTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the given rules.
+     *
+     * @param rules
+     *            path rules
+     * @return compiled rules
+     */
+    static PathRuleTrie compile(Collection<PathRule> rules) {
+        Node root = new Node();
+        for (PathRule rule : rules) {
+            add(root, rule.getType(), rule.getSource());
+        }
+        return new PathRuleTrie(root);
+    }
+
+    private static void add(Node root, int type, String pattern) {
+        int score = 2 * pattern.length() + ((type == HostDirectives.ALLOWED) ? 1 : 0);
+
+        // An empty pattern only matches an empty path.
+        if (pattern.isEmpty()) {
+            root.exactScore = Math.max(root.exactScore, score);
+            return;
+        }
+
+        // Split the pattern into literals separated by wildcards. Each wildcard matches at least
+        // one character, except a wildcard at the end of the pattern.
+        List<String> literals = new ArrayList<>();
+        List<Integer> gaps = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int gap = 0;
+        boolean anchored = false;
+        int length = pattern.length();
+        for (int pos = 0; pos < length; pos++) {
+            char ch = pattern.charAt(pos);
+            if (ch == '\\' && pos < length - 1 && pattern.charAt(pos + 1) == '*') {
+                literal.append('*');
+                pos++;
+            }
+            else if (ch == '*') {
+                literals.add(literal.toString());
+                gaps.add(gap);
+                literal.setLength(0);
+                gap = (pos == length - 1) ? 0 : 1;
+            }
+            else if (ch == '$' && pos == length - 1) {
+                anchored = true;
+            }
+            else {
+                literal.append(ch);
+            }
+        }
+        literals.add(literal.toString());
+        gaps.add(gap);
+
+        // A trailing wildcard matches anything, like the end of a prefix rule.
+        int last = literals.size() - 1;
+        if (last > 0 && !anchored && gaps.get(last) == 0 && literals.get(last).isEmpty()) {
+            literals.remove(last);
+            gaps.remove(last);
+        }
+
+        Node node = root;
+        String prefix = literals.get(0);
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.getOrAddChild(prefix.charAt(i));
+        }
+        if (literals.size() == 1) {
+            if (anchored) {
+                node.exactScore = Math.max(node.exactScore, score);
+            }
+            else {
+                node.prefixScore = Math.max(node.prefixScore, score);
+            }
+        }
+        else {
+            int numLiterals = literals.size() - 1;
+            String[] ruleLiterals = literals.subList(1, literals.size())
+                .toArray(new String[numLiterals]);
+            int[] ruleGaps = new int[numLiterals];
+            for (int i = 0; i < numLiterals; i++) {
+                ruleGaps[i] = gaps.get(i + 1);
+            }
+            node.addWildcard(new WildcardRule(ruleLiterals, ruleGaps, anchored, score));
+        }
+    }
+
+    /**
+     * Checks the given path against the compiled rules.
+     *
+     * @param path
+     *            path of a URL
+     * @return verdict of the longest matching rule, one of {@link HostDirectives#ALLOWED},
+     *         {@link HostDirectives#DISALLOWED} or {@link HostDirectives#UNDEFINED}
+     */
+    int checkAccess(String path) {
+        int best = NONE;
+        Node node = root;
+        int depth = 0;
+        int length = path.length();
+        while (true) {
+            best = Math.max(best, node.prefixScore);
+            if (depth == length) {
+                best = Math.max(best, node.exactScore);
+            }
+            for (WildcardRule rule : node.wildcards) {
+                if (rule.score > best && rule.matches(path, depth)) {
+                    best = rule.score;
+                }
+            }
+            if (depth == length) {
+                break;
+            }
+            node = node.getChild(path.charAt(depth));
+            if (node == null) {
+                break;
+            }
+            depth++;
+        }
+        if (best == NONE) {
+            return HostDirectives.UNDEFINED;
+        }
+        return ((best & 1) != 0) ? HostDirectives.ALLOWED : HostDirectives.DISALLOWED;
+    }
+
+    /**
+     * Trie node for the literal path leading to it.
+     */
+    private static final class Node {
+
+        /**
+         * Sorted characters of the child nodes.
+         */
+        private char[] keys = NO_KEYS;
+
+        private Node[] children = NO_CHILDREN;
+
+        /**
+         * Best score of the rules matching all paths starting with the path of this node.
+         */
+        private int prefixScore = NONE;
+
+        /**
+         * Best score of the rules matching just the path of this node.
+         */
+        private int exactScore = NONE;
+
+        /**
+         * Rules with wildcards, whose literal prefix is the path of this node.
+         */
+        private WildcardRule[] wildcards = NO_WILDCARDS;
+
+        Node getChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return (index < 0) ? null : children[index];
+        }
+
+        Node getOrAddChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insert = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, keys.length - insert);
+            Node child = new Node();
+            newKeys[insert] = key;
+            newChildren[insert] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        void addWildcard(WildcardRule rule) {
+            wildcards = Arrays.copyOf(wildcards, wildcards.length + 1);
+            wildcards[wildcards.length - 1] = rule;
+        }
+    }
+
+    /**
+     * Remainder of a rule after its first wildcard.
+     */
+    private static final class WildcardRule {
+
+        /**
+         * Literals following the wildcards, possibly empty.
+         */
+        private final String[] literals;
+
+        /**
+         * Minimum number of characters matched by the wildcards before each literal.
+         */
+        private final int[] gaps;
+
+        /**
+         * If true, the last literal must be at the end of the path.
+         */
+        private final boolean anchored;
+
+        private final int score;
+
+        WildcardRule(String[] literals, int[] gaps, boolean anchored, int score) {
+            this.literals = literals;
+            this.gaps = gaps;
+            this.anchored = anchored;
+            this.score = score;
+        }
+
+        /**
+         * Matches the rest of the given path. Taking the leftmost occurrence of each literal
+         * leaves the most room for the following literals, so there is no need to backtrack.
+         *
+         * @param path
+         *            path
+         * @param start
+         *            end of the literal prefix of the rule in the path
+         * @return true if the rule matches the path
+         */
+        boolean matches(String path, int start) {
+            int pos = start;
+            int last = literals.length - 1;
+            for (int i = 0; i <= last; i++) {
+                String literal = literals[i];
+                int from = pos + gaps[i];
+                if (from > path.length()) {
+                    return false;
+                }
+                if (anchored && i == last) {
+                    int end = path.length() - literal.length();
+                    return end >= from && path.startsWith(literal, end);
+                }
+                int index = path.indexOf(literal, from);
+                if (index < 0) {
+                    return false;
+                }
+                pos = index + literal.length();
+            }
+            return true;
+        }
+    }
+}
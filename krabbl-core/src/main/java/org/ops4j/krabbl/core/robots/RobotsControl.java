@@ -15,11 +15,15 @@
 
 package org.ops4j.krabbl.core.robots;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,6 +35,7 @@ import org.ops4j.krabbl.api.WebTarget;
 import org.ops4j.krabbl.core.exc.PageBiggerThanMaxSizeException;
 import org.ops4j.krabbl.core.fetch.PageFetchResult;
 import org.ops4j.krabbl.core.fetch.PageFetcher;
+import org.ops4j.krabbl.core.fetch.PolitenessScheduler;
 import org.ops4j.krabbl.core.url.ContentTypeUtil;
 import org.ops4j.krabbl.core.url.WebTargetBuilder;
 import org.ops4j.krabbl.core.url.WebTargetImpl;
@@ -50,9 +55,13 @@ public class RobotsControl {
 
     protected PageFetcher pageFetcher;
 
-    public RobotsControl(RobotsConfiguration config, PageFetcher pageFetcher) {
+    protected PolitenessScheduler politenessScheduler;
+
+    public RobotsControl(RobotsConfiguration config, PageFetcher pageFetcher,
+        PolitenessScheduler politenessScheduler) {
         this.config = config;
         this.pageFetcher = pageFetcher;
+        this.politenessScheduler = politenessScheduler;
     }
 
     private static String getHost(URL url) {
@@ -101,6 +110,7 @@ public class RobotsControl {
         PageFetchResult fetchResult = null;
         try {
             for (int redir = 0; redir < 3; ++redir) {
+                politenessScheduler.awaitDue(PolitenessScheduler.getHost(robotsTxtUrl.getUrl()));
                 fetchResult = pageFetcher.fetchPage(robotsTxtUrl);
                 int status = fetchResult.getStatusCode();
                 // Follow redirects up to 3 levels
@@ -146,6 +156,7 @@ public class RobotsControl {
                         .warn("Can't read this robots.txt: {}  as it is not written in plain text, "
                             + "contentType: {}", robotsTxtUrl.getUrl(), page.getContentType());
                 }
+                page.releaseContent();
             }
             else {
                 logger.debug("Can't read this robots.txt: {}  as it's status code is {}",
@@ -158,6 +169,10 @@ public class RobotsControl {
             // which is perfectly ok
             logger.trace("robots.txt probably does not exist.", se);
         }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            logger.debug("Interrupted while waiting for (robots) url: {}", robotsTxtUrl.getUrl());
+        }
         catch (PageBiggerThanMaxSizeException pbtms) {
             logger.error("Error occurred while fetching (robots) url: {}, {}",
                 robotsTxtUrl.getUrl(), pbtms.getMessage());
@@ -192,4 +207,67 @@ public class RobotsControl {
         }
         return directives;
     }
+
+    /**
+     * Writes the cached directives to a checkpoint. Only the raw content of each robots.txt and
+     * the time of fetching it are written.
+     *
+     * @param os
+     *            checkpoint output stream
+     * @throws IOException
+     *             when the directives cannot be written
+     */
+    public void writeCheckpoint(DataOutputStream os) throws IOException {
+        Map<String, HostDirectives> cache;
+        synchronized (host2directivesCache) {
+            cache = new HashMap<>(host2directivesCache);
+        }
+        os.writeInt(cache.size());
+        for (Map.Entry<String, HostDirectives> entry : cache.entrySet()) {
+            os.writeUTF(entry.getKey());
+            os.writeLong(entry.getValue().getTimeFetched());
+            String content = entry.getValue().getContent();
+            if (content == null) {
+                os.writeInt(-1);
+            }
+            else {
+                byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+                os.writeInt(bytes.length);
+                os.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Restores the cached directives from a checkpoint. Directives which have expired in the
+     * meantime are skipped.
+     *
+     * @param is
+     *            checkpoint input stream
+     * @throws IOException
+     *             when the directives cannot be read
+     */
+    public void restoreCheckpoint(DataInputStream is) throws IOException {
+        int size = is.readInt();
+        for (int i = 0; i < size; i++) {
+            String host = is.readUTF();
+            long timeFetched = is.readLong();
+            int length = is.readInt();
+            HostDirectives directives;
+            if (length < 0) {
+                directives = new HostDirectives(config, timeFetched);
+            }
+            else {
+                byte[] bytes = new byte[length];
+                is.readFully(bytes);
+                directives = RobotsTxtParser.parse(new String(bytes, StandardCharsets.UTF_8),
+                    config, timeFetched);
+            }
+            if (!directives.needsRefetch()) {
+                synchronized (host2directivesCache) {
+                    host2directivesCache.put(host, directives);
+                }
+            }
+        }
+    }
 }
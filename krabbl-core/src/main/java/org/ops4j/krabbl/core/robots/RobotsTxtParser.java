@@ -39,7 +39,24 @@ public class RobotsTxtParser {
         Arrays.asList("allow", "disallow", "user-agent", "crawl-delay", "host", "sitemap"));
 
     public static HostDirectives parse(String content, RobotsConfiguration config) {
-        HostDirectives directives = new HostDirectives(config);
+        return parse(content, config, System.currentTimeMillis());
+    }
+
+    /**
+     * Parses the given robots.txt content fetched at the given time.
+     *
+     * @param content
+     *            content of robots.txt
+     * @param config
+     *            robots configuration
+     * @param timeFetched
+     *            time of fetching robots.txt in milliseconds since the epoch
+     * @return host directives
+     */
+    public static HostDirectives parse(String content, RobotsConfiguration config,
+        long timeFetched) {
+        HostDirectives directives = new HostDirectives(config, timeFetched);
+        directives.setContent(content);
         StringTokenizer st = new StringTokenizer(content, "\n\r");
 
         Set<String> userAgents = new HashSet<String>();
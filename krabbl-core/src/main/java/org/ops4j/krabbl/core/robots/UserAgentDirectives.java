@@ -6,7 +6,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,51 +25,8 @@ public class UserAgentDirectives {
     private Double crawlDelay = null;
     private Set<PathRule> pathRules = new HashSet<>();
 
-    /**
-     * Comparator used to order the list of matching path rules in such a way that the most specific
-     * match (= longest) match comes first.
-     */
-    static class PathComparator implements Comparator<PathRule> {
-
-        /** The path to compare the path rules with */
-        String path;
-
-        /** Initialize with the path */
-        PathComparator(String path) {
-            this.path = path;
-        }
-
-        /**
-         * Compare two paths. If lhs matches and rhs does not, this will return -1 If rhs matches
-         * and lhs does not, this will return 1 If both match or both do not match,, this will
-         * return the result of a numeric comparison of the length of both patterns, where the
-         * longest (=most specific) one will come first.
-         */
-        @Override
-        public int compare(PathRule lhs, PathRule rhs) {
-            boolean p1Match = lhs.matches(path);
-            boolean p2Match = rhs.matches(path);
-
-            // Matching patterns come first
-            if (p1Match && !p2Match) {
-                return -1;
-            }
-            else if (p2Match && !p1Match) {
-                return 1;
-            }
-
-            // Most specific pattern first
-            String p1 = lhs.getPattern().toString();
-            String p2 = rhs.getPattern().toString();
-
-            if (p1.length() != p2.length()) {
-                return Integer.compare(p2.length(), p1.length());
-            }
-
-            // Just order alphabetically if the patterns are of the same length
-            return p1.compareTo(p2);
-        }
-    }
+    /** The path rules compiled for matching, or null if they need to be compiled */
+    private volatile PathRuleTrie compiledRules;
 
     /**
      * Create a UserAgentDirectives clause
@@ -115,18 +71,25 @@ public class UserAgentDirectives {
             return HostDirectives.UNDEFINED;
         }
 
-        // Order the rules based on their match with the path
-        Set<PathRule> rules = new TreeSet<>(new PathComparator(path));
-        rules.addAll(pathRules);
-
-        // Return the verdict of the best matching rule
-        for (PathRule rule : rules) {
-            if (rule.matches(path)) {
-                return rule.getType();
-            }
+        // Return the verdict of the longest matching rule
+        PathRuleTrie rules = compiledRules;
+        if (rules == null) {
+            rules = compile();
         }
+        return rules.checkAccess(path);
+    }
 
-        return HostDirectives.UNDEFINED;
+    /**
+     * Compiles the path rules of this clause. This is done by the parser once all rules are
+     * known. Adding further rules discards the compiled rules, and they are recompiled on the
+     * next check.
+     *
+     * @return compiled rules
+     */
+    PathRuleTrie compile() {
+        PathRuleTrie rules = PathRuleTrie.compile(pathRules);
+        compiledRules = rules;
+        return rules;
     }
 
     public static class UserAgentComparator implements Comparator<UserAgentDirectives> {
@@ -204,9 +167,11 @@ public class UserAgentDirectives {
         }
         else if (rule.equals("allow")) {
             this.pathRules.add(new PathRule(HostDirectives.ALLOWED, value));
+            this.compiledRules = null;
         }
         else if (rule.equals("disallow")) {
             this.pathRules.add(new PathRule(HostDirectives.DISALLOWED, value));
+            this.compiledRules = null;
         }
         else {
             logger.error("Invalid key in robots.txt passed to UserAgentRules: {}", rule);
@@ -17,9 +17,13 @@
 
 package org.ops4j.krabbl.core.spi;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.crawl.CrawlCheckpoint;
 import org.ops4j.krabbl.core.url.WebTargetImpl;
 
 /**
@@ -31,18 +35,122 @@ public interface Frontier {
     void schedule(WebTargetImpl url);
     void schedule(List<WebTargetImpl> url);
 
+    /**
+     * Removes the next scheduled target from the queue of this frontier and returns it. Each
+     * scheduled target is returned only once.
+     *
+     * @return target, or null if there are no scheduled targets
+     */
+    WebTargetImpl getNextTarget();
+
+    /**
+     * Removes up to the given number of scheduled targets from the queue of this frontier and
+     * returns them. Each scheduled target is returned only once.
+     * <p>
+     * The default implementation calls {@link #getNextTarget()} until it returns null or the
+     * maximum number of targets has been reached.
+     *
+     * @param max
+     *            maximum number of targets
+     * @return list of targets, which is empty if there are no scheduled targets
+     */
+    default List<WebTargetImpl> getNextTargets(int max) {
+        List<WebTargetImpl> targets = new ArrayList<>();
+        WebTargetImpl target;
+        while (targets.size() < max && (target = getNextTarget()) != null) {
+            targets.add(target);
+        }
+        return targets;
+    }
+
+    /**
+     * Notifies this frontier of another link to a target seen before. Frontiers may use this to
+     * prioritize targets with many in-links. The default implementation does nothing.
+     *
+     * @param target
+     *            target seen before
+     */
+    default void addInLink(WebTargetImpl target) {
+        // empty
+    }
+
     void setProcessed(WebTarget webURL);
     void setProcessing(WebTarget webURL);
 
+    /**
+     * Marks the given target as processed, passing the hash of its content. Frontiers which
+     * revisit targets use the hash to detect content changes. The default implementation calls
+     * {@link #setProcessed(WebTarget)}.
+     *
+     * @param target
+     *            processed target
+     * @param contentHash
+     *            hash of the content, or 0 if no content has been fetched
+     */
+    default void setProcessed(WebTarget target, long contentHash) {
+        setProcessed(target);
+    }
+
+    /**
+     * Checks if this frontier hands out targets again after they have been processed. A crawler
+     * with a continuous frontier keeps running until it is shut down.
+     *
+     * @return true if continuous, false by default
+     */
+    default boolean isContinuous() {
+        return false;
+    }
+
     long getNumberOfProcessingPages();
     long getNumberOfProcessedPages();
     long getNumberOfScheduledPages();
     boolean isFinished();
+
+    /**
+     * Checks if the given URL has been scheduled or processed before.
+     *
+     * @param url
+     *            normalized URL
+     * @return true if seen before
+     */
     boolean isSeenBefore(String url);
+
     default void close() {
 
     }
 
+    /**
+     * Writes the state of this frontier to the given checkpoint, which has been started by
+     * {@link CrawlCheckpoint#begin()}. Only called by the crawl loop.
+     *
+     * @param checkpoint
+     *            checkpoint being written
+     * @param inFlight
+     *            targets currently being processed. These are saved as pending targets, to be
+     *            scheduled again when restoring the checkpoint.
+     * @throws IOException
+     *             when the checkpoint cannot be written
+     */
+    default void writeCheckpoint(CrawlCheckpoint checkpoint, Collection<WebTargetImpl> inFlight)
+        throws IOException {
+        throw new UnsupportedOperationException(
+            getClass().getName() + " does not support checkpoints");
+    }
+
+    /**
+     * Restores the state of this frontier from the given checkpoint. Only called on a new
+     * frontier, before scheduling any targets.
+     *
+     * @param checkpoint
+     *            loaded checkpoint
+     * @throws IOException
+     *             when the checkpoint cannot be read
+     */
+    default void restoreCheckpoint(CrawlCheckpoint checkpoint) throws IOException {
+        throw new UnsupportedOperationException(
+            getClass().getName() + " does not support checkpoints");
+    }
+
     default void finish() {
 
     }
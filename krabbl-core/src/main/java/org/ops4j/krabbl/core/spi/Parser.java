@@ -17,13 +17,79 @@
  */
 package org.ops4j.krabbl.core.spi;
 
+import java.util.Collection;
+import java.util.Collections;
+
 import org.ops4j.krabbl.api.Page;
 
 /**
+ * Parses the content of fetched pages of given MIME types.
+ * <p>
+ * Parsers are registered as services via the Java {@link java.util.ServiceLoader}. For each MIME
+ * type, the parser with the highest priority is used. A tie between parsers with the same
+ * priority is broken by sorting the parsers by fully qualified class names and selecting the
+ * first one. Parsers are shared by all threads of a crawler.
+ *
  * @author Harald Wellmann
  *
  */
 public interface Parser {
 
+    /**
+     * Priority of the parsers built into Krabbl.
+     */
+    int DEFAULT_PRIORITY = 100;
+
+    /**
+     * Gets the MIME types handled by this parser. A type may have a wildcard subtype like
+     * {@code image/*}, and {@code *}{@code /*} matches all types not handled by any other parser.
+     * <p>
+     * The default implementation returns {@code *}{@code /*}, so that a parser written before
+     * MIME types were introduced handles all content the built-in parsers do not handle. It
+     * replaces the built-in binary fallback parser, which has a lower priority.
+     *
+     * @return lower case MIME types without parameters
+     */
+    default Collection<String> getMimeTypes() {
+        return Collections.singletonList("*/*");
+    }
+
+    /**
+     * Gets the priority of this parser. To replace a built-in parser, a parser must have a
+     * priority greater than {@link #DEFAULT_PRIORITY}.
+     *
+     * @return parser priority
+     */
+    default int getPriority() {
+        return DEFAULT_PRIORITY;
+    }
+
+    /**
+     * Parses the content of the given page and sets its parse data.
+     *
+     * @param page
+     *            fetched page
+     * @param contextUrl
+     *            base URL for relative links
+     */
     void parse(Page page, String contextUrl);
+
+    /**
+     * Parses the content of the given page and sets its parse data, extracting no more than the
+     * given number of distinct links. The crawler calls this method, so that link farms cannot
+     * make a parser create an unbounded number of outgoing URLs.
+     * <p>
+     * The default implementation ignores the limit and delegates to
+     * {@link #parse(Page, String)}. The crawler truncates the outgoing URLs in that case.
+     *
+     * @param page
+     *            fetched page
+     * @param contextUrl
+     *            base URL for relative links
+     * @param maxOutgoingLinks
+     *            maximum number of links to extract
+     */
+    default void parse(Page page, String contextUrl, int maxOutgoingLinks) {
+        parse(page, contextUrl);
+    }
 }
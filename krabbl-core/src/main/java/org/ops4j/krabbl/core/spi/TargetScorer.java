@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.spi;
+
+import org.ops4j.krabbl.api.WebTarget;
+
+/**
+ * Scores targets for a priority frontier. Targets with a higher score are fetched earlier.
+ * <p>
+ * Scores only order the pending targets of the same host. Hosts take turns regardless of the
+ * scores of their targets.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public interface TargetScorer {
+
+    /**
+     * Computes the score of the given target.
+     *
+     * @param target
+     *            scheduled target, with the priority hint of the page visitor
+     * @param inLinks
+     *            number of links to the target found so far
+     * @return score
+     */
+    double score(WebTarget target, int inLinks);
+}
@@ -17,16 +17,50 @@
 
 package org.ops4j.krabbl.core.url;
 
+import java.util.Locale;
+
 /**
  * @author Yasser Ganjisaffar
  */
 public class ContentTypeUtil {
 
-    public static boolean hasBinaryContent(String contentType) {
-        String typeStr = (contentType != null) ? contentType.toLowerCase() : "";
+    /**
+     * Extracts the MIME type from a content type header value.
+     *
+     * @param contentType
+     *            content type, optionally with parameters like {@code charset}
+     * @return lower case MIME type without parameters, or null if the content type is null or
+     *         empty
+     */
+    public static String getMimeType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mimeType = (semicolon < 0) ? contentType : contentType.substring(0, semicolon);
+        mimeType = mimeType.trim().toLowerCase(Locale.ROOT);
+        return mimeType.isEmpty() ? null : mimeType;
+    }
 
-        return typeStr.contains("image") || typeStr.contains("audio") ||
-               typeStr.contains("video") || typeStr.contains("application");
+    /**
+     * Checks if the given content type denotes binary content. Application types are binary,
+     * except for XML, JSON and JavaScript.
+     *
+     * @param contentType
+     *            content type, optionally with parameters
+     * @return true for binary content
+     */
+    public static boolean hasBinaryContent(String contentType) {
+        String mimeType = getMimeType(contentType);
+        if (mimeType == null) {
+            return false;
+        }
+        if (mimeType.startsWith("application/")) {
+            return !(mimeType.endsWith("xml") || mimeType.endsWith("json")
+                || mimeType.endsWith("javascript"));
+        }
+        return mimeType.startsWith("image/") || mimeType.startsWith("audio/")
+            || mimeType.startsWith("video/") || mimeType.startsWith("font/");
     }
 
     public static boolean hasPlainTextContent(String contentType) {
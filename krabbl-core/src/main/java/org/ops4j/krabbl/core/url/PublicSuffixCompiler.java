@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.url;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compiles a public suffix list to the binary image of a {@link PublicSuffixTrie}. The build
+ * runs this for the packaged list, so the crawler can map the image at startup instead of
+ * parsing the list.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public final class PublicSuffixCompiler {
+
+    private PublicSuffixCompiler() {
+        // hidden constructor
+    }
+
+    /**
+     * Compiles a public suffix list.
+     *
+     * @param args
+     *            path of the list in UTF-8 and path of the image to be written
+     * @throws IOException
+     *             on read or write error
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("usage: PublicSuffixCompiler <list> <image>");
+        }
+        Path image = Paths.get(args[1]);
+        PublicSuffixTrie trie = compile(Paths.get(args[0]));
+        Files.createDirectories(image.toAbsolutePath().getParent());
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            trie.writeTo(channel);
+        }
+    }
+
+    /**
+     * Compiles a public suffix list to a trie.
+     *
+     * @param list
+     *            path of the list in UTF-8
+     * @return trie
+     * @throws IOException
+     *             on read error
+     */
+    static PublicSuffixTrie compile(Path list) throws IOException {
+        PublicSuffixTrie.Builder builder = new PublicSuffixTrie.Builder();
+        try (BufferedReader reader = Files.newBufferedReader(list, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.addLine(line);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.url;
+
+import java.io.IOException;
+import java.net.IDN;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled rules of the public suffix list, see https://publicsuffix.org/list/.
+ * <p>
+ * This is a trie of reversed domain labels. Each node stands for a suffix of labels, like
+ * {@code kobe.jp}, and carries flags for the rules ending at this suffix. Nodes are kept in flat
+ * arrays. The children of all nodes are found via one open addressing table keyed by parent and
+ * label, so a host is matched label by label from the right without allocating.
+ * <p>
+ * All arrays are views of one binary image, which can be written to a file and memory-mapped
+ * later on, so the list need not be parsed at runtime. The image is big-endian and consists of
+ * a header of six ints (magic number, version, number of rules, number of nodes, table length,
+ * length of labels), followed by the parents, label starts and table as ints, the labels as
+ * chars and the flags as bytes.
+ * <p>
+ * Rules are applied as specified by the list: The longest matching rule wins, exception rules
+ * win over all other rules, and a host not matching any rule has its last label as public
+ * suffix.
+ *
+ * @author Harald Wellmann
+ *
+ */
+final class PublicSuffixTrie {
+
+    /**
+     * Flag of a node with a normal rule, like {@code ac.jp}.
+     */
+    static final int RULE = 1;
+
+    /**
+     * Flag of a node with a wildcard rule for its children, like {@code *.kobe.jp}.
+     */
+    static final int WILDCARD = 2;
+
+    /**
+     * Flag of a node with an exception rule, like {@code !city.kobe.jp}.
+     */
+    static final int EXCEPTION = 4;
+
+    private static final int ROOT = 0;
+
+    private static final int MAGIC = 0x4b525053;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 6 * Integer.BYTES;
+
+    /**
+     * Parent of each node.
+     */
+    private final IntBuffer parents;
+
+    /**
+     * Start of the label of each node in {@link #labels}. The label of a node ends where the
+     * label of the next node starts.
+     */
+    private final IntBuffer labelStarts;
+
+    /**
+     * Open addressing table of all nodes except the root. Empty slots are 0.
+     */
+    private final IntBuffer table;
+
+    /**
+     * Labels of all nodes, concatenated in node order.
+     */
+    private final CharBuffer labels;
+
+    private final ByteBuffer flags;
+
+    private final int numRules;
+
+    private final ByteBuffer image;
+
+    private PublicSuffixTrie(ByteBuffer image) {
+        this.image = image;
+        if (image.remaining() < HEADER_SIZE || image.getInt(0) != MAGIC
+            || image.getInt(Integer.BYTES) != VERSION) {
+            throw new IllegalArgumentException("not a public suffix image");
+        }
+        numRules = image.getInt(2 * Integer.BYTES);
+        int numNodes = image.getInt(3 * Integer.BYTES);
+        int tableLength = image.getInt(4 * Integer.BYTES);
+        int labelsLength = image.getInt(5 * Integer.BYTES);
+        int offset = HEADER_SIZE;
+        parents = slice(image, offset, numNodes * Integer.BYTES).asIntBuffer();
+        offset += numNodes * Integer.BYTES;
+        labelStarts = slice(image, offset, (numNodes + 1) * Integer.BYTES).asIntBuffer();
+        offset += (numNodes + 1) * Integer.BYTES;
+        table = slice(image, offset, tableLength * Integer.BYTES).asIntBuffer();
+        offset += tableLength * Integer.BYTES;
+        labels = slice(image, offset, labelsLength * Character.BYTES).asCharBuffer();
+        offset += labelsLength * Character.BYTES;
+        flags = slice(image, offset, numNodes);
+    }
+
+    /**
+     * Creates a trie from a binary image.
+     *
+     * @param image
+     *            image from position 0 to the limit, as written by
+     *            {@link #writeTo(WritableByteChannel)}
+     * @return trie
+     * @throws IllegalArgumentException
+     *             if the buffer does not contain a public suffix image
+     */
+    static PublicSuffixTrie fromImage(ByteBuffer image) {
+        try {
+            return new PublicSuffixTrie(image);
+        }
+        catch (IndexOutOfBoundsException exc) {
+            throw new IllegalArgumentException("truncated public suffix image", exc);
+        }
+    }
+
+    /**
+     * Writes the binary image of this trie.
+     *
+     * @param channel
+     *            output channel
+     * @throws IOException
+     *             on write error
+     */
+    void writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = image.duplicate();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer image, int offset, int length) {
+        ByteBuffer buffer = image.duplicate();
+        buffer.position(offset);
+        buffer.limit(offset + length);
+        return buffer.slice();
+    }
+
+    /**
+     * Finds the registrable domain of a host, which is its public suffix with one more label.
+     * A trailing dot of a fully qualified host is ignored.
+     *
+     * @param host
+     *            contains the host name in lower case
+     * @param start
+     *            start of the host name
+     * @param end
+     *            end of the host name
+     * @return start of the registrable domain, or {@code start} if the host is a public suffix
+     *         itself
+     */
+    int findRegistrableDomain(CharSequence host, int start, int end) {
+        int suffixStart = findPublicSuffix(host, start, end);
+        if (suffixStart <= start) {
+            return start;
+        }
+        return lastIndexOf(host, '.', start, suffixStart - 1) + 1;
+    }
+
+    /**
+     * Finds the public suffix of a host. A trailing dot of a fully qualified host is ignored.
+     *
+     * @param host
+     *            contains the host name in lower case
+     * @param start
+     *            start of the host name
+     * @param end
+     *            end of the host name
+     * @return start of the public suffix
+     */
+    int findPublicSuffix(CharSequence host, int start, int end) {
+        int labelEnd = end;
+        if (labelEnd > start && host.charAt(labelEnd - 1) == '.') {
+            labelEnd--;
+        }
+        int suffixStart = labelEnd;
+        int node = ROOT;
+        while (labelEnd >= start) {
+            int labelStart = lastIndexOf(host, '.', start, labelEnd) + 1;
+            if (node == ROOT || (flags.get(node) & WILDCARD) != 0) {
+                suffixStart = labelStart;
+            }
+            node = findChild(node, host, labelStart, labelEnd);
+            if (node < 0) {
+                break;
+            }
+            if ((flags.get(node) & EXCEPTION) != 0) {
+                return labelEnd + 1;
+            }
+            if ((flags.get(node) & RULE) != 0) {
+                suffixStart = labelStart;
+            }
+            labelEnd = labelStart - 1;
+        }
+        return suffixStart;
+    }
+
+    /**
+     * Gets the number of rules this trie has been built from.
+     *
+     * @return number of rules
+     */
+    int getNumberOfRules() {
+        return numRules;
+    }
+
+    private int findChild(int parent, CharSequence host, int start, int end) {
+        int mask = table.limit() - 1;
+        int length = end - start;
+        for (int slot = hash(parent, host, start, end);; slot++) {
+            int node = table.get(slot & mask);
+            if (node == 0) {
+                return -1;
+            }
+            int labelStart = labelStarts.get(node);
+            if (parents.get(node) == parent && labelStarts.get(node + 1) - labelStart == length
+                && regionMatches(host, start, labelStart, length)) {
+                return node;
+            }
+        }
+    }
+
+    private boolean regionMatches(CharSequence host, int start, int labelStart, int length) {
+        for (int i = 0; i < length; i++) {
+            if (host.charAt(start + i) != labels.get(labelStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(int parent, CharSequence s, int start, int end) {
+        int h = parent;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int lastIndexOf(CharSequence s, char c, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return start - 1;
+    }
+
+    /**
+     * Builds a trie from the rules of a public suffix list.
+     */
+    static class Builder {
+
+        private final List<Integer> nodeParents = new ArrayList<>();
+
+        private final List<String> nodeLabels = new ArrayList<>();
+
+        private final List<Byte> nodeFlags = new ArrayList<>();
+
+        /**
+         * Nodes by parent and label.
+         */
+        private final Map<String, Integer> nodes = new HashMap<>();
+
+        private int numRules;
+
+        Builder() {
+            nodeParents.add(-1);
+            nodeLabels.add("");
+            nodeFlags.add((byte) 0);
+        }
+
+        /**
+         * Adds a line of a public suffix list. Comments and empty lines are ignored. Rules with
+         * non-ASCII labels are also added in their ASCII form, since host names are not
+         * converted to Unicode.
+         *
+         * @param line
+         *            line of the list
+         * @return this builder
+         */
+        Builder addLine(String line) {
+            String rule = line.trim();
+            int space = rule.indexOf(' ');
+            if (space >= 0) {
+                rule = rule.substring(0, space);
+            }
+            if (rule.isEmpty() || rule.startsWith("//")) {
+                return this;
+            }
+            int flag = RULE;
+            if (rule.startsWith("!")) {
+                flag = EXCEPTION;
+                rule = rule.substring(1);
+            }
+            else if (rule.startsWith("*.")) {
+                flag = WILDCARD;
+                rule = rule.substring(2);
+            }
+            else if (rule.equals("*")) {
+                // the default rule is implied
+                return this;
+            }
+            numRules++;
+            addRule(rule, flag);
+            try {
+                String asciiRule = IDN.toASCII(rule, IDN.ALLOW_UNASSIGNED);
+                if (!asciiRule.equals(rule)) {
+                    addRule(asciiRule, flag);
+                }
+            }
+            catch (IllegalArgumentException exc) {
+                // rule has no ASCII form
+            }
+            return this;
+        }
+
+        private void addRule(String rule, int flag) {
+            int node = ROOT;
+            int labelEnd = rule.length();
+            while (labelEnd >= 0) {
+                int labelStart = rule.lastIndexOf('.', labelEnd - 1) + 1;
+                node = getOrAddChild(node, rule.substring(labelStart, labelEnd));
+                labelEnd = labelStart - 1;
+            }
+            nodeFlags.set(node, (byte) (nodeFlags.get(node) | flag));
+        }
+
+        private int getOrAddChild(int parent, String label) {
+            return nodes.computeIfAbsent(parent + "/" + label, key -> {
+                nodeParents.add(parent);
+                nodeLabels.add(label);
+                nodeFlags.add((byte) 0);
+                return nodeParents.size() - 1;
+            });
+        }
+
+        PublicSuffixTrie build() {
+            int numNodes = nodeParents.size();
+            int tableLength = Integer.highestOneBit(Math.max(numNodes, 2)) * 4;
+            int[] labelStarts = new int[numNodes + 1];
+            StringBuilder labels = new StringBuilder();
+            for (int node = 0; node < numNodes; node++) {
+                labelStarts[node] = labels.length();
+                labels.append(nodeLabels.get(node));
+            }
+            labelStarts[numNodes] = labels.length();
+
+            int[] table = new int[tableLength];
+            for (int node = 1; node < numNodes; node++) {
+                int slot = hash(nodeParents.get(node), labels, labelStarts[node],
+                    labelStarts[node + 1]);
+                while (table[slot & (tableLength - 1)] != 0) {
+                    slot++;
+                }
+                table[slot & (tableLength - 1)] = node;
+            }
+
+            ByteBuffer image = ByteBuffer.allocate(HEADER_SIZE
+                + (2 * numNodes + 1 + tableLength) * Integer.BYTES
+                + labels.length() * Character.BYTES + numNodes);
+            image.putInt(MAGIC).putInt(VERSION).putInt(numRules).putInt(numNodes)
+                .putInt(tableLength).putInt(labels.length());
+            nodeParents.forEach(image::putInt);
+            for (int labelStart : labelStarts) {
+                image.putInt(labelStart);
+            }
+            for (int node : table) {
+                image.putInt(node);
+            }
+            for (int i = 0; i < labels.length(); i++) {
+                image.putChar(labels.charAt(i));
+            }
+            nodeFlags.forEach(image::put);
+            image.flip();
+            return new PublicSuffixTrie(image);
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package org.ops4j.krabbl.core.url;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,57 +23,135 @@ import org.slf4j.LoggerFactory;
  * This class is a singleton which obtains a list of TLDs (from online or a local file) in order
  * to compare against
  * those TLDs
+ * <p>
+ * The list is compiled to a {@link PublicSuffixTrie}, including its wildcard and exception
+ * rules. The packaged list is precompiled by the build and mapped into memory. A local file
+ * {@code tld-names.txt} in the working directory takes precedence and is compiled at startup.
+ * <p>
+ * The online list is loaded in the background. It replaces the current list atomically when it
+ * is complete, so the first lookups never wait for the network.
  */
 public class TopLevelDomainList {
 
     private static final String TLD_NAMES_ONLINE_URL =
         "https://publicsuffix.org/list/effective_tld_names.dat";
     private static final String TLD_NAMES_TXT_FILENAME = "tld-names.txt";
+    private static final String TLD_IMAGE_FILENAME = "public-suffixes.bin";
+    private static final String END_MARKER = "===END PRIVATE DOMAINS===";
     private static final Logger logger = LoggerFactory.getLogger(TopLevelDomainList.class);
 
-    private static boolean onlineUpdate = false;
-    private final Set<String> tldSet = new HashSet<>(10000);
+    private static volatile boolean onlineUpdate = false;
 
-    private static final TopLevelDomainList instance = new TopLevelDomainList(); // Singleton
+    /**
+     * Current list, replaced when the online list has been loaded.
+     */
+    private volatile PublicSuffixTrie trie;
 
     private TopLevelDomainList() {
-        if (onlineUpdate && fetchOnlineList()) {
-            return;
+        PublicSuffixTrie loaded = fetchFromLocalFile();
+        if (loaded == null) {
+            loaded = mapPackagedImage();
+        }
+        if (loaded == null) {
+            loaded = fetchFromClasspath();
         }
+        trie = loaded;
+        if (onlineUpdate) {
+            startOnlineUpdate();
+        }
+    }
+
+    /**
+     * Holds the singleton, which is created on first use.
+     */
+    private static class Holder {
+
+        private static final TopLevelDomainList INSTANCE = new TopLevelDomainList();
+    }
 
-        if (fetchFromLocalFile()) {
-            return;
+    private void startOnlineUpdate() {
+        Thread updater = new Thread(() -> {
+            PublicSuffixTrie updated = fetchOnlineList();
+            if (updated != null) {
+                trie = updated;
+            }
+        }, "tld-update");
+        updater.setDaemon(true);
+        updater.start();
+    }
+
+    /**
+     * Maps the image of the packaged list into memory. An image packaged in a JAR cannot be
+     * mapped, so it is copied to a buffer without being parsed.
+     */
+    private PublicSuffixTrie mapPackagedImage() {
+        URL resource = getClass().getClassLoader().getResource(TLD_IMAGE_FILENAME);
+        if (resource == null) {
+            logger.debug("No packaged image {}", TLD_IMAGE_FILENAME);
+            return null;
+        }
+        try {
+            ByteBuffer image;
+            if ("file".equals(resource.getProtocol())) {
+                try (FileChannel channel = FileChannel.open(Paths.get(resource.toURI()))) {
+                    image = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                }
+            }
+            else {
+                image = readImage(resource);
+            }
+            PublicSuffixTrie loaded = PublicSuffixTrie.fromImage(image);
+            logger.info("Obtained {} TLD from packaged image {}", loaded.getNumberOfRules(),
+                TLD_IMAGE_FILENAME);
+            return loaded;
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            logger.warn("Couldn't read the packaged TLD image, reading the list instead", e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer readImage(URL resource) throws IOException {
+        try (InputStream is = resource.openStream()) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream(256 * 1024);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) >= 0) {
+                os.write(buffer, 0, n);
+            }
+            return ByteBuffer.wrap(os.toByteArray());
         }
-        fetchFromClasspath();
     }
 
-    private void fetchFromClasspath() {
+    private PublicSuffixTrie fetchFromClasspath() {
         try (InputStream tldFile = getClass().getClassLoader()
                                              .getResourceAsStream(TLD_NAMES_TXT_FILENAME)) {
-            int n = readStream(tldFile);
-            logger.info("Obtained {} TLD from packaged file {}", n, TLD_NAMES_TXT_FILENAME);
+            PublicSuffixTrie loaded = readStream(tldFile);
+            logger.info("Obtained {} TLD from packaged file {}", loaded.getNumberOfRules(),
+                TLD_NAMES_TXT_FILENAME);
+            return loaded;
         } catch (IOException e) {
             logger.error("Couldn't read the TLD list from file");
             throw new RuntimeException(e);
         }
     }
 
-    private boolean fetchFromLocalFile() {
+    private PublicSuffixTrie fetchFromLocalFile() {
         File f = new File(TLD_NAMES_TXT_FILENAME);
         if (f.exists()) {
             logger.debug("Fetching the list from a local file {}", TLD_NAMES_TXT_FILENAME);
             try (InputStream tldFile = new FileInputStream(f)) {
-                int n = readStream(tldFile);
-                logger.info("Obtained {} TLD from local file {}", n, TLD_NAMES_TXT_FILENAME);
-                return true;
+                PublicSuffixTrie loaded = readStream(tldFile);
+                logger.info("Obtained {} TLD from local file {}", loaded.getNumberOfRules(),
+                    TLD_NAMES_TXT_FILENAME);
+                return loaded;
             } catch (IOException e) {
                 logger.error("Couldn't read the TLD list from local file", e);
             }
         }
-        return false;
+        return null;
     }
 
-    private boolean fetchOnlineList() {
+    private PublicSuffixTrie fetchOnlineList() {
         URL url;
         try {
             url = new URL(TLD_NAMES_ONLINE_URL);
@@ -80,45 +163,92 @@ public class TopLevelDomainList {
 
         try (InputStream stream = url.openStream()) {
             logger.debug("Fetching the most updated TLD list online");
-            int n = readStream(stream);
-            logger.info("Obtained {} TLD from URL {}", n, TLD_NAMES_ONLINE_URL);
-            return true;
+            PublicSuffixTrie loaded = readStream(stream, true);
+            logger.info("Obtained {} TLD from URL {}", loaded.getNumberOfRules(),
+                TLD_NAMES_ONLINE_URL);
+            return loaded;
         } catch (Exception e) {
-            logger.error("Couldn't fetch the online list of TLDs from: {}",
-                         TLD_NAMES_ONLINE_URL, e);
+            logger.error("Couldn't fetch the online list of TLDs from: {}, keeping the "
+                + "current list", TLD_NAMES_ONLINE_URL, e);
         }
-        return false;
+        return null;
     }
 
-    private int readStream(InputStream stream) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+    private PublicSuffixTrie readStream(InputStream stream) throws IOException {
+        return readStream(stream, false);
+    }
+
+    /**
+     * Reads a list of public suffixes.
+     *
+     * @param stream
+     *            stream with the list
+     * @param requireEnd
+     *            if true, the list must contain the end marker of the public suffix list, so that
+     *            a download closed early is not taken for a complete list
+     * @return suffix trie
+     * @throws IOException
+     *             when the list cannot be read completely
+     */
+    private PublicSuffixTrie readStream(InputStream stream, boolean requireEnd)
+        throws IOException {
+        PublicSuffixTrie.Builder builder = new PublicSuffixTrie.Builder();
+        boolean endFound = false;
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(stream, StandardCharsets.UTF_8))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("//")) {
-                    continue;
-                }
-                tldSet.add(line);
+                builder.addLine(line);
+                endFound |= line.contains(END_MARKER);
             }
-        } catch (IOException e) {
-            logger.warn("Error while reading TLD-list: {}", e.getMessage());
         }
-        return tldSet.size();
+        if (requireEnd && !endFound) {
+            throw new IOException("TLD list ends before " + END_MARKER);
+        }
+        return builder.build();
     }
 
     public static TopLevelDomainList getInstance() {
-        return instance;
+        return Holder.INSTANCE;
     }
 
     /**
      * If {@code online} is set to true, the list of TLD files will be downloaded and refreshed,
      * otherwise the one cached in src/main/resources/tld-names.txt will be used.
+     * <p>
+     * This must be set before the list is first used. The download runs in the background, and
+     * the cached list is used until it completes.
      */
     public static void setUseOnline(boolean online) {
         onlineUpdate = online;
     }
 
+    /**
+     * Checks if the given domain is a public suffix, taking wildcard and exception rules into
+     * account.
+     *
+     * @param str
+     *            domain name in lower case
+     * @return true if the domain is a public suffix
+     */
     public boolean contains(String str) {
-        return tldSet.contains(str);
+        return trie.findPublicSuffix(str, 0, str.length()) == 0;
+    }
+
+    /**
+     * Finds the registrable domain of a host, which is its public suffix with one more label,
+     * like {@code example.co.uk} for {@code www.example.co.uk}.
+     *
+     * @param host
+     *            contains the host name in lower case
+     * @param start
+     *            start of the host name
+     * @param end
+     *            end of the host name
+     * @return start of the registrable domain, or {@code start} if the host is a public suffix
+     *         itself
+     */
+    public int findRegistrableDomain(CharSequence host, int start, int end) {
+        return trie.findRegistrableDomain(host, start, end);
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.url;
+
+/**
+ * Computes 64-bit fingerprints of normalized URLs. Frontiers use fingerprints instead of the
+ * URLs themselves to remember which targets have been seen before.
+ * <p>
+ * Fingerprints have 62 significant bits. The lowest 2 bits are always 0, so that hash tables
+ * may use them for flags. The fingerprint is never 0, so that 0 can be used to mark empty
+ * slots.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class UrlFingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Lowest bits which are always 0 in a fingerprint.
+     */
+    public static final long FLAG_MASK = 3L;
+
+    private UrlFingerprint() {
+        // hidden constructor
+    }
+
+    /**
+     * Computes the fingerprint of the given URL.
+     *
+     * @param url
+     *            normalized URL
+     * @return non-zero fingerprint with the lowest 2 bits cleared
+     */
+    public static long of(String url) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        hash = mix(hash) & ~FLAG_MASK;
+        return (hash == 0) ? (FLAG_MASK + 1) : hash;
+    }
+
+    /**
+     * Final avalanche step of MurmurHash3, spreading the bits of the FNV hash so that the low
+     * bits can be used directly as hash table index.
+     */
+    private static long mix(long hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
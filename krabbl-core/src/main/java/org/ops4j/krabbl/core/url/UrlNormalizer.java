@@ -23,6 +23,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -30,20 +31,501 @@ import java.util.Objects;
 /**
  * See http://en.wikipedia.org/wiki/URL_normalization for a reference Note: some
  * parts of the code are adapted from: http://stackoverflow.com/a/4057470/405418
+ * <p>
+ * HTTP and HTTPS URLs with a plain host name are normalized in a single pass over their
+ * characters, without intermediate objects. Other URLs, and URLs with constructs whose
+ * normalization depends on details of {@link URL} and {@link URI}, like dot segments, user info
+ * or malformed escapes, take the slow path via these classes. The result is the same either
+ * way.
  *
  * @author Yasser Ganjisaffar
  */
 public class UrlNormalizer {
 
+    private static final String HTTP_PREFIX = "http://";
+
+    private static final String HTTPS_PREFIX = "https://";
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final String[] SESSION_ID_NAMES = { "jsessionid", "phpsessid", "aspsessionid" };
+
+    /**
+     * Result of the fast path: the URL has been normalized.
+     */
+    private static final int NORMALIZED = 0;
+
+    /**
+     * Result of the fast path: the URL is invalid.
+     */
+    private static final int INVALID = 1;
+
+    /**
+     * Result of the fast path: the URL must be normalized by the slow path.
+     */
+    private static final int UNSUPPORTED = 2;
+
+    /**
+     * Longest port number handled by the fast path, avoiding overflow.
+     */
+    private static final int MAX_PORT_DIGITS = 9;
+
     public static String normalize(String url) {
         return normalize(url, null);
     }
 
     public static String normalize(String href, String context) {
+        // an absolute HTTP URL is not changed by resolving it
+        String url = href.trim();
+        int authorityStart = getAuthorityStart(url);
+        if (authorityStart < 0) {
+            url = UrlResolver.resolveUrl((context == null) ? "" : context, href);
+            authorityStart = getAuthorityStart(url);
+        }
+        if (authorityStart >= 0) {
+            StringBuilder sb = new StringBuilder(url.length() + 8);
+            int result = normalizeHttpUrl(url, authorityStart, sb);
+            if (result == NORMALIZED) {
+                return sb.toString();
+            }
+            if (result == INVALID) {
+                return null;
+            }
+        }
+        return normalizeSlowly(url);
+    }
+
+    /**
+     * Gets the start of the authority of an HTTP or HTTPS URL.
+     *
+     * @return index after the double slash, or -1 if the URL has another scheme
+     */
+    private static int getAuthorityStart(String url) {
+        if (startsWithIgnoreCase(url, HTTP_PREFIX)) {
+            return HTTP_PREFIX.length();
+        }
+        if (startsWithIgnoreCase(url, HTTPS_PREFIX)) {
+            return HTTPS_PREFIX.length();
+        }
+        return -1;
+    }
+
+    /**
+     * Normalizes an HTTP or HTTPS URL in a single pass. Like the slow path, this drops the
+     * fragment and the default port, lower-cases scheme and host, collapses empty path segments,
+     * decodes {@code %7E} in the path and canonicalizes the query.
+     *
+     * @param url
+     *            absolute URL
+     * @param authorityStart
+     *            index after the double slash
+     * @param sb
+     *            receives the normalized URL
+     * @return {@link #NORMALIZED}, {@link #INVALID} or {@link #UNSUPPORTED}
+     */
+    private static int normalizeHttpUrl(String url, int authorityStart, StringBuilder sb) {
+        int end = url.indexOf('#');
+        if (end < 0) {
+            end = url.length();
+        }
+        int queryStart = indexOf(url, '?', authorityStart, end);
+        int pathEnd = (queryStart < 0) ? end : queryStart;
+        int pathStart = indexOf(url, '/', authorityStart, pathEnd);
+        if (pathStart < 0) {
+            pathStart = pathEnd;
+        }
+        int hostEnd = indexOf(url, ':', authorityStart, pathStart);
+        if (hostEnd < 0) {
+            hostEnd = pathStart;
+        }
+        if (hostEnd == authorityStart) {
+            return INVALID;
+        }
+
+        boolean https = authorityStart == HTTPS_PREFIX.length();
+        sb.append(https ? HTTPS_PREFIX : HTTP_PREFIX);
+        for (int i = authorityStart; i < hostEnd; i++) {
+            char c = url.charAt(i);
+            if (!isHostChar(c)) {
+                return UNSUPPORTED;
+            }
+            sb.append(toLowerCase(c));
+        }
+        if (hostEnd < pathStart) {
+            int portStart = hostEnd + 1;
+            if (pathStart - portStart > MAX_PORT_DIGITS) {
+                return UNSUPPORTED;
+            }
+            int port = 0;
+            for (int i = portStart; i < pathStart; i++) {
+                char c = url.charAt(i);
+                if (c < '0' || c > '9') {
+                    return UNSUPPORTED;
+                }
+                port = 10 * port + (c - '0');
+            }
+            if (portStart < pathStart && port != (https ? 443 : 80)) {
+                sb.append(':').append(port);
+            }
+        }
+
+        if (!appendPath(url, pathStart, pathEnd, sb)) {
+            return UNSUPPORTED;
+        }
+        if (queryStart >= 0) {
+            appendQuery(url, queryStart + 1, end, sb);
+        }
+        return NORMALIZED;
+    }
+
+    /**
+     * Appends the path, collapsing runs of slashes and decoding {@code %7E}.
+     *
+     * @return false if the path contains dot segments or characters left to the slow path
+     */
+    private static boolean appendPath(String url, int start, int end, StringBuilder sb) {
+        // URI takes "//" for an empty authority and rejects it
+        if (end - start == 2 && url.charAt(start + 1) == '/') {
+            return false;
+        }
+        int pathOffset = sb.length();
+        int segmentStart = start;
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '/') {
+                if (isDotSegment(url, segmentStart, i)) {
+                    return false;
+                }
+                segmentStart = i + 1;
+                if (sb.length() == pathOffset || sb.charAt(sb.length() - 1) != '/') {
+                    sb.append('/');
+                }
+            }
+            else if (c == '%') {
+                if (i + 2 >= end || !isHexDigit(url.charAt(i + 1))
+                    || !isHexDigit(url.charAt(i + 2))) {
+                    return false;
+                }
+                if (url.charAt(i + 1) == '7' && url.charAt(i + 2) == 'E') {
+                    sb.append('~');
+                }
+                else {
+                    sb.append(url, i, i + 3);
+                }
+                i += 2;
+            }
+            else if (isPathChar(c)) {
+                sb.append(c);
+            }
+            else {
+                return false;
+            }
+        }
+        if (isDotSegment(url, segmentStart, end)) {
+            return false;
+        }
+        if (sb.length() == pathOffset) {
+            sb.append('/');
+        }
+        return true;
+    }
+
+    /**
+     * Appends the canonical query string. Parameters keep the order of their first occurrence
+     * and take the value of their last occurrence. Session IDs are dropped, and names and
+     * values are percent-encoded according to RFC 3986.
+     */
+    private static void appendQuery(String url, int start, int end, StringBuilder sb) {
+        // start and end of name and value of each parameter
+        int[] params = null;
+        int numParams = 0;
+        int pairStart = start;
+        while (pairStart < end) {
+            int pairEnd = indexOf(url, '&', pairStart, end);
+            if (pairEnd < 0) {
+                pairEnd = end;
+            }
+            if (pairEnd > pairStart) {
+                int nameEnd = indexOf(url, '=', pairStart, pairEnd);
+                int valueStart = nameEnd + 1;
+                if (nameEnd < 0) {
+                    nameEnd = pairEnd;
+                    valueStart = pairEnd;
+                }
+                int index = indexOfName(url, params, numParams, pairStart, nameEnd);
+                if (index < 0) {
+                    if (params == null) {
+                        params = new int[16];
+                    }
+                    else if (4 * numParams == params.length) {
+                        params = Arrays.copyOf(params, 2 * params.length);
+                    }
+                    index = 4 * numParams++;
+                    params[index] = pairStart;
+                    params[index + 1] = nameEnd;
+                }
+                params[index + 2] = valueStart;
+                params[index + 3] = pairEnd;
+            }
+            pairStart = pairEnd + 1;
+        }
+
+        int queryOffset = sb.length() + 1;
+        sb.append('?');
+        for (int i = 0; i < 4 * numParams; i += 4) {
+            if (isSessionId(url, params[i], params[i + 1])) {
+                continue;
+            }
+            if (sb.length() > queryOffset) {
+                sb.append('&');
+            }
+            appendEncoded(url, params[i], params[i + 1], sb);
+            if (params[i + 3] > params[i + 2]) {
+                sb.append('=');
+                appendEncoded(url, params[i + 2], params[i + 3], sb);
+            }
+        }
+        if (sb.length() == queryOffset) {
+            sb.setLength(queryOffset - 1);
+        }
+    }
+
+    /**
+     * Finds a parameter with the given name.
+     *
+     * @return index of the parameter in the given array, or -1
+     */
+    private static int indexOfName(String url, int[] params, int numParams, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < 4 * numParams; i += 4) {
+            if (params[i + 1] - params[i] == length
+                && url.regionMatches(params[i], url, start, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSessionId(String url, int start, int end) {
+        for (String name : SESSION_ID_NAMES) {
+            if (equalsIgnoreCase(url, start, end, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends a query parameter name or value, percent-encoded according to RFC 3986. The
+     * result is the same as from {@link #percentEncodeRfc3986(String)}: Escape sequences are
+     * decoded and encoded again, so only reserved characters remain encoded, with upper case hex
+     * digits. A plus sign is taken literally.
+     */
+    private static void appendEncoded(String url, int start, int end, StringBuilder sb) {
+        int offset = sb.length();
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '%' || c == '+') {
+                int runEnd = scanEscapes(url, i, end);
+                if (runEnd < 0) {
+                    sb.setLength(offset);
+                    sb.append(percentEncodeRfc3986(url.substring(start, end)));
+                    return;
+                }
+                while (i < runEnd) {
+                    if (url.charAt(i) == '+') {
+                        appendEncodedByte('+', sb);
+                        i++;
+                    }
+                    else {
+                        appendEncodedByte(hexValue(url, i + 1), sb);
+                        i += 3;
+                    }
+                }
+                i--;
+            }
+            else if (c < 0x80) {
+                appendEncodedByte(c, sb);
+            }
+            else if (!Character.isSurrogate(c)) {
+                appendUtf8(c, sb);
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < end
+                && Character.isLowSurrogate(url.charAt(i + 1))) {
+                appendUtf8(Character.toCodePoint(c, url.charAt(++i)), sb);
+            }
+            else {
+                sb.setLength(offset);
+                sb.append(percentEncodeRfc3986(url.substring(start, end)));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Scans a run of escape sequences, where a plus sign counts as {@code %2B}. The bytes of the
+     * run must be valid UTF-8, since they are decoded together.
+     *
+     * @return end of the run, or -1 if an escape sequence is malformed or the bytes are not
+     *         valid UTF-8
+     */
+    private static int scanEscapes(String url, int start, int end) {
+        int pending = 0;
+        int lower = 0x80;
+        int upper = 0xBF;
+        int i = start;
+        while (i < end) {
+            char c = url.charAt(i);
+            int b;
+            if (c == '+') {
+                b = '+';
+                i++;
+            }
+            else if (c == '%') {
+                if (i + 2 >= end || !isHexDigit(url.charAt(i + 1))
+                    || !isHexDigit(url.charAt(i + 2))) {
+                    return -1;
+                }
+                b = hexValue(url, i + 1);
+                i += 3;
+            }
+            else {
+                break;
+            }
+
+            if (pending > 0) {
+                if (b < lower || b > upper) {
+                    return -1;
+                }
+                pending--;
+                lower = 0x80;
+                upper = 0xBF;
+            }
+            else if (b >= 0xC2 && b <= 0xDF) {
+                pending = 1;
+            }
+            else if (b >= 0xE0 && b <= 0xEF) {
+                pending = 2;
+                lower = (b == 0xE0) ? 0xA0 : 0x80;
+                upper = (b == 0xED) ? 0x9F : 0xBF;
+            }
+            else if (b >= 0xF0 && b <= 0xF4) {
+                pending = 3;
+                lower = (b == 0xF0) ? 0x90 : 0x80;
+                upper = (b == 0xF4) ? 0x8F : 0xBF;
+            }
+            else if (b >= 0x80) {
+                return -1;
+            }
+        }
+        return (pending == 0) ? i : -1;
+    }
+
+    private static void appendUtf8(int codePoint, StringBuilder sb) {
+        if (codePoint < 0x800) {
+            appendEncodedByte(0xC0 | (codePoint >> 6), sb);
+        }
+        else {
+            if (codePoint < 0x10000) {
+                appendEncodedByte(0xE0 | (codePoint >> 12), sb);
+            }
+            else {
+                appendEncodedByte(0xF0 | (codePoint >> 18), sb);
+                appendEncodedByte(0x80 | ((codePoint >> 12) & 0x3F), sb);
+            }
+            appendEncodedByte(0x80 | ((codePoint >> 6) & 0x3F), sb);
+        }
+        appendEncodedByte(0x80 | (codePoint & 0x3F), sb);
+    }
+
+    /**
+     * Appends a byte of UTF-8 encoded text, percent-encoded unless it is an unreserved
+     * character.
+     */
+    private static void appendEncodedByte(int b, StringBuilder sb) {
+        if (isAlphaNumeric(b) || b == '-' || b == '.' || b == '_' || b == '~') {
+            sb.append((char) b);
+        }
+        else {
+            sb.append('%').append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0xF]);
+        }
+    }
+
+    private static int indexOf(String s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWithIgnoreCase(String s, String lowerCasePrefix) {
+        return s.length() >= lowerCasePrefix.length()
+            && equalsIgnoreCase(s, 0, lowerCasePrefix.length(), lowerCasePrefix);
+    }
+
+    /**
+     * Compares a region of a string to a lower case ASCII string, ignoring the case of ASCII
+     * letters only.
+     */
+    private static boolean equalsIgnoreCase(String s, int start, int end, String lowerCase) {
+        if (end - start != lowerCase.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (toLowerCase(s.charAt(i)) != lowerCase.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char toLowerCase(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static boolean isDotSegment(String url, int start, int end) {
+        int length = end - start;
+        return (length == 1 || length == 2) && url.charAt(start) == '.'
+            && url.charAt(end - 1) == '.';
+    }
+
+    private static boolean isAlphaNumeric(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isHostChar(char c) {
+        return isAlphaNumeric(c) || c == '-' || c == '.' || c == '_';
+    }
+
+    /**
+     * Checks if the given character may occur unescaped in a path segment of a {@link URI}.
+     */
+    private static boolean isPathChar(char c) {
+        return isAlphaNumeric(c) || "-_.!~*'():@&=+$,;".indexOf(c) >= 0;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static int hexValue(String s, int index) {
+        return (Character.digit(s.charAt(index), 16) << 4)
+            | Character.digit(s.charAt(index + 1), 16);
+    }
+
+    /**
+     * Normalizes a URL via {@link URL} and {@link URI}.
+     *
+     * @param url
+     *            absolute URL
+     * @return normalized URL, or null if the URL is invalid
+     */
+    private static String normalizeSlowly(String url) {
 
         try {
-            URL canonicalURL =
-                new URL(UrlResolver.resolveUrl((context == null) ? "" : context, href));
+            URL canonicalURL = new URL(url);
 
             String host = canonicalURL.getHost().toLowerCase();
             if (Objects.equals(host, "")) {
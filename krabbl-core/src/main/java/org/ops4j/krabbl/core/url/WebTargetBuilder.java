@@ -38,38 +38,22 @@ public class WebTargetBuilder {
     }
 
     public WebTargetImpl build() {
-        url = UrlNormalizer.normalize(url);
-        int domainStartIdx = url.indexOf("//") + 2;
-        int domainEndIdx = url.indexOf('/', domainStartIdx);
-        domainEndIdx = (domainEndIdx > domainStartIdx) ? domainEndIdx : url.length();
-        String domain = url.substring(domainStartIdx, domainEndIdx);
-        String subDomain = "";
-        String[] parts = domain.split("\\.");
-        if (parts.length > 2) {
-            domain = parts[parts.length - 2] + "." + parts[parts.length - 1];
-            int limit = 2;
-            if (TopLevelDomainList.getInstance().contains(domain)) {
-                domain = parts[parts.length - 3] + "." + domain;
-                limit = 3;
-            }
-            for (int i = 0; i < (parts.length - limit); i++) {
-                if (!subDomain.isEmpty()) {
-                    subDomain += ".";
-                }
-                subDomain += parts[i];
-            }
-        }
-        String path = url.substring(domainEndIdx);
-        int pathEndIdx = path.indexOf('?');
-        if (pathEndIdx >= 0) {
-            path = path.substring(0, pathEndIdx);
-        }
+        WebTargetImpl target = new WebTargetImpl();
+        target.setUrl(UrlNormalizer.normalize(url));
+        return target;
+    }
 
+    /**
+     * Creates a web target for a URL which has already been normalized, without normalizing it
+     * again.
+     *
+     * @param normalizedUrl
+     *            normalized URL
+     * @return web target
+     */
+    public static WebTargetImpl fromNormalizedUrl(String normalizedUrl) {
         WebTargetImpl target = new WebTargetImpl();
-        target.setUrl(url);
-        target.setDomain(domain);
-        target.setSubdomain(subDomain);
-        target.setPath(path);
+        target.setUrl(normalizedUrl);
         return target;
     }
 
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.url;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.ops4j.krabbl.api.WebTarget;
+
+/**
+ * Encodes web targets as bytes and decodes them again. Used by frontiers which keep their
+ * targets outside of the heap. Not for direct use by client applications.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class WebTargetCodec {
+
+    private WebTargetCodec() {
+        // hidden constructor
+    }
+
+    /**
+     * Encodes the given target.
+     *
+     * @param target
+     *            web target
+     * @return encoded target
+     */
+    public static byte[] encode(WebTargetImpl target) {
+        byte[] url = toBytes(target.getUrl());
+        byte[] referringUrl = toBytes(target.getReferringUrl());
+        int length = Integer.BYTES + Float.BYTES + 6 * Integer.BYTES + length(url)
+            + length(referringUrl);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(target.getDepth());
+        buffer.putFloat(target.getPriority());
+        put(buffer, url);
+        put(buffer, referringUrl);
+        buffer.putInt(target.getHostStart());
+        buffer.putInt(target.getDomainStart());
+        buffer.putInt(target.getPathStart());
+        buffer.putInt(target.getPathEnd());
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a target from the given buffer, starting at the current position. On return, the
+     * position of the buffer is just after the encoded target.
+     *
+     * @param buffer
+     *            buffer with encoded target
+     * @return web target
+     */
+    public static WebTargetImpl decode(ByteBuffer buffer) {
+        return decode(buffer, null);
+    }
+
+    /**
+     * Decodes a target from the given buffer, like {@link #decode(ByteBuffer)}. If the referring
+     * URL equals the one of the given previous target, the decoded target shares that instance.
+     * Targets found on the same page are queued one after the other, so most decoded targets
+     * do not need a copy of their referring URL.
+     *
+     * @param buffer
+     *            buffer with encoded target
+     * @param previous
+     *            previously decoded target, or null
+     * @return web target
+     */
+    public static WebTargetImpl decode(ByteBuffer buffer, WebTarget previous) {
+        WebTargetImpl target = new WebTargetImpl();
+        target.setDepth(buffer.getInt());
+        target.setPriority(buffer.getFloat());
+        String url = get(buffer);
+        String referringUrl = get(buffer);
+        if (previous != null && referringUrl != null
+            && referringUrl.equals(previous.getReferringUrl())) {
+            referringUrl = previous.getReferringUrl();
+        }
+        target.setReferringUrl(referringUrl);
+        int hostStart = buffer.getInt();
+        int domainStart = buffer.getInt();
+        int pathStart = buffer.getInt();
+        int pathEnd = buffer.getInt();
+        target.setUrl(url, hostStart, domainStart, pathStart, pathEnd);
+        return target;
+    }
+
+    private static byte[] toBytes(String s) {
+        return (s == null) ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return (bytes == null) ? 0 : bytes.length;
+    }
+
+    private static void put(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        }
+        else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String get(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -24,6 +24,9 @@ import org.ops4j.krabbl.api.WebTarget;
 /**
  * Default implementation of {@link WebTarget}. Not for direct use by client
  * applications.
+ * <p>
+ * A target only keeps its URL and the offsets of the parts of the URL. Domain, subdomain and path
+ * are extracted on demand.
  *
  * @author Harald Wellmann
  */
@@ -36,9 +39,27 @@ public class WebTargetImpl implements WebTarget {
 
     private String referringUrl;
     private int depth;
-    private String domain;
-    private String subdomain;
-    private String path;
+    private float priority;
+
+    /**
+     * Start of the host name in the URL.
+     */
+    private int hostStart;
+
+    /**
+     * Start of the registrable domain in the URL.
+     */
+    private int domainStart;
+
+    /**
+     * End of the authority, which is also the start of the path.
+     */
+    private int pathStart;
+
+    /**
+     * End of the path.
+     */
+    private int pathEnd;
 
 
     /**
@@ -78,14 +99,32 @@ public class WebTargetImpl implements WebTarget {
         this.depth = depth;
     }
 
+    @Override
+    public float getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority hint of this target.
+     *
+     * @param priority
+     *            priority hint
+     */
+    public void setPriority(float priority) {
+        this.priority = priority;
+    }
+
     @Override
     public String getDomain() {
-        return domain;
+        return url.substring(domainStart, pathStart);
     }
 
     @Override
     public String getSubdomain() {
-        return subdomain;
+        if (domainStart == hostStart) {
+            return "";
+        }
+        return url.substring(hostStart, domainStart - 1);
     }
 
     @Override
@@ -94,47 +133,66 @@ public class WebTargetImpl implements WebTarget {
     }
 
     /**
-     * Sets the normalized URL of this target.
+     * Sets the normalized URL of this target. The domain is the registrable domain of the host,
+     * followed by the port, if any.
      *
      * @param url
      *            normalized URL
      */
     public void setUrl(String url) {
-        this.url = url;
+        int hostStartIdx = url.indexOf("//") + 2;
+        int pathStartIdx = url.indexOf('/', hostStartIdx);
+        pathStartIdx = (pathStartIdx > hostStartIdx) ? pathStartIdx : url.length();
+        int hostEndIdx = url.lastIndexOf(':', pathStartIdx - 1);
+        hostEndIdx = (hostEndIdx >= hostStartIdx) ? hostEndIdx : pathStartIdx;
+        int domainStartIdx = TopLevelDomainList.getInstance().findRegistrableDomain(url,
+            hostStartIdx, hostEndIdx);
+        int pathEndIdx = url.indexOf('?', pathStartIdx);
+        pathEndIdx = (pathEndIdx >= 0) ? pathEndIdx : url.length();
+        setUrl(url, hostStartIdx, domainStartIdx, pathStartIdx, pathEndIdx);
     }
 
     /**
-     * Sets the domain name of this URL.
+     * Sets the normalized URL of this target with known offsets of its parts.
      *
-     * @param domain
-     *            domain name
+     * @param url
+     *            normalized URL
+     * @param hostStart
+     *            start of the host name
+     * @param domainStart
+     *            start of the registrable domain
+     * @param pathStart
+     *            start of the path
+     * @param pathEnd
+     *            end of the path
      */
-    public void setDomain(String domain) {
-        this.domain = domain;
+    void setUrl(String url, int hostStart, int domainStart, int pathStart, int pathEnd) {
+        this.url = url;
+        this.hostStart = hostStart;
+        this.domainStart = domainStart;
+        this.pathStart = pathStart;
+        this.pathEnd = pathEnd;
     }
 
-    /**
-     * Sets the subdomain name of this URL.
-     *
-     * @param subdomain
-     */
-    public void setSubdomain(String subdomain) {
-        this.subdomain = subdomain;
+    int getHostStart() {
+        return hostStart;
     }
 
-    @Override
-    public String getPath() {
-        return path;
+    int getDomainStart() {
+        return domainStart;
     }
 
-    /**
-     * Sets the path of this target.
-     *
-     * @param path
-     *            path
-     */
-    public void setPath(String path) {
-        this.path = path;
+    int getPathStart() {
+        return pathStart;
+    }
+
+    int getPathEnd() {
+        return pathEnd;
+    }
+
+    @Override
+    public String getPath() {
+        return url.substring(pathStart, pathEnd);
     }
 
     @Override
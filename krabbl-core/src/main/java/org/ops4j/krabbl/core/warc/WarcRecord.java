@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A single WARC/1.1 record, encoded as a gzip member of its own.
+ *
+ * @author Harald Wellmann
+ *
+ */
+final class WarcRecord {
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final StringBuilder header = new StringBuilder(512);
+
+    private final String recordId;
+
+    /**
+     * Creates a record with the mandatory headers, except the content length.
+     *
+     * @param type
+     *            WARC record type
+     * @param time
+     *            capture time in milliseconds since the epoch
+     */
+    WarcRecord(String type, long time) {
+        this.recordId = newRecordId();
+        header.append("WARC/1.1\r\n");
+        addHeader("WARC-Type", type);
+        addHeader("WARC-Record-ID", recordId);
+        addHeader("WARC-Date", DateTimeFormatter.ISO_INSTANT
+            .format(Instant.ofEpochMilli(time).truncatedTo(ChronoUnit.SECONDS)));
+    }
+
+    String getRecordId() {
+        return recordId;
+    }
+
+    WarcRecord addHeader(String name, String value) {
+        header.append(name).append(": ").append(value).append("\r\n");
+        return this;
+    }
+
+    /**
+     * Writes this record as a gzip member to the given stream. The record block consists of the
+     * given block header and payload.
+     *
+     * @param os
+     *            output stream
+     * @param blockHeader
+     *            start of the record block, e.g. an HTTP header
+     * @param payload
+     *            rest of the record block from position to limit, or null
+     * @throws IOException
+     *             when writing fails
+     */
+    void writeTo(OutputStream os, byte[] blockHeader, ByteBuffer payload) throws IOException {
+        ByteBuffer block = (payload == null) ? ByteBuffer.allocate(0) : payload.duplicate();
+        long length = blockHeader.length + block.remaining();
+        addHeader("Content-Length", Long.toString(length));
+        header.append("\r\n");
+
+        GZIPOutputStream gzip = new GZIPOutputStream(os, CHUNK_SIZE) {
+
+            @Override
+            public void close() throws IOException {
+                // finish the gzip member, but leave the underlying stream open
+                finish();
+                def.end();
+            }
+        };
+        try {
+            gzip.write(header.toString().getBytes(StandardCharsets.UTF_8));
+            gzip.write(blockHeader);
+            if (block.hasArray()) {
+                gzip.write(block.array(), block.arrayOffset() + block.position(),
+                    block.remaining());
+            }
+            else {
+                byte[] chunk = new byte[Math.min(CHUNK_SIZE, block.remaining())];
+                while (block.hasRemaining()) {
+                    int numBytes = Math.min(chunk.length, block.remaining());
+                    block.get(chunk, 0, numBytes);
+                    gzip.write(chunk, 0, numBytes);
+                }
+            }
+            gzip.write(CRLF);
+            gzip.write(CRLF);
+        }
+        finally {
+            gzip.close();
+        }
+    }
+
+    /**
+     * Encodes this record as a gzip member.
+     *
+     * @param blockHeader
+     *            start of the record block
+     * @param payload
+     *            rest of the record block, or null
+     * @return gzipped record
+     */
+    byte[] toGzip(byte[] blockHeader, ByteBuffer payload) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(CHUNK_SIZE);
+        try {
+            writeTo(os, blockHeader, payload);
+        }
+        catch (IOException exc) {
+            // cannot happen with a byte array stream
+            throw new IllegalStateException(exc);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * Creates a random record ID. This avoids the lock of the secure random generator used by
+     * {@link UUID#randomUUID()}, since record IDs need not be unpredictable.
+     */
+    private static String newRecordId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long lsb = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return "<urn:uuid:" + new UUID(msb, lsb) + ">";
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.warc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.StatusLine;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.fetch.PageFetchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the requests and responses of a crawl to WARC/1.1 files.
+ * <p>
+ * Each record is compressed as a gzip member of its own, so that readers can seek to any
+ * record. Records are encoded and compressed by the crawl threads calling
+ * {@link #write(PageFetchResult, Page)}, and then handed over to a dedicated writer thread
+ * through a bounded queue. The writer thread drains the queue in batches and appends each batch
+ * with a single gathering write. Crawl threads never wait for the disk: when the queue is full,
+ * the records are dropped and counted, and a warning is logged at most once per
+ * {@value #WARNING_INTERVAL_MILLIS} milliseconds.
+ * <p>
+ * A new file is started when the current file exceeds the segment size. Each file starts with a
+ * {@code warcinfo} record. Files are named {@code krabbl-<timestamp>-<serial>.warc.gz}.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class WarcWriter implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(WarcWriter.class);
+
+    /**
+     * Maximum number of queue entries written by a single write.
+     */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Minimum time between two warnings about dropped records.
+     */
+    private static final long WARNING_INTERVAL_MILLIS = 10_000;
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter
+        .ofPattern("yyyyMMddHHmmss");
+
+    private final Path directory;
+
+    private final long segmentSize;
+
+    private final BlockingQueue<byte[]> queue;
+
+    private final Thread writerThread;
+
+    private final AtomicLong numDroppedPages = new AtomicLong();
+
+    private final AtomicLong lastWarningMillis = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Files written so far, only accessed by the writer thread until it terminates.
+     */
+    private final List<Path> files = new ArrayList<>();
+
+    private FileChannel channel;
+
+    private int serial;
+
+    /**
+     * Creates a writer and starts its writer thread. The first file is created on demand.
+     *
+     * @param directory
+     *            directory for WARC files, will be created if needed
+     * @param segmentSize
+     *            size in bytes after which a new file is started
+     * @param queueCapacity
+     *            maximum number of request and response pairs waiting to be written
+     * @throws IOException
+     *             when the directory cannot be created
+     */
+    public WarcWriter(Path directory, long segmentSize, int queueCapacity) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        Files.createDirectories(directory);
+        this.writerThread = new Thread(this::run, "warc-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Records the request and response of the given fetch result. The response payload is
+     * taken from the content of the given page, if the content has been fetched. This method
+     * does not block. When the queue is full, the records are dropped.
+     *
+     * @param fetchResult
+     *            fetch result
+     * @param page
+     *            page with the fetched content
+     * @return true if the records have been queued, false if they have been dropped
+     */
+    public boolean write(PageFetchResult fetchResult, Page page) {
+        if (closed || fetchResult.getStatusLine() == null) {
+            numDroppedPages.incrementAndGet();
+            return false;
+        }
+        String url = page.getWebTarget().getUrl();
+        long time = fetchResult.getFetchTime();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        WarcRecord response = new WarcRecord("response", time);
+        response.addHeader("WARC-Target-URI", url);
+        response.addHeader("Content-Type", "application/http;msgtype=response");
+        ByteBuffer payload = page.getContent();
+        if (page.isTruncated()) {
+            response.addHeader("WARC-Truncated", "length");
+        }
+        else if (payload == null && fetchResult.getEntity() != null) {
+            response.addHeader("WARC-Truncated", "unspecified");
+        }
+        byte[] responseHeader = encodeResponseHeader(fetchResult.getStatusLine(),
+            fetchResult.getResponseHeaders());
+
+        HttpRequest request = fetchResult.getRequest();
+        try {
+            response.writeTo(os, responseHeader, payload);
+            if (request != null) {
+                WarcRecord requestRecord = new WarcRecord("request", time);
+                requestRecord.addHeader("WARC-Target-URI", url);
+                requestRecord.addHeader("WARC-Concurrent-To", response.getRecordId());
+                requestRecord.addHeader("Content-Type", "application/http;msgtype=request");
+                requestRecord.writeTo(os, encodeRequestHeader(request), null);
+            }
+        }
+        catch (IOException exc) {
+            // cannot happen with a byte array stream
+            throw new IllegalStateException(exc);
+        }
+        boolean queued = queue.offer(os.toByteArray());
+        if (!queued) {
+            long dropped = numDroppedPages.incrementAndGet();
+            logDropped(url, dropped);
+        }
+        return queued;
+    }
+
+    private void logDropped(String url, long dropped) {
+        long now = System.currentTimeMillis();
+        long last = lastWarningMillis.get();
+        if (now - last >= WARNING_INTERVAL_MILLIS && lastWarningMillis.compareAndSet(last, now)) {
+            logger.warn("WARC queue is full, dropping records for {} ({} pages dropped so far)",
+                url, dropped);
+        }
+        else {
+            logger.debug("WARC queue is full, dropping records for {}", url);
+        }
+    }
+
+    /**
+     * Gets the number of pages whose records have been dropped so far, since the queue was full,
+     * writing failed or the writer was closed.
+     *
+     * @return number of dropped pages
+     */
+    public long getNumberOfDroppedPages() {
+        return numDroppedPages.get();
+    }
+
+    /**
+     * Gets the files written by this writer. The result is only complete after closing the
+     * writer.
+     *
+     * @return WARC files in order of creation
+     */
+    public synchronized List<Path> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+    private static byte[] encodeResponseHeader(StatusLine statusLine, Header[] headers) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append(statusLine.getProtocolVersion()).append(' ')
+            .append(statusLine.getStatusCode());
+        if (statusLine.getReasonPhrase() != null) {
+            sb.append(' ').append(statusLine.getReasonPhrase());
+        }
+        sb.append("\r\n");
+        return encodeHeaders(sb, headers);
+    }
+
+    private static byte[] encodeRequestHeader(HttpRequest request) {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append(request.getRequestLine()).append("\r\n");
+        return encodeHeaders(sb, request.getAllHeaders());
+    }
+
+    private static byte[] encodeHeaders(StringBuilder sb, Header[] headers) {
+        if (headers != null) {
+            for (Header header : headers) {
+                sb.append(header.getName()).append(": ").append(header.getValue())
+                    .append("\r\n");
+            }
+        }
+        sb.append("\r\n");
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void run() {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                byte[] first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                writeBatch(batch);
+            }
+            catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch (IOException exc) {
+                numDroppedPages.addAndGet(batch.size());
+                logger.error("cannot write WARC records to " + directory, exc);
+                closeChannel();
+            }
+            batch.clear();
+        }
+        closeChannel();
+    }
+
+    private void writeBatch(List<byte[]> batch) throws IOException {
+        int start = 0;
+        while (start < batch.size()) {
+            if (channel == null || channel.position() >= segmentSize) {
+                startFile();
+            }
+            // write as many entries as fit into the current file, but at least one
+            long remaining = segmentSize - channel.position();
+            int end = start;
+            long batchBytes = 0;
+            do {
+                batchBytes += batch.get(end).length;
+                end++;
+            }
+            while (end < batch.size() && batchBytes + batch.get(end).length <= remaining);
+
+            ByteBuffer[] buffers = new ByteBuffer[end - start];
+            for (int i = start; i < end; i++) {
+                buffers[i - start] = ByteBuffer.wrap(batch.get(i));
+            }
+            long numWritten = 0;
+            while (numWritten < batchBytes) {
+                numWritten += channel.write(buffers);
+            }
+            start = end;
+        }
+    }
+
+    private void startFile() throws IOException {
+        closeChannel();
+        String timestamp = FILE_TIMESTAMP.format(LocalDateTime.now());
+        while (true) {
+            Path file = directory
+                .resolve(String.format("krabbl-%s-%05d.warc.gz", timestamp, serial++));
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+                synchronized (this) {
+                    files.add(file);
+                }
+                writeInfo(file);
+                return;
+            }
+            catch (FileAlreadyExistsException exc) {
+                // file of a previous crawl, try next serial number
+            }
+        }
+    }
+
+    private void writeInfo(Path file) throws IOException {
+        WarcRecord info = new WarcRecord("warcinfo", System.currentTimeMillis());
+        info.addHeader("WARC-Filename", file.getFileName().toString());
+        info.addHeader("Content-Type", "application/warc-fields");
+        byte[] fields = ("software: krabbl\r\n"
+            + "format: WARC File Format 1.1\r\n"
+            + "conformsTo: http://iipc.github.io/warc-specifications/specifications/"
+            + "warc-format/warc-1.1/\r\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(info.toGzip(fields, null));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException exc) {
+                logger.warn("error closing WARC file", exc);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Writes all queued records and closes the current file. Records passed to
+     * {@link #write(PageFetchResult, Page)} afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join();
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class BloomFilterFrontierTest {
+
+    @Test
+    public void shouldNotReportFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(UrlFingerprint.of("http://example.com/page" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain(UrlFingerprint.of("http://example.com/page" + i)))
+                .isTrue();
+        }
+    }
+
+    @Test
+    public void shouldRespectFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        assertThat(filter.getNumHashes()).isEqualTo(7);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(UrlFingerprint.of("http://example.com/page" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(UrlFingerprint.of("http://example.com/other" + i))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(2000);
+    }
+
+    @Test
+    public void shouldDelegateOnlyForPossibleMatches() {
+        InMemoryFrontier delegate = new InMemoryFrontier() {
+
+            @Override
+            public boolean isSeenBefore(String url) {
+                assertThat(url).isEqualTo("http://example.com/a");
+                return super.isSeenBefore(url);
+            }
+        };
+        BloomFilterFrontier frontier = new BloomFilterFrontier(delegate, 1000, 0.001);
+        frontier.schedule(new WebTargetBuilder("http://example.com/a").build());
+
+        assertThat(frontier.isSeenBefore("http://example.com/a")).isTrue();
+        assertThat(frontier.isSeenBefore("http://example.com/b")).isFalse();
+        assertThat(frontier.getNumberOfScheduledPages()).isEqualTo(1);
+        assertThat(frontier.getNextTargets(10)).hasSize(1);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class DiskFrontierTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReturnTargetsInScheduledOrder() throws IOException {
+        DiskFrontier frontier = new DiskFrontier(tempFolder.newFolder().toPath());
+        frontier.schedule(target("http://example.com/a", 0));
+        frontier.schedule(target("http://example.com/b", 1));
+
+        List<WebTargetImpl> targets = frontier.getNextTargets(10);
+        assertThat(targets).extracting(WebTargetImpl::getUrl)
+            .containsExactly("http://example.com/a", "http://example.com/b");
+        assertThat(targets.get(1).getDepth()).isEqualTo(1);
+        assertThat(targets.get(1).getReferringUrl()).isEqualTo("http://example.com/");
+        assertThat(targets.get(1).getDomain()).isEqualTo("example.com");
+        assertThat(targets.get(1).getPath()).isEqualTo("/b");
+        assertThat(frontier.getNextTargets(10)).isEmpty();
+        frontier.close();
+    }
+
+    @Test
+    public void shouldScheduleEachTargetOnce() throws IOException {
+        DiskFrontier frontier = new DiskFrontier(tempFolder.newFolder().toPath());
+        frontier.schedule(target("http://example.com/a", 0));
+        frontier.schedule(target("http://example.com/a", 1));
+
+        assertThat(frontier.isSeenBefore("http://example.com/a")).isTrue();
+        assertThat(frontier.isSeenBefore("http://example.com/b")).isFalse();
+        assertThat(frontier.getNumberOfScheduledPages()).isEqualTo(1);
+        assertThat(frontier.getNextTargets(10)).hasSize(1);
+        frontier.close();
+    }
+
+    @Test
+    public void shouldRollSegmentsAndGrowSeenSet() throws IOException {
+        Path directory = tempFolder.newFolder().toPath();
+        DiskFrontier frontier = new DiskFrontier(directory, 1024, 16);
+        for (int i = 0; i < 500; i++) {
+            frontier.schedule(target("http://example.com/page" + i, 1));
+        }
+        List<WebTargetImpl> targets = new ArrayList<>(frontier.getNextTargets(250));
+        for (int i = 500; i < 1000; i++) {
+            frontier.schedule(target("http://example.com/page" + i, 1));
+        }
+        assertThat(frontier.getNumberOfScheduledPages()).isEqualTo(1000);
+
+        List<WebTargetImpl> next;
+        while (!(next = frontier.getNextTargets(7)).isEmpty()) {
+            targets.addAll(next);
+        }
+        assertThat(targets).hasSize(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(targets.get(i).getUrl()).isEqualTo("http://example.com/page" + i);
+        }
+
+        frontier.close();
+        assertThat(Files.exists(directory)).isFalse();
+    }
+
+    @Test
+    public void shouldCountProcessedPages() throws IOException {
+        DiskFrontier frontier = new DiskFrontier(tempFolder.newFolder().toPath());
+        WebTargetImpl target = target("http://example.com/a", 0);
+        frontier.schedule(target);
+        frontier.getNextTargets(1);
+        frontier.setProcessing(target);
+        assertThat(frontier.isFinished()).isFalse();
+        frontier.setProcessed(target);
+        assertThat(frontier.isFinished()).isTrue();
+        assertThat(frontier.getNumberOfProcessedPages()).isEqualTo(1);
+        frontier.close();
+    }
+
+    @Test
+    public void shouldRestoreCheckpoint() throws IOException {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(tempFolder.newFolder().toPath());
+        DiskFrontier frontier = new DiskFrontier(tempFolder.newFolder().toPath(), 1024, 16);
+        for (int i = 0; i < 100; i++) {
+            frontier.schedule(target("http://example.com/page" + i, 1));
+        }
+        List<WebTargetImpl> inFlight = frontier.getNextTargets(30);
+        checkpoint.begin();
+        frontier.writeCheckpoint(checkpoint, inFlight.subList(20, 30));
+        checkpoint.commit();
+
+        // second checkpoint only appends new fingerprints
+        for (int i = 100; i < 150; i++) {
+            frontier.schedule(target("http://example.com/page" + i, 1));
+        }
+        checkpoint.begin();
+        frontier.writeCheckpoint(checkpoint, inFlight.subList(20, 30));
+        checkpoint.commit();
+        frontier.close();
+        assertThat(checkpoint.getNumberOfSeenPages()).isEqualTo(150);
+        assertThat(checkpoint.getNumberOfPendingPages()).isEqualTo(130);
+
+        CrawlCheckpoint loaded = new CrawlCheckpoint(checkpoint.getDirectory());
+        assertThat(loaded.load()).isTrue();
+        DiskFrontier restored = new DiskFrontier(tempFolder.newFolder().toPath(), 1024, 16);
+        restored.restoreCheckpoint(loaded);
+        assertThat(restored.getNumberOfScheduledPages()).isEqualTo(150);
+        assertThat(restored.getNumberOfProcessedPages()).isEqualTo(20);
+        assertThat(restored.isSeenBefore("http://example.com/page0")).isTrue();
+
+        List<WebTargetImpl> pending = restored.getNextTargets(1000);
+        assertThat(pending).hasSize(130);
+        assertThat(pending.get(0).getUrl()).isEqualTo("http://example.com/page20");
+        assertThat(pending.get(129).getUrl()).isEqualTo("http://example.com/page149");
+        restored.close();
+    }
+
+    @Test
+    public void shouldKeepSeenFingerprintsOfAbortedCheckpoint() throws IOException {
+        CrawlCheckpoint checkpoint = new CrawlCheckpoint(tempFolder.newFolder().toPath());
+        DiskFrontier frontier = new DiskFrontier(tempFolder.newFolder().toPath(), 1024, 16);
+        crawl(frontier, 0, 100);
+
+        // a failing first checkpoint is written again in full
+        checkpoint.begin();
+        frontier.writeCheckpoint(checkpoint, new ArrayList<>());
+        checkpoint.abort();
+        checkpoint.begin();
+        frontier.writeCheckpoint(checkpoint, new ArrayList<>());
+        checkpoint.commit();
+        assertThat(checkpoint.getNumberOfSeenPages()).isEqualTo(100);
+
+        // a failing incremental checkpoint does not lose the fingerprints added before
+        crawl(frontier, 100, 150);
+        checkpoint.begin();
+        frontier.writeCheckpoint(checkpoint, new ArrayList<>());
+        checkpoint.abort();
+        crawl(frontier, 150, 160);
+        checkpoint.begin();
+        frontier.writeCheckpoint(checkpoint, new ArrayList<>());
+        checkpoint.commit();
+        frontier.close();
+        assertThat(checkpoint.getNumberOfSeenPages()).isEqualTo(160);
+
+        CrawlCheckpoint loaded = new CrawlCheckpoint(checkpoint.getDirectory());
+        assertThat(loaded.load()).isTrue();
+        DiskFrontier restored = new DiskFrontier(tempFolder.newFolder().toPath(), 1024, 16);
+        restored.restoreCheckpoint(loaded);
+        assertThat(restored.getNumberOfProcessedPages()).isEqualTo(160);
+        assertThat(restored.isSeenBefore("http://example.com/page120")).isTrue();
+        assertThat(restored.isSeenBefore("http://example.com/page155")).isTrue();
+        restored.schedule(target("http://example.com/page120", 1));
+        assertThat(restored.getNextTargets(10)).isEmpty();
+        restored.close();
+    }
+
+    private static void crawl(DiskFrontier frontier, int from, int to) {
+        for (int i = from; i < to; i++) {
+            frontier.schedule(target("http://example.com/page" + i, 1));
+        }
+        for (WebTargetImpl target : frontier.getNextTargets(to - from)) {
+            frontier.setProcessing(target);
+            frontier.setProcessed(target);
+        }
+    }
+
+    private static WebTargetImpl target(String url, int depth) {
+        WebTargetImpl target = new WebTargetBuilder(url).build();
+        target.setDepth(depth);
+        if (depth > 0) {
+            target.setReferringUrl("http://example.com/");
+        }
+        return target;
+    }
+}
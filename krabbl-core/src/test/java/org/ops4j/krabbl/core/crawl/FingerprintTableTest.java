@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class FingerprintTableTest {
+
+    @Test
+    public void shouldStoreStatus() {
+        FingerprintTable table = new FingerprintTable(4);
+        long fingerprint = UrlFingerprint.of("http://example.com/");
+        assertThat(table.get(fingerprint)).isNull();
+
+        assertThat(table.putIfAbsent(fingerprint, PageStatus.SCHEDULED)).isTrue();
+        assertThat(table.putIfAbsent(fingerprint, PageStatus.PROCESSING)).isFalse();
+        assertThat(table.get(fingerprint)).isEqualTo(PageStatus.SCHEDULED);
+
+        table.put(fingerprint, PageStatus.PROCESSED);
+        assertThat(table.get(fingerprint)).isEqualTo(PageStatus.PROCESSED);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldGrow() {
+        FingerprintTable table = new FingerprintTable(4);
+        int numUrls = 100_000;
+        for (int i = 0; i < numUrls; i++) {
+            table.put(UrlFingerprint.of("http://example.com/page" + i), PageStatus.values()[i % 3]);
+        }
+        assertThat(table.size()).isEqualTo(numUrls);
+        for (int i = 0; i < numUrls; i++) {
+            assertThat(table.get(UrlFingerprint.of("http://example.com/page" + i)))
+                .isEqualTo(PageStatus.values()[i % 3]);
+        }
+        assertThat(table.get(UrlFingerprint.of("http://example.com/page" + numUrls))).isNull();
+    }
+
+    @Test
+    public void shouldKeepAddedFingerprintsUntilCommit() {
+        FingerprintTable table = new FingerprintTable(4);
+        long a = UrlFingerprint.of("http://example.com/a");
+        long b = UrlFingerprint.of("http://example.com/b");
+        table.put(a, PageStatus.PROCESSED);
+
+        List<Long> written = new ArrayList<>();
+        table.writeAdded(written::add);
+        assertThat(written).containsExactly(a);
+        // aborted
+        written.clear();
+        table.writeAdded(written::add);
+        assertThat(written).containsExactly(a);
+        table.commitAdded();
+
+        table.put(b, PageStatus.SCHEDULED);
+        written.clear();
+        table.writeAdded(written::add);
+        assertThat(written).containsExactly(b);
+        // aborted
+        written.clear();
+        table.writeAdded(written::add);
+        assertThat(written).containsExactly(b);
+        table.commitAdded();
+
+        written.clear();
+        table.writeAdded(written::add);
+        assertThat(written).isEmpty();
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.krabbl.api.Crawler;
+import org.ops4j.krabbl.api.CrawlerConfiguration;
+import org.ops4j.krabbl.api.HttpClientConfiguration;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.api.PageVisitor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Crawls a small site served by a local HTTP server.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class LocalCrawlerTest {
+
+    private static final int NUM_PAGES = 30;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private DefaultCrawlerBuilder crawlerBuilder;
+
+    private HttpClientConfiguration clientConfig;
+
+    private String baseUrl;
+
+    private Set<String> visited = ConcurrentHashMap.newKeySet();
+
+    private AtomicInteger numVisits = new AtomicInteger();
+
+    private AtomicInteger numRequests = new AtomicInteger();
+
+    private AtomicInteger numPageRequests = new AtomicInteger();
+
+    private AtomicBoolean shutdownRequested = new AtomicBoolean();
+
+    private AtomicInteger numConcurrentRequests = new AtomicInteger();
+
+    private AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    private volatile long requestDelayMillis;
+
+    private PageVisitor visitor = new PageVisitor() {
+
+        @Override
+        public void visit(Page page) {
+            visited.add(page.getWebTarget().getUrl());
+            numVisits.incrementAndGet();
+        }
+    };
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        clientConfig = new HttpClientConfiguration();
+        clientConfig.setPolitenessDelay(0);
+        crawlerBuilder = new DefaultCrawlerBuilder();
+        crawlerBuilder.setHttpClientConfiguration(clientConfig);
+    }
+
+    @After
+    public void after() {
+        crawlerBuilder.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldVisitEachPageOnce() {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setMaxConcurrentFetches(3);
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+    }
+
+    @Test
+    public void shouldBoundConcurrentFetches() {
+        requestDelayMillis = 20;
+        clientConfig.setAsyncClient(true);
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setMaxConcurrentFetches(3);
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(maxConcurrentRequests.get()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    public void shouldCrawlWithAsyncClient() {
+        clientConfig.setAsyncClient(true);
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+    }
+
+    @Test
+    public void shouldCrawlWithThreadPerFetch() {
+        crawlerBuilder.setVirtualThreads(true);
+        crawlerBuilder.setMaxFetchThreads(4);
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+    }
+
+    @Test
+    public void shouldCrawlWithDiskFrontier() throws IOException {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setCrawlStorageFolder(tempFolder.newFolder().getPath());
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+    }
+
+    @Test
+    public void shouldCrawlWithContentArchive() throws IOException {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setArchiveFolder(tempFolder.newFolder().getPath());
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+        assertThat(new File(config.getArchiveFolder()).list()).isNotEmpty();
+    }
+
+    @Test
+    public void shouldWriteWarcFiles() throws IOException {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setWarcFolder(tempFolder.newFolder().getPath());
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(new File(config.getWarcFolder()).list()).isNotEmpty();
+    }
+
+    @Test
+    public void shouldSendConditionalRequests() throws IOException {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setValidatorStoreFile(new File(tempFolder.newFolder(), "validators.bin").getPath());
+        crawl(config);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+        assertThat(numPageRequests.get()).isEqualTo(NUM_PAGES);
+
+        AtomicInteger numNotModified = new AtomicInteger();
+        Crawler crawler = crawlerBuilder.newCrawler(config, new PageVisitor() {
+
+            @Override
+            public void visit(Page page) {
+                visitor.visit(page);
+            }
+
+            @Override
+            public void onNotModified(Page page) {
+                assertThat(page.getStatusCode()).isEqualTo(304);
+                numNotModified.incrementAndGet();
+            }
+        });
+        crawler.addSeed(pageUrl(0));
+        crawler.start();
+        crawler.awaitTermination();
+
+        // no page has been modified, and the links saved with the validators are followed
+        assertThat(numNotModified.get()).isEqualTo(NUM_PAGES);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+        assertThat(numPageRequests.get()).isEqualTo(2 * NUM_PAGES);
+    }
+
+    @Test(timeout = 30_000)
+    public void shouldRevisitPagesContinuously() {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setContinuous(true);
+        config.setInitialRevisitInterval(0);
+        config.setMinRevisitInterval(0);
+        config.setMaxRevisitInterval(0);
+
+        Crawler crawler = crawlerBuilder.newCrawler(config, visitor);
+        crawler.addSeed(pageUrl(0));
+        crawler.start();
+        while (numVisits.get() < 2 * NUM_PAGES) {
+            assertThat(crawler.isTerminated()).isFalse();
+            Thread.yield();
+        }
+        crawler.shutdown();
+        crawler.awaitTermination();
+
+        assertThat(visited).hasSize(NUM_PAGES);
+    }
+
+    @Test
+    public void shouldCrawlWithPriorityFrontier() {
+        crawlerBuilder.setTargetScorer(new DefaultTargetScorer());
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        crawl(config);
+
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(numVisits.get()).isEqualTo(NUM_PAGES);
+    }
+
+    @Test(timeout = 30_000)
+    public void shouldResumeFromCheckpoint() throws IOException {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setMaxConcurrentFetches(2);
+        config.setCheckpointFolder(tempFolder.newFolder().getPath());
+
+        Crawler crawler = crawlerBuilder.newCrawler(config, new PageVisitor() {
+
+            @Override
+            public void visit(Page page) {
+                visitor.visit(page);
+                if (numVisits.get() == 10) {
+                    shutdownRequested.set(true);
+                }
+            }
+        });
+        crawler.addSeed(pageUrl(0));
+        crawler.start();
+        while (!crawler.isTerminated()) {
+            if (shutdownRequested.get()) {
+                crawler.shutdown();
+            }
+            Thread.yield();
+        }
+        int firstVisits = numVisits.get();
+        assertThat(visited).hasSize(firstVisits);
+        assertThat(firstVisits).isLessThan(NUM_PAGES);
+
+        Crawler resumed = crawlerBuilder.newCrawler(config, visitor);
+        resumed.addSeed(pageUrl(0));
+        resumed.resume();
+        resumed.awaitTermination();
+
+        // pages in flight at shutdown may be visited twice
+        assertThat(visited).hasSize(NUM_PAGES);
+        assertThat(numVisits.get()).isLessThanOrEqualTo(NUM_PAGES + 2);
+    }
+
+    @Test
+    public void shouldRespectMaxPagesToFetch() {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setMaxPagesToFetch(10);
+        crawl(config);
+
+        assertThat(numVisits.get()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldRespectMaxDepth() {
+        CrawlerConfiguration config = new CrawlerConfiguration();
+        config.setMaxDepthOfCrawling(1);
+        crawl(config);
+
+        // page 0 links to pages 1 and 2
+        assertThat(visited).containsOnly(pageUrl(0), pageUrl(1), pageUrl(2));
+    }
+
+    private void crawl(CrawlerConfiguration config) {
+        Crawler crawler = crawlerBuilder.newCrawler(config, visitor);
+        crawler.addSeed(pageUrl(0));
+        crawler.start();
+        crawler.awaitTermination();
+        assertThat(crawler.isTerminated()).isTrue();
+    }
+
+    private String pageUrl(int index) {
+        return baseUrl + "/page" + index + ".html";
+    }
+
+    /**
+     * Serves a binary tree of pages. Page {@code n} links to pages {@code 2n+1} and {@code 2n+2}
+     * and back to page 0.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        int concurrent = numConcurrentRequests.incrementAndGet();
+        maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+        try {
+            if (requestDelayMillis > 0) {
+                Thread.sleep(requestDelayMillis);
+            }
+            handleRequest(exchange);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            numConcurrentRequests.decrementAndGet();
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        numRequests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        if (!path.startsWith("/page")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        numPageRequests.incrementAndGet();
+        int index = Integer.parseInt(path.substring(5, path.indexOf('.')));
+        String etag = "\"page" + index + "\"";
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        StringBuilder html = new StringBuilder("<html><head><title>Page ");
+        html.append(index).append("</title></head><body>");
+        html.append("<a href=\"page0.html\">home</a>");
+        for (int child = 2 * index + 1; child <= 2 * index + 2; child++) {
+            if (child < NUM_PAGES) {
+                html.append("<a href=\"/page").append(child).append(".html\">").append(child)
+                    .append("</a>");
+            }
+        }
+        html.append("</body></html>");
+        byte[] bytes = html.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
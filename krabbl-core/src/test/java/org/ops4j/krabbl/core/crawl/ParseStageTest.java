@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class ParseStageTest {
+
+    private ParseStage parseStage;
+
+    @After
+    public void after() {
+        parseStage.shutdown();
+    }
+
+    @Test
+    public void shouldLimitParallelism() {
+        parseStage = new ParseStage(2, 100);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(parseStage.submit(() -> track(running, maxRunning)));
+        }
+        futures.forEach(CompletableFuture::join);
+        assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldQueueTasksWhenFull() {
+        parseStage = new ParseStage(1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        parseStage.submit(() -> await(release));
+        parseStage.submit(() -> await(release));
+        assertThat(parseStage.hasCapacity()).isFalse();
+
+        // does not block the submitting thread
+        CompletableFuture<Boolean> queued = parseStage.submit(() -> true);
+        assertThat(queued.isDone()).isFalse();
+
+        release.countDown();
+        assertThat(queued.join()).isTrue();
+    }
+
+    @Test
+    public void shouldCompleteQueuedTasksOnShutdown() {
+        parseStage = new ParseStage(1, 1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(parseStage.submit(() -> track(running, maxRunning)));
+        }
+        parseStage.shutdown();
+        assertThat(futures).allMatch(CompletableFuture::isDone);
+        assertThat(maxRunning.get()).isEqualTo(1);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static int track(AtomicInteger running, AtomicInteger maxRunning) {
+        int current = running.incrementAndGet();
+        maxRunning.accumulateAndGet(current, Math::max);
+        try {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        return current;
+    }
+}
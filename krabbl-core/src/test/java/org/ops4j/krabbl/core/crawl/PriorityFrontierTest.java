@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class PriorityFrontierTest {
+
+    private PriorityFrontier frontier = new PriorityFrontier(new DefaultTargetScorer(), 3);
+
+    @Test
+    public void shouldPreferHigherScore() {
+        frontier.schedule(target("http://a.com/deep", 3, 0));
+        frontier.schedule(target("http://a.com/shallow", 1, 0));
+        frontier.schedule(target("http://a.com/hint", 3, 5));
+
+        assertThat(urls(frontier.getNextTargets(10))).containsExactly("http://a.com/hint",
+            "http://a.com/shallow", "http://a.com/deep");
+    }
+
+    @Test
+    public void shouldRotateHosts() {
+        frontier.schedule(target("http://a.com/1", 1, 0));
+        frontier.schedule(target("http://a.com/2", 1, 0));
+        frontier.schedule(target("http://b.com/1", 1, 0));
+        frontier.schedule(target("http://c.com/1", 1, 0));
+
+        assertThat(urls(frontier.getNextTargets(3))).containsExactly("http://a.com/1",
+            "http://b.com/1", "http://c.com/1");
+        assertThat(frontier.getNumberOfHosts()).isEqualTo(1);
+        assertThat(urls(frontier.getNextTargets(3))).containsExactly("http://a.com/2");
+        assertThat(frontier.getNumberOfHosts()).isEqualTo(0);
+
+        frontier.schedule(target("http://b.com/2", 1, 0));
+        assertThat(urls(frontier.getNextTargets(3))).containsExactly("http://b.com/2");
+    }
+
+    @Test
+    public void shouldDropLowestScoreWhenHostIsFull() {
+        frontier.schedule(target("http://a.com/1", 2, 0));
+        frontier.schedule(target("http://a.com/2", 3, 0));
+        frontier.schedule(target("http://a.com/3", 2, 0));
+        frontier.schedule(target("http://a.com/4", 1, 0));
+        frontier.schedule(target("http://a.com/5", 4, 0));
+
+        assertThat(frontier.getNumberOfDroppedPages()).isEqualTo(2);
+        assertThat(frontier.getNumberOfScheduledPages()).isEqualTo(3);
+        assertThat(urls(frontier.getNextTargets(10))).containsExactly("http://a.com/4",
+            "http://a.com/1", "http://a.com/3");
+    }
+
+    @Test
+    public void shouldPreferTargetsWithMoreInLinks() {
+        WebTargetImpl popular = target("http://a.com/popular", 2, 0);
+        frontier.schedule(target("http://a.com/other", 2, 0));
+        frontier.schedule(popular);
+        frontier.addInLink(popular);
+
+        assertThat(urls(frontier.getNextTargets(10))).containsExactly("http://a.com/popular",
+            "http://a.com/other");
+    }
+
+    @Test
+    public void shouldFinishWithDroppedPages() {
+        for (int i = 0; i < 5; i++) {
+            frontier.schedule(target("http://a.com/" + i, 1, 0));
+        }
+        for (WebTargetImpl target : frontier.getNextTargets(10)) {
+            frontier.setProcessing(target);
+            frontier.setProcessed(target);
+        }
+        assertThat(frontier.isFinished()).isTrue();
+    }
+
+    private static WebTargetImpl target(String url, int depth, float priority) {
+        WebTargetImpl target = new WebTargetBuilder(url).build();
+        target.setDepth(depth);
+        target.setPriority(priority);
+        return target;
+    }
+
+    private static String[] urls(List<WebTargetImpl> targets) {
+        return targets.stream().map(WebTargetImpl::getUrl).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class RecrawlFrontierTest {
+
+    private AtomicLong now = new AtomicLong(1_000_000);
+
+    private RecrawlFrontier frontier = new RecrawlFrontier(1000, 100, 4000, now::get);
+
+    private static WebTargetImpl target(String path) {
+        return new WebTargetBuilder("http://example.com/" + path).build();
+    }
+
+    private void visit(WebTargetImpl target, long contentHash) {
+        frontier.setProcessing(target);
+        frontier.setProcessed(target, contentHash);
+    }
+
+    private void pollDue(WebTargetImpl... targets) {
+        now.addAndGet(4000);
+        assertThat(frontier.getNextTargets(10)).containsOnly(targets);
+    }
+
+    @Test
+    public void shouldRevisitWhenDue() {
+        WebTargetImpl a = target("a");
+        WebTargetImpl b = target("b");
+        frontier.schedule(Arrays.asList(a, b, target("a")));
+        assertThat(frontier.getNumberOfScheduledPages()).isEqualTo(2);
+        assertThat(frontier.getNextTargets(10)).containsExactly(a, b);
+        visit(a, 1);
+        visit(b, 2);
+        assertThat(frontier.getNextTargets(10)).isEmpty();
+        assertThat(frontier.isFinished()).isFalse();
+
+        now.addAndGet(999);
+        assertThat(frontier.getNextTargets(10)).isEmpty();
+        now.addAndGet(1);
+        assertThat(frontier.getNextTargets(10)).containsExactly(a, b);
+    }
+
+    @Test
+    public void shouldPreferDueRevisitsOverNewTargets() {
+        WebTargetImpl a = target("a");
+        frontier.schedule(a);
+        frontier.getNextTargets(1);
+        visit(a, 1);
+        WebTargetImpl b = target("b");
+        frontier.schedule(b);
+        now.addAndGet(1000);
+
+        List<WebTargetImpl> targets = frontier.getNextTargets(1);
+        assertThat(targets).containsExactly(a);
+        assertThat(frontier.getNextTargets(1)).containsExactly(b);
+    }
+
+    @Test
+    public void shouldRevisitOriginalUrlAfterRedirect() {
+        WebTargetImpl a = target("a");
+        frontier.schedule(a);
+        assertThat(frontier.getNextTargets(10)).containsExactly(a);
+        frontier.setProcessing(a);
+        a.setUrl("http://example.com/redirected");
+        frontier.setProcessed(a, 1);
+        assertThat(frontier.isSeenBefore("http://example.com/redirected")).isFalse();
+        assertThat(frontier.getRevisitInterval("http://example.com/a")).isEqualTo(1000);
+
+        now.addAndGet(1000);
+        assertThat(frontier.getNextTargets(10)).containsExactly(a);
+        assertThat(a.getUrl()).isEqualTo("http://example.com/a");
+        visit(a, 2);
+        assertThat(frontier.getRevisitInterval("http://example.com/a")).isEqualTo(500);
+    }
+
+    @Test
+    public void shouldAdaptRevisitInterval() {
+        WebTargetImpl changing = target("changing");
+        WebTargetImpl stable = target("stable");
+        frontier.schedule(Arrays.asList(changing, stable));
+        frontier.getNextTargets(2);
+        visit(changing, 1);
+        visit(stable, 1);
+        assertThat(frontier.getRevisitInterval(changing.getUrl())).isEqualTo(1000);
+
+        for (int i = 2; i < 10; i++) {
+            pollDue(changing, stable);
+            visit(changing, i);
+            visit(stable, 1);
+        }
+        assertThat(frontier.getRevisitInterval(changing.getUrl())).isEqualTo(100);
+        assertThat(frontier.getRevisitInterval(stable.getUrl())).isEqualTo(4000);
+
+        // failed fetches back off
+        pollDue(changing, stable);
+        visit(changing, 0);
+        visit(stable, 1);
+        assertThat(frontier.getRevisitInterval(changing.getUrl())).isEqualTo(150);
+        assertThat(frontier.getRevisitInterval("http://example.com/unknown")).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.crawl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class ThreadPerFetchExecutorTest {
+
+    private ThreadPerFetchExecutor executor;
+
+    @After
+    public void after() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldLimitTasksPerHost() {
+        executor = new ThreadPerFetchExecutor(10, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit("example.com", () -> track(running, maxRunning)));
+        }
+        futures.forEach(CompletableFuture::join);
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(executor.getNumberOfActiveHosts()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldLimitTotalTasks() {
+        executor = new ThreadPerFetchExecutor(3, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            futures.add(executor.submit("host" + i, () -> track(running, maxRunning)));
+        }
+        futures.forEach(CompletableFuture::join);
+        assertThat(maxRunning.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotBlockPoolThreadsWithWaitingTasks() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        executor = new ThreadPerFetchExecutor(2, 1, pool);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Integer>> busyHost = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            busyHost.add(executor.submit("busy.com", () -> track(running, maxRunning)));
+        }
+        CompletableFuture<Integer> otherHost = executor.submit("other.com",
+            () -> track(running, maxRunning));
+
+        // the other host gets the second pool thread while busy.com tasks wait for their host
+        assertThat(otherHost.join()).isEqualTo(2);
+        assertThat(busyHost.get(busyHost.size() - 1).isDone()).isFalse();
+        busyHost.forEach(CompletableFuture::join);
+        assertThat(executor.getNumberOfActiveHosts()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFailTasksRejectedByExecutor() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        executor = new ThreadPerFetchExecutor(2, 1, pool);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> running = executor.submit("example.com", () -> {
+            started.countDown();
+            await(release);
+            return 1;
+        });
+        List<CompletableFuture<Integer>> waiting = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiting.add(executor.submit("example.com", () -> 2));
+        }
+        started.await();
+        pool.shutdown();
+        release.countDown();
+
+        assertThat(running.join()).isEqualTo(1);
+        for (CompletableFuture<Integer> future : waiting) {
+            assertRejected(future);
+        }
+        assertRejected(executor.submit("other.com", () -> 3));
+        assertThat(executor.getNumberOfActiveHosts()).isEqualTo(0);
+    }
+
+    private static void assertRejected(CompletableFuture<Integer> future) {
+        try {
+            future.join();
+            throw new AssertionError("task should have been rejected");
+        }
+        catch (CompletionException exc) {
+            assertThat(exc.getCause()).isInstanceOf(RejectedExecutionException.class);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int track(AtomicInteger running, AtomicInteger maxRunning) {
+        int current = running.incrementAndGet();
+        maxRunning.accumulateAndGet(current, Math::max);
+        try {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        return current;
+    }
+}
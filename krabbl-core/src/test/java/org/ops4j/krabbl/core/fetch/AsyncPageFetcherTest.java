@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.krabbl.api.HttpClientConfiguration;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.exc.PageBiggerThanMaxSizeException;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+import org.ops4j.krabbl.core.url.WebTargetImpl;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class AsyncPageFetcherTest {
+
+    private static final int MAX_SIZE = 1000;
+
+    private HttpServer server;
+
+    private AsyncPageFetcher fetcher;
+
+    private ExecutorService executor;
+
+    private String baseUrl;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/small",
+            exchange -> respond(exchange, 200, "<html>Hello</html>", false));
+        server.createContext("/large",
+            exchange -> respond(exchange, 200, repeat(MAX_SIZE + 1), false));
+        server.createContext("/chunked",
+            exchange -> respond(exchange, 200, repeat(1000 * MAX_SIZE), true));
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        HttpClientConfiguration config = new HttpClientConfiguration();
+        config.setMaxDownloadSize(MAX_SIZE);
+        fetcher = new AsyncPageFetcher(config);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void after() throws IOException {
+        fetcher.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldFetchPage() {
+        WebTargetImpl target = new WebTargetBuilder(baseUrl + "/small").build();
+        PageFetchResult result = fetcher.fetchPageAsync(target, executor).join();
+        assertThat(result.getStatusCode()).isEqualTo(200);
+        assertThat(result.getFetchedUrl()).isEqualTo(target.getUrl());
+
+        Page page = new Page(target);
+        assertThat(result.fetchContent(page, MAX_SIZE)).isTrue();
+        assertThat(new String(page.getContentData(), StandardCharsets.UTF_8))
+            .isEqualTo("<html>Hello</html>");
+        assertThat(page.isTruncated()).isFalse();
+    }
+
+    @Test
+    public void shouldRejectLargePage() {
+        WebTargetImpl target = new WebTargetBuilder(baseUrl + "/large").build();
+        try {
+            fetcher.fetchPageAsync(target, executor).join();
+        }
+        catch (CompletionException exc) {
+            assertThat(exc.getCause()).isInstanceOf(PageBiggerThanMaxSizeException.class);
+            assertThat(((PageBiggerThanMaxSizeException) exc.getCause()).getPageSize())
+                .isEqualTo(MAX_SIZE + 1);
+            return;
+        }
+        throw new AssertionError("expected PageBiggerThanMaxSizeException");
+    }
+
+    @Test
+    public void shouldTruncateLargeChunkedPage() {
+        WebTargetImpl target = new WebTargetBuilder(baseUrl + "/chunked").build();
+        PageFetchResult result = fetcher.fetchPageAsync(target, executor).join();
+        assertThat(result.getStatusCode()).isEqualTo(200);
+
+        Page page = new Page(target);
+        assertThat(result.fetchContent(page, MAX_SIZE)).isTrue();
+        assertThat(page.getContentData()).hasSize(MAX_SIZE);
+        assertThat(page.isTruncated()).isTrue();
+    }
+
+    private static String repeat(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body, boolean chunked)
+        throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(status, chunked ? 0 : bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
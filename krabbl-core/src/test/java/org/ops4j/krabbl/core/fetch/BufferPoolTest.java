@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.http.entity.BasicHttpEntity;
+import org.junit.Test;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void shouldReuseBuffersBySizeClass() {
+        BufferPool pool = new BufferPool(1 << 20, 1 << 20, false);
+        ByteBuffer small = pool.acquire(100);
+        assertThat(small.capacity()).isEqualTo(BufferPool.MIN_CAPACITY);
+        ByteBuffer medium = pool.acquire(5000);
+        assertThat(medium.capacity()).isEqualTo(8192);
+
+        pool.release(small);
+        pool.release(medium);
+        assertThat(pool.getNumberOfFreeBuffers()).isEqualTo(2);
+        assertThat(pool.acquire(8192)).isSameAs(medium);
+        assertThat(pool.acquire(1)).isSameAs(small);
+        assertThat(pool.getNumberOfFreeBuffers()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldLimitFreeBuffers() {
+        BufferPool pool = new BufferPool(1 << 20, 3 * BufferPool.MIN_CAPACITY, true);
+        for (int i = 0; i < 5; i++) {
+            pool.release(ByteBuffer.allocateDirect(BufferPool.MIN_CAPACITY));
+        }
+        pool.release(ByteBuffer.allocate(BufferPool.MIN_CAPACITY));
+        pool.release(ByteBuffer.allocateDirect(1 << 21));
+        assertThat(pool.getNumberOfFreeBuffers()).isEqualTo(3);
+
+        ByteBuffer large = pool.acquire(3 << 20);
+        assertThat(large.isDirect()).isTrue();
+        assertThat(large.capacity()).isEqualTo(3 << 20);
+    }
+
+    @Test
+    public void shouldReadContentIntoPooledBuffer() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20, 1 << 20, false);
+        byte[] data = new byte[10_000];
+        Arrays.fill(data, (byte) 'x');
+
+        Page page = load(pool, data, -1, 0);
+        assertThat(page.isTruncated()).isFalse();
+        ByteBuffer content = page.getContent();
+        assertThat(content.isReadOnly()).isTrue();
+        assertThat(content.remaining()).isEqualTo(data.length);
+        assertThat(page.getContentData()).isEqualTo(data);
+        // buffers of 4 and 8 KiB were used while growing
+        assertThat(pool.getNumberOfFreeBuffers()).isEqualTo(2);
+
+        page.releaseContent();
+        assertThat(pool.getNumberOfFreeBuffers()).isEqualTo(3);
+        assertThat(page.getContentData()).isEqualTo(data);
+    }
+
+    @Test
+    public void shouldTruncateContent() throws Exception {
+        BufferPool pool = new BufferPool(1 << 20, 1 << 20, true);
+        byte[] data = new byte[10_000];
+
+        Page page = load(pool, data, data.length, 6000);
+        assertThat(page.isTruncated()).isTrue();
+        assertThat(page.getContent().remaining()).isEqualTo(6000);
+
+        page.retainContent();
+        assertThat(pool.getNumberOfFreeBuffers()).isEqualTo(1);
+        page.releaseContent();
+        assertThat(page.getContent().remaining()).isEqualTo(6000);
+        assertThat(pool.getNumberOfFreeBuffers()).isEqualTo(1);
+    }
+
+    private static Page load(BufferPool pool, byte[] data, long contentLength, int maxBytes)
+        throws Exception {
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(new ByteArrayInputStream(data));
+        entity.setContentLength(contentLength);
+        PageFetchResult fetchResult = new PageFetchResult();
+        fetchResult.setBufferPool(pool);
+        Page page = new Page(new WebTargetBuilder("http://example.com/").build());
+        fetchResult.load(page, entity, maxBytes);
+        return page;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.http.entity.BasicHttpEntity;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class ContentArchiveTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static Page store(ContentArchive archive, String content, long contentLength,
+        int maxBytes) throws IOException {
+        Page page = new Page(new WebTargetBuilder("http://example.com/").build());
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        archive.store(page, new ByteArrayInputStream(bytes), contentLength, maxBytes);
+        return page;
+    }
+
+    private static String contentOf(Page page) {
+        ByteBuffer content = page.getContent();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldStoreContentInRegions() throws IOException {
+        Path folder = tempFolder.newFolder().toPath();
+        try (ContentArchive archive = new ContentArchive(folder, 1 << 20)) {
+            Page first = store(archive, "first page", 10, 1000);
+            Page second = store(archive, "second page", -1, 1000);
+            Page third = store(archive, "third", 5, 1000);
+
+            assertThat(first.isContentArchived()).isTrue();
+            assertThat(first.getContentOffset()).isEqualTo(0);
+            assertThat(first.getContentLength()).isEqualTo(10);
+            // unused part of the reserved region is given back
+            assertThat(second.getContentOffset()).isEqualTo(10);
+            assertThat(third.getContentOffset()).isEqualTo(21);
+
+            assertThat(contentOf(first)).isEqualTo("first page");
+            assertThat(contentOf(second)).isEqualTo("second page");
+            assertThat(new String(third.getContentData(), StandardCharsets.UTF_8))
+                .isEqualTo("third");
+            assertThat(third.isTruncated()).isFalse();
+        }
+        assertThat(Files.size(folder.resolve("content-000000.seg"))).isEqualTo(26);
+    }
+
+    @Test
+    public void shouldTruncateContent() throws IOException {
+        try (ContentArchive archive = new ContentArchive(tempFolder.newFolder().toPath(),
+            1 << 20)) {
+            Page page = store(archive, "0123456789", -1, 4);
+            assertThat(page.isTruncated()).isTrue();
+            assertThat(contentOf(page)).isEqualTo("0123");
+        }
+    }
+
+    @Test
+    public void shouldStartNewSegment() throws IOException {
+        Path folder = tempFolder.newFolder().toPath();
+        Files.createFile(folder.resolve("content-000000.seg"));
+        try (ContentArchive archive = new ContentArchive(folder, 16)) {
+            Page first = store(archive, "0123456789", 10, 100);
+            Page second = store(archive, "abcdefghij", 10, 100);
+            assertThat(second.getContentOffset()).isEqualTo(0);
+            assertThat(archive.getSegments()).containsExactly(folder.resolve("content-000001.seg"),
+                folder.resolve("content-000002.seg"));
+            assertThat(contentOf(first)).isEqualTo("0123456789");
+            assertThat(contentOf(second)).isEqualTo("abcdefghij");
+        }
+    }
+
+    @Test
+    public void shouldMapContentAfterClose() throws IOException {
+        ContentArchive archive = new ContentArchive(tempFolder.newFolder().toPath(), 1 << 20);
+        Page page = store(archive, "archived", -1, 0);
+        archive.close();
+        page.releaseContent();
+        assertThat(contentOf(page)).isEqualTo("archived");
+    }
+
+    @Test
+    public void shouldArchiveFetchedContent() throws Exception {
+        try (ContentArchive archive = new ContentArchive(tempFolder.newFolder().toPath(),
+            1 << 20)) {
+            byte[] bytes = "<html>archived</html>".getBytes(StandardCharsets.UTF_8);
+            BasicHttpEntity entity = new BasicHttpEntity();
+            entity.setContent(new ByteArrayInputStream(bytes));
+            entity.setContentLength(bytes.length);
+            entity.setContentType("text/html; charset=UTF-8");
+            PageFetchResult fetchResult = new PageFetchResult();
+            fetchResult.setContentArchive(archive);
+            Page page = new Page(new WebTargetBuilder("http://example.com/").build());
+            fetchResult.load(page, entity, 1000);
+
+            assertThat(page.isContentArchived()).isTrue();
+            assertThat(page.getContentLength()).isEqualTo(bytes.length);
+            assertThat(page.getContentData()).isEqualTo(bytes);
+        }
+    }
+}
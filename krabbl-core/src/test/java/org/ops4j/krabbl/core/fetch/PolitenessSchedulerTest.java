@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class PolitenessSchedulerTest {
+
+    private ScheduledExecutorService executor;
+
+    private PolitenessScheduler scheduler;
+
+    @Before
+    public void before() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        scheduler = new PolitenessScheduler(executor, 1000);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDelaySameHost() {
+        assertThat(scheduler.reserve("example.com")).isEqualTo(0);
+        assertThat(scheduler.reserve("example.com")).isBetween(900L, 1000L);
+        assertThat(scheduler.reserve("example.com")).isBetween(1900L, 2000L);
+    }
+
+    @Test
+    public void shouldNotDelayOtherHosts() {
+        assertThat(scheduler.reserve("example.com")).isEqualTo(0);
+        assertThat(scheduler.reserve("example.org")).isEqualTo(0);
+        assertThat(scheduler.reserve("www.example.com")).isEqualTo(0);
+        assertThat(scheduler.getNumberOfHosts()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldReleaseWhenDue() {
+        CompletableFuture<Void> first = scheduler.whenDue("example.com");
+        CompletableFuture<Void> second = scheduler.whenDue("example.com");
+        assertThat(first).isDone();
+        assertThat(second).isNotDone();
+        second.join();
+        assertThat(second).isDone();
+    }
+
+    @Test
+    public void shouldExtractHost() {
+        assertThat(PolitenessScheduler.getHost("http://example.com/foo")).isEqualTo("example.com");
+        assertThat(PolitenessScheduler.getHost("https://example.com:8080?q=1"))
+            .isEqualTo("example.com:8080");
+        assertThat(PolitenessScheduler.getHost("http://example.com")).isEqualTo("example.com");
+    }
+}
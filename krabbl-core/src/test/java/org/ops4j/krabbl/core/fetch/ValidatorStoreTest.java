@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.fetch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.krabbl.core.url.UrlFingerprint;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class ValidatorStoreTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static long fingerprint(int i) {
+        return UrlFingerprint.of("http://example.com/" + i);
+    }
+
+    @Test
+    public void shouldPutAndGetValidators() {
+        ValidatorStore store = new ValidatorStore(4);
+        for (int i = 0; i < 1000; i++) {
+            String etag = (i % 2 == 0) ? "\"" + i + "\"" : null;
+            store.put(fingerprint(i), new Validator(etag, i * 1000L, i + 1));
+        }
+        store.put(fingerprint(7), new Validator("\"new\"", 7000, 8));
+        assertThat(store.size()).isEqualTo(1000);
+
+        Validator validator = store.get(fingerprint(42));
+        assertThat(validator.getEtag()).isEqualTo("\"42\"");
+        assertThat(validator.getLastModified()).isEqualTo(42000);
+        assertThat(validator.getContentHash()).isEqualTo(43);
+        assertThat(store.get(fingerprint(7)).getEtag()).isEqualTo("\"new\"");
+        assertThat(store.get(fingerprint(1000))).isNull();
+    }
+
+    @Test
+    public void shouldSaveAndLoad() throws IOException {
+        Path file = tempFolder.getRoot().toPath().resolve("validators.bin");
+        ValidatorStore store = ValidatorStore.open(file);
+        assertThat(store.size()).isEqualTo(0);
+
+        store.put(fingerprint(1), new Validator("W/\"abc\"", 0, 17),
+            Arrays.asList("http://example.com/a", "http://example.com/b"));
+        store.put(fingerprint(2), new Validator(null, 1_500_000_000_000L, 18));
+        store.save();
+        store.update(fingerprint(1), new Validator("W/\"def\"", 0, 17));
+        store.close();
+
+        ValidatorStore loaded = ValidatorStore.open(file);
+        assertThat(loaded.size()).isEqualTo(2);
+        assertThat(loaded.get(fingerprint(1)).getEtag()).isEqualTo("W/\"def\"");
+        assertThat(loaded.get(fingerprint(1)).isConditional()).isTrue();
+        assertThat(loaded.getLinks(fingerprint(1))).containsExactly("http://example.com/a",
+            "http://example.com/b");
+        assertThat(loaded.getLinks(fingerprint(2))).isEmpty();
+        assertThat(loaded.get(fingerprint(2)).getEtag()).isNull();
+        assertThat(loaded.get(fingerprint(2)).getLastModified()).isEqualTo(1_500_000_000_000L);
+        assertThat(loaded.get(fingerprint(2)).getContentHash()).isEqualTo(18);
+        loaded.close();
+    }
+
+    @Test
+    public void shouldAppendChangesAndCompact() throws IOException {
+        Path file = tempFolder.getRoot().toPath().resolve("validators.bin");
+        ValidatorStore store = ValidatorStore.open(file);
+        int numPages = ValidatorStore.MIN_RECORDS_FOR_COMPACTION / 2;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < numPages; i++) {
+                store.put(fingerprint(i), new Validator("\"" + round + "\"", 0, round),
+                    Arrays.asList("http://example.com/" + i + "/" + round));
+            }
+            long length = Files.size(file);
+            store.save();
+            // only the changed entries are appended
+            assertThat(Files.size(file) - length).isLessThan(numPages * 64L);
+        }
+        store.close();
+        assertThat(Files.exists(file.resolveSibling("validators.bin.links-1"))).isTrue();
+
+        ValidatorStore compacted = ValidatorStore.open(file);
+        assertThat(Files.exists(file.resolveSibling("validators.bin.links-1"))).isFalse();
+        assertThat(Files.exists(file.resolveSibling("validators.bin.links-2"))).isTrue();
+        assertThat(compacted.size()).isEqualTo(numPages);
+        assertThat(compacted.get(fingerprint(7)).getEtag()).isEqualTo("\"2\"");
+        assertThat(compacted.getLinks(fingerprint(7))).containsExactly("http://example.com/7/2");
+        compacted.close();
+    }
+
+    @Test
+    public void shouldConvertStoreWithoutLinks() throws IOException {
+        Path file = tempFolder.getRoot().toPath().resolve("validators.bin");
+        try (DataOutputStream os = new DataOutputStream(Files.newOutputStream(file))) {
+            os.writeInt(0x4b52564c);
+            os.writeInt(1);
+            os.writeInt(1);
+            os.writeLong(fingerprint(1));
+            os.writeBoolean(true);
+            os.writeUTF("\"abc\"");
+            os.writeLong(1000);
+            os.writeLong(17);
+        }
+        ValidatorStore store = ValidatorStore.open(file);
+        assertThat(store.get(fingerprint(1)).getEtag()).isEqualTo("\"abc\"");
+        assertThat(store.get(fingerprint(1)).getContentHash()).isEqualTo(17);
+        assertThat(store.getLinks(fingerprint(1))).isEmpty();
+        store.close();
+
+        ValidatorStore reopened = ValidatorStore.open(file);
+        assertThat(reopened.get(fingerprint(1)).getLastModified()).isEqualTo(1000);
+        reopened.close();
+    }
+
+    @Test
+    public void shouldParseValidatorsFromHeaders() {
+        Header[] headers = { new BasicHeader("etag", "\"xyz\""),
+            new BasicHeader("Last-Modified", "Fri, 14 Jul 2017 02:40:00 GMT") };
+        Validator validator = Validator.fromHeaders(headers, 5);
+        assertThat(validator.getEtag()).isEqualTo("\"xyz\"");
+        assertThat(validator.getLastModified()).isEqualTo(1_500_000_000_000L);
+        assertThat(Validator.fromHeaders(null, 5).isConditional()).isFalse();
+    }
+
+    @Test
+    public void shouldHashContent() {
+        ByteBuffer content = ByteBuffer.wrap(
+            "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8));
+        long hash = ContentHash.of(content);
+        assertThat(content.position()).isEqualTo(0);
+        assertThat(ContentHash.of(content.duplicate())).isEqualTo(hash);
+        assertThat(ContentHash.of(ByteBuffer.wrap(
+            "The quick brown fox jumps over the lazy cog".getBytes(StandardCharsets.UTF_8))))
+                .isNotEqualTo(hash);
+        assertThat(ContentHash.of(ByteBuffer.allocate(0))).isNotEqualTo(0);
+    }
+}
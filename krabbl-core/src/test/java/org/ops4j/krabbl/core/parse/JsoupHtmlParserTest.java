@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class JsoupHtmlParserTest {
+
+    private static final String CONTEXT_URL = "http://example.com/";
+
+    @Test
+    public void shouldComputeParseDataLazily() {
+        String html = "<html><head><title>Lazy</title>"
+            + "<meta name=\"Description\" content=\"lazy parse data\">"
+            + "<meta http-equiv=\"refresh\" content=\"0; url=/next\"></head>"
+            + "<body><p>Some <b>text</b></p><a href=\"/link\">link</a></body></html>";
+        Page page = new Page(new WebTargetBuilder(CONTEXT_URL).build());
+        page.setContentData(html.getBytes(StandardCharsets.UTF_8));
+        page.setContentCharset("UTF-8");
+        new JsoupHtmlParser().parse(page, CONTEXT_URL);
+
+        HtmlParseData parseData = (HtmlParseData) page.getParseData();
+        assertThat(parseData.getOutgoingUrls()).hasSize(2);
+        assertThat(parseData.toString()).isNull();
+
+        assertThat(parseData.getTitle()).isEqualTo("Lazy");
+        assertThat(parseData.getMetaTagValue("description")).isEqualTo("lazy parse data");
+        assertThat(parseData.getMetaTags()).containsKeys("description", "refresh");
+        assertThat(parseData.getText()).startsWith("Lazy Some text");
+        assertThat(parseData.toString()).isEqualTo(parseData.getText());
+        assertThat(parseData.getHtml()).contains("<b>text</b>");
+    }
+
+    @Test
+    public void shouldStopAtMaxOutgoingLinks() {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 10; i++) {
+            html.append("<a href=\"/same\">same</a>");
+        }
+        for (int i = 0; i < 10; i++) {
+            html.append("<a href=\"/page").append(i).append("\">page</a>");
+        }
+        html.append("<img src=\"/image.png\"></body></html>");
+        Page page = new Page(new WebTargetBuilder(CONTEXT_URL).build());
+        page.setContentData(html.toString().getBytes(StandardCharsets.UTF_8));
+        page.setContentCharset("UTF-8");
+        new JsoupHtmlParser().parse(page, CONTEXT_URL, 3);
+
+        assertThat(page.getParseData().getOutgoingUrls()).extracting(WebTarget::getUrl)
+            .containsOnly("http://example.com/same", "http://example.com/page0",
+                "http://example.com/page1");
+    }
+}
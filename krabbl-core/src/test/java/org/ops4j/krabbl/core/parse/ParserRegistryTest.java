@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.spi.Parser;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class ParserRegistryTest {
+
+    private static class PdfParser implements Parser {
+
+        private final int priority;
+
+        PdfParser(int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public Collection<String> getMimeTypes() {
+            return Collections.singletonList("application/pdf");
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void parse(Page page, String contextUrl) {
+            page.setParseData(new TextParseData());
+        }
+    }
+
+    @Test
+    public void shouldFindBuiltInParsers() {
+        ParserRegistry registry = ParserRegistry.load();
+
+        assertThat(registry.getParser("text/html; charset=UTF-8"))
+            .isInstanceOf(StreamingHtmlParser.class);
+        assertThat(registry.getParser("application/xhtml+xml"))
+            .isInstanceOf(StreamingHtmlParser.class);
+        assertThat(registry.getParser(null)).isInstanceOf(StreamingHtmlParser.class);
+        assertThat(registry.getParser("text/plain")).isInstanceOf(TextParser.class);
+        assertThat(registry.getParser("TEXT/CSV")).isInstanceOf(TextParser.class);
+        assertThat(registry.getParser("application/xml")).isInstanceOf(XmlParser.class);
+        assertThat(registry.getParser("text/xml;charset=ISO-8859-1"))
+            .isInstanceOf(XmlParser.class);
+        assertThat(registry.getParser("image/png")).isInstanceOf(BinaryParser.class);
+        assertThat(registry.getParser("application/pdf")).isInstanceOf(BinaryParser.class);
+    }
+
+    @Test
+    public void shouldPreferHigherPriority() {
+        ParserRegistry registry = ParserRegistry.load();
+        registry.register(new PdfParser(Parser.DEFAULT_PRIORITY + 1));
+        assertThat(registry.getParser("application/pdf")).isInstanceOf(PdfParser.class);
+
+        PdfParser lowPriority = new PdfParser(1);
+        registry.register(lowPriority);
+        assertThat(registry.getParser("application/pdf")).isNotSameAs(lowPriority);
+    }
+
+    @Test
+    public void shouldUseParserWithoutMimeTypesAsFallback() {
+        Parser legacyParser = new Parser() {
+
+            @Override
+            public void parse(Page page, String contextUrl) {
+                page.setParseData(new TextParseData());
+            }
+        };
+        ParserRegistry registry = ParserRegistry.load();
+        registry.register(new PdfParser(Parser.DEFAULT_PRIORITY));
+        registry.register(legacyParser);
+
+        assertThat(registry.getParser("application/pdf")).isInstanceOf(PdfParser.class);
+        assertThat(registry.getParser("text/html")).isInstanceOf(StreamingHtmlParser.class);
+        assertThat(registry.getParser("image/png")).isSameAs(legacyParser);
+        assertThat(registry.getParser("application/zip")).isSameAs(legacyParser);
+    }
+}
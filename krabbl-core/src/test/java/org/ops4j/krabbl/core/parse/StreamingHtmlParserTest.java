@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.spi.Parser;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+
+/**
+ * Compares the results of {@link StreamingHtmlParser} with those of {@link JsoupHtmlParser}.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class StreamingHtmlParserTest {
+
+    private static final String CONTEXT_URL = "http://example.com/dir/index.html";
+
+    private static final String HTML = "<!DOCTYPE html>\n"
+        + "<html><head>\n"
+        + "<meta charset='utf-8'>\n"
+        + "<META NAME=\"Robots\" content=\"noindex, follow\">\n"
+        + "<meta http-equiv=\"refresh\" content=\"5; URL=/refreshed\">\n"
+        + "<title>  Café &amp;\n Bar  </title>\n"
+        + "<link rel=stylesheet href=\"style.css\">\n"
+        + "<script src=\"/js/app.js\"></script>\n"
+        + "<script>var s = '<a href=\"/not-a-link\">';</script>\n"
+        + "<style>a > b { background: url(<a href='/nope'>) }</style>\n"
+        + "</head><body>\n"
+        + "<!-- <a href=\"/commented\"> -->\n"
+        + "<A HREF=../up.html>up</A>\n"
+        + "<a href='query?a=1&amp;b=2'>query</a>\n"
+        + "<a title=\"x > y\" href=\"/after-gt\">gt</a>\n"
+        + "<a href=\"/first\" href=\"/second\">dup</a>\n"
+        + "<a href=\"/über\">umlaut</a>\n"
+        + "<a href>empty</a>\n"
+        + "<a name=\"anchor\">no link</a>\n"
+        + "<img src=\"images/logo.png\" alt=logo/>\n"
+        + "<iframe src=\"http://other.example.org/frame\"><a href=\"/inside-iframe\"></iframe>\n"
+        + "<map><area href=\"/area\" shape=rect></map>\n"
+        + "<textarea><a href=\"/in-textarea\"></textarea>\n"
+        + "<embed src=\"movie.swf\">\n"
+        + "<a href=\"mailto:someone@example.com\">mail</a>\n"
+        + "</body></html>";
+
+    @Test
+    public void shouldFindSameLinksAsJsoup() {
+        Page jsoupPage = parse(new JsoupHtmlParser(), HTML, "UTF-8");
+        Page streamingPage = parse(new StreamingHtmlParser(), HTML, "UTF-8");
+
+        assertThat(urls(streamingPage)).isEqualTo(urls(jsoupPage)).contains(
+            "http://example.com/up.html", "http://example.com/dir/query?a=1&b=2",
+            "http://example.com/after-gt", "http://example.com/second",
+            "http://example.com/refreshed", "http://example.com/js/app.js")
+            .doesNotContain("http://example.com/not-a-link", "http://example.com/nope",
+                "http://example.com/commented", "http://example.com/first",
+                "http://example.com/in-textarea");
+
+        HtmlParseData jsoupData = (HtmlParseData) jsoupPage.getParseData();
+        HtmlParseData streamingData = (HtmlParseData) streamingPage.getParseData();
+        assertThat(streamingData.getTitle()).isEqualTo(jsoupData.getTitle())
+            .isEqualTo("Café & Bar");
+        assertThat(streamingData.getMetaTags()).isEqualTo(jsoupData.getMetaTags());
+        assertThat(streamingData.getMetaTagValue("robots")).contains("noindex");
+    }
+
+    @Test
+    public void shouldDecodeDeclaredCharset() {
+        String html = "<html><head><meta charset=\"ISO-8859-1\"><title>ä</title></head>"
+            + "<body><a href=\"/ä\">a</a></body></html>";
+        Page jsoupPage = parse(new JsoupHtmlParser(), html, null);
+        Page streamingPage = parse(new StreamingHtmlParser(), html, null);
+
+        assertThat(urls(streamingPage)).isEqualTo(urls(jsoupPage)).hasSize(1);
+        assertThat(((HtmlParseData) streamingPage.getParseData()).getTitle()).isEqualTo("ä");
+    }
+
+    @Test
+    public void shouldParseUtf16() {
+        Page jsoupPage = parse(new JsoupHtmlParser(), HTML, "UTF-16LE");
+        Page streamingPage = parse(new StreamingHtmlParser(), HTML, "UTF-16LE");
+
+        assertThat(urls(streamingPage)).isEqualTo(urls(jsoupPage)).hasSize(13);
+    }
+
+    @Test
+    public void shouldParseDocumentLazily() {
+        Page page = parse(new StreamingHtmlParser(), HTML, "UTF-8");
+        HtmlParseData parseData = (HtmlParseData) page.getParseData();
+        assertThat(parseData.toString()).isNull();
+        assertThat(parseData.getText()).contains("up query gt");
+        assertThat(parseData.getHtml()).contains("href=\"/after-gt\"");
+    }
+
+    @Test
+    public void shouldStopAtMaxOutgoingLinks() {
+        Page page = new Page(new WebTargetBuilder(CONTEXT_URL).build());
+        page.setContentData(HTML.getBytes(StandardCharsets.UTF_8));
+        page.setContentCharset("UTF-8");
+        new StreamingHtmlParser().parse(page, CONTEXT_URL, 3);
+
+        assertThat(urls(page)).containsOnly("http://example.com/refreshed",
+            "http://example.com/dir/style.css", "http://example.com/js/app.js");
+        assertThat(page.getParseData().getOutgoingUrls()).hasSize(3);
+        assertThat(((HtmlParseData) page.getParseData()).getTitle()).isEqualTo("Café & Bar");
+    }
+
+    private static Page parse(Parser parser, String html, String charset) {
+        WebTarget target = new WebTargetBuilder(CONTEXT_URL).build();
+        Page page = new Page(target);
+        byte[] content = (charset == null) ? html.getBytes(StandardCharsets.ISO_8859_1)
+            : html.getBytes(Charset.forName(charset));
+        page.setContentData(content);
+        page.setContentCharset(charset);
+        parser.parse(page, CONTEXT_URL);
+        return page;
+    }
+
+    private static Set<String> urls(Page page) {
+        return page.getParseData().getOutgoingUrls().stream().map(WebTarget::getUrl)
+            .collect(Collectors.toSet());
+    }
+}
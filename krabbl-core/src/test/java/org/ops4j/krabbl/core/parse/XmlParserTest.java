@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.parse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.api.WebTarget;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class XmlParserTest {
+
+    private static final String CONTEXT_URL = "http://example.com/sitemap.xml";
+
+    private XmlParser parser = new XmlParser();
+
+    @Test
+    public void shouldParseSitemap() {
+        XmlParseData parseData = parse("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+            + "<url><loc>http://example.com/</loc><lastmod>2017-01-01</lastmod></url>\n"
+            + "<url><loc>\n  http://example.com/a?x=1&amp;y=2\n</loc></url>\n"
+            + "</urlset>");
+
+        assertThat(parseData.getRootElement()).isEqualTo("urlset");
+        assertThat(urls(parseData)).containsOnly("http://example.com/",
+            "http://example.com/a?x=1&y=2");
+    }
+
+    @Test
+    public void shouldParseFeeds() {
+        XmlParseData rss = parse("<rss version=\"2.0\"><channel><link>http://example.com/</link>"
+            + "<item><title>News</title><link>http://example.com/news/1</link></item>"
+            + "</channel></rss>");
+        assertThat(urls(rss)).containsOnly("http://example.com/", "http://example.com/news/1");
+
+        XmlParseData atom = parse("<feed xmlns=\"http://www.w3.org/2005/Atom\">"
+            + "<entry><link href=\"/news/2\"/></entry></feed>");
+        assertThat(urls(atom)).containsOnly("http://example.com/news/2");
+    }
+
+    @Test
+    public void shouldKeepLinksOfMalformedDocument() {
+        XmlParseData parseData = parse("<urlset><url><loc>http://example.com/ok</loc></url>"
+            + "<url><loc>broken</url>");
+        assertThat(urls(parseData)).containsOnly("http://example.com/ok");
+    }
+
+    @Test
+    public void shouldNotResolveExternalEntities() {
+        XmlParseData parseData = parse("<?xml version=\"1.0\"?>"
+            + "<!DOCTYPE urlset [<!ENTITY ext SYSTEM \"file:///etc/passwd\">]>"
+            + "<urlset><url><loc>http://example.com/&ext;</loc></url></urlset>");
+        assertThat(urls(parseData).stream().anyMatch(url -> url.contains("root"))).isFalse();
+    }
+
+    private XmlParseData parse(String xml) {
+        Page page = new Page(new WebTargetBuilder(CONTEXT_URL).build());
+        page.setContentData(xml.getBytes(StandardCharsets.UTF_8));
+        parser.parse(page, CONTEXT_URL);
+        return (XmlParseData) page.getParseData();
+    }
+
+    private static Set<String> urls(XmlParseData parseData) {
+        return parseData.getOutgoingUrls().stream().map(WebTarget::getUrl)
+            .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.robots;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.ops4j.krabbl.api.RobotsConfiguration;
+
+/**
+ * Compares {@link PathRuleTrie} with the regular expressions of {@link PathRule}.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class PathRuleTrieTest {
+
+    private static final String ROBOTS_TXT = "User-agent: *\n"
+        + "Disallow: /private/\n"
+        + "Allow: /private/public/\n"
+        + "Disallow: /*.pdf$\n"
+        + "Allow: /docs/*.pdf$\n"
+        + "Disallow: /search*q=\n"
+        + "Allow: /page\n"
+        + "Disallow: /pag*\n"
+        + "Disallow: /exact$\n"
+        + "\n"
+        + "User-agent: krabbl\n"
+        + "Disallow: /krabbl-only\n";
+
+    @Test
+    public void shouldApplyLongestMatch() {
+        RobotsConfiguration config = new RobotsConfiguration();
+        config.setUserAgentName("otherbot");
+        HostDirectives directives = RobotsTxtParser.parse(ROBOTS_TXT, config);
+
+        assertThat(directives.allows("/")).isTrue();
+        assertThat(directives.allows("/private/")).isFalse();
+        assertThat(directives.allows("/private/x.html")).isFalse();
+        assertThat(directives.allows("/private/public/x.html")).isTrue();
+        assertThat(directives.allows("/a/b.pdf")).isFalse();
+        assertThat(directives.allows("/a/b.pdf.html")).isTrue();
+        assertThat(directives.allows("/docs/b.pdf")).isTrue();
+        assertThat(directives.allows("/search?q=krabbl")).isFalse();
+        assertThat(directives.allows("/search?page=2")).isTrue();
+        assertThat(directives.allows("/exact")).isFalse();
+        assertThat(directives.allows("/exact/")).isTrue();
+        assertThat(directives.allows("/krabbl-only")).isTrue();
+
+        // same length, allow wins
+        assertThat(directives.allows("/page.html")).isTrue();
+        assertThat(directives.allows("/pag.html")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchLikeRegularExpressions() {
+        Random random = new Random(42);
+        String patternChars = "/ab.**$\\";
+        String pathChars = "/ab.*$\\";
+        for (int i = 0; i < 2_000; i++) {
+            List<PathRule> rules = new ArrayList<>();
+            int numRules = random.nextInt(6);
+            for (int j = 0; j < numRules; j++) {
+                int type = random.nextBoolean() ? HostDirectives.ALLOWED
+                    : HostDirectives.DISALLOWED;
+                rules.add(new PathRule(type, randomString(random, patternChars, 6)));
+            }
+            PathRuleTrie trie = PathRuleTrie.compile(rules);
+            for (int j = 0; j < 50; j++) {
+                String path = randomString(random, pathChars, 8);
+                assertThat(trie.checkAccess(path)).as("%s in %s", path, describe(rules))
+                    .isEqualTo(checkAccess(rules, path));
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchEmptyPatternOnlyAgainstEmptyPath() {
+        PathRuleTrie trie = PathRuleTrie.compile(
+            Arrays.asList(new PathRule(HostDirectives.DISALLOWED, "")));
+        assertThat(trie.checkAccess("")).isEqualTo(HostDirectives.DISALLOWED);
+        assertThat(trie.checkAccess("/")).isEqualTo(HostDirectives.UNDEFINED);
+    }
+
+    /**
+     * Checks access by trying all rules, like the trie is meant to do.
+     */
+    private static int checkAccess(List<PathRule> rules, String path) {
+        int verdict = HostDirectives.UNDEFINED;
+        int longest = -1;
+        for (PathRule rule : rules) {
+            if (rule.matches(path)) {
+                int length = rule.getSource().length();
+                if (length > longest
+                    || (length == longest && rule.getType() == HostDirectives.ALLOWED)) {
+                    verdict = rule.getType();
+                    longest = length;
+                }
+            }
+        }
+        return verdict;
+    }
+
+    private static String randomString(Random random, String chars, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder();
+        if (length > 0) {
+            sb.append('/');
+        }
+        for (int i = 1; i < length; i++) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String describe(List<PathRule> rules) {
+        StringBuilder sb = new StringBuilder();
+        for (PathRule rule : rules) {
+            sb.append((rule.getType() == HostDirectives.ALLOWED) ? " allow:" : " disallow:")
+                .append(rule.getSource());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.url;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class PublicSuffixTrieTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldMapCompiledImage() throws IOException {
+        File list = tempFolder.newFile("list.txt");
+        Files.write(list.toPath(), Arrays.asList("// comment", "", "jp", "ac.jp", "*.kobe.jp",
+            "!city.kobe.jp", "公司.cn", "uk", "co.uk  trailing text"), StandardCharsets.UTF_8);
+        File image = new File(tempFolder.getRoot(), "image/list.bin");
+        PublicSuffixCompiler.main(new String[] { list.getPath(), image.getPath() });
+
+        PublicSuffixTrie trie;
+        try (FileChannel channel = FileChannel.open(image.toPath(), StandardOpenOption.READ)) {
+            trie = PublicSuffixTrie.fromImage(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+        assertThat(trie.getNumberOfRules()).isEqualTo(7);
+        assertRegistrableDomain(trie, "www.example.ac.jp", "example.ac.jp");
+        assertRegistrableDomain(trie, "a.b.kobe.jp", "a.b.kobe.jp");
+        assertRegistrableDomain(trie, "a.b.c.kobe.jp", "b.c.kobe.jp");
+        assertRegistrableDomain(trie, "www.city.kobe.jp", "city.kobe.jp");
+        assertRegistrableDomain(trie, "www.example.xn--55qx5d.cn", "example.xn--55qx5d.cn");
+        assertRegistrableDomain(trie, "www.example.co.uk", "example.co.uk");
+        assertRegistrableDomain(trie, "co.uk", "co.uk");
+        assertRegistrableDomain(trie, "www.example.de", "example.de");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidImage() {
+        PublicSuffixTrie.fromImage(ByteBuffer.wrap("not an image at all".getBytes()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTruncatedImage() throws IOException {
+        PublicSuffixTrie trie = new PublicSuffixTrie.Builder().addLine("com").build();
+        File image = tempFolder.newFile();
+        try (FileChannel channel = FileChannel.open(image.toPath(), StandardOpenOption.WRITE)) {
+            trie.writeTo(channel);
+            channel.truncate(channel.size() - 8);
+        }
+        byte[] truncated = Files.readAllBytes(image.toPath());
+        PublicSuffixTrie.fromImage(ByteBuffer.wrap(truncated));
+    }
+
+    private static void assertRegistrableDomain(PublicSuffixTrie trie, String host,
+        String domain) {
+        int start = trie.findRegistrableDomain(host, 0, host.length());
+        assertThat(host.substring(start)).as(host).isEqualTo(domain);
+    }
+}
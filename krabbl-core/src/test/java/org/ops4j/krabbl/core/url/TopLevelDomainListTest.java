@@ -36,8 +36,21 @@ public class TopLevelDomainListTest {
             { "http://jenkins.ci.sabio.de", "sabio.de", "jenkins.ci"},
             { "http://www.sabio.de", "sabio.de", "www"},
             { "http://ops4j.github.io", "ops4j.github.io", ""},
-            { "http://test.kobe.jp", "kobe.jp", "test"},
-            { "http://test2.test.kobe.jp", "kobe.jp", "test2.test"},
+            { "http://test.kobe.jp", "test.kobe.jp", ""},
+            { "http://test2.test.kobe.jp", "test2.test.kobe.jp", ""},
+            { "http://test3.test2.test.kobe.jp", "test2.test.kobe.jp", "test3"},
+            { "http://city.kobe.jp", "city.kobe.jp", ""},
+            { "http://www.city.kobe.jp", "city.kobe.jp", "www"},
+            { "http://www.ck", "www.ck", ""},
+            { "http://test.www.ck", "www.ck", "test"},
+            { "http://test.example.ck", "test.example.ck", ""},
+            { "http://www.example.co.uk", "example.co.uk", "www"},
+            { "http://www.example.co.uk:8080", "example.co.uk:8080", "www"},
+            { "http://www.example.com.", "example.com.", "www"},
+            { "http://xn--55qx5d.cn", "xn--55qx5d.cn", ""},
+            { "http://www.example.xn--55qx5d.cn", "example.xn--55qx5d.cn", "www"},
+            { "http://localhost:8080", "localhost:8080", ""},
+            { "http://127.0.0.1", "0.1", "127.0"},
         };
     }
 
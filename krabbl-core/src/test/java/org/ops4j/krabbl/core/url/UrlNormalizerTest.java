@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.url;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link UrlNormalizer} with its previous implementation {@link LegacyUrlNormalizer}.
+ *
+ * @author Harald Wellmann
+ *
+ */
+public class UrlNormalizerTest {
+
+    private static final String[] SCHEMES = { "http://", "https://", "HTTP://", "hTtPs://",
+        "ftp://", "mailto:", "http:/", "" };
+
+    private static final String[] HOSTS = { "www.example.com", "WWW.Example.COM", "localhost",
+        "127.0.0.1", "my_host.example.org", "example.com.", "", "user@example.com",
+        "user:secret@example.com", "[::1]", "exa mple.com", "ex%41mple.com", "b\u00fccher.de" };
+
+    private static final String[] PORTS = { "", ":", ":80", ":443", ":8080", ":080", ":0",
+        ":99999", ":12345678901", ":x" };
+
+    private static final String[] PATHS = { "", "/", "//", "///", "/a", "/a/", "/a//b",
+        "//a//b/index.html", "/a/./b", "/a/../b", "/../a", "/a/..", "/a/.", "/.../a", "/..a/b/..",
+        "/%7Euser/", "/%7euser/", "/a%2Fb", "/a%zz", "/a%2", "/a b", "/a\\b", "/a;b=c",
+        "/~user/x.html", "/a:b@c!$&'()*+,=", "/\u00e4\u00f6\u00fc", "/a|b", "/a[b]", "/a\"b",
+        "//host:port/x", "//@/x", "//a%41/b" };
+
+    private static final String[] QUERIES = { "", "?", "?&", "?a=1", "?a=1&b=2", "?a=1&b=2&a=3",
+        "?a", "?a=", "?=a", "?=", "?=&a=1", "?a=1&=", "?&&a=1&&", "?a==b", "?q=a b",
+        "?q=a+b", "?q=a%2Bb", "?q=100%", "?q=%", "?q=%4", "?q=%-1", "?q=%-0", "?q=%zz",
+        "?q=%41%42", "?q=%c3%a4", "?q=%C3", "?q=%C3x%A4", "?q=%C3+%A4", "?q=%E0%80%80",
+        "?q=%ED%A0%80", "?q=%F0%9F%98%80", "?q=%F4%90%80%80", "?q=%FF", "?q=\u00e4",
+        "?q=\ud83d\ude00", "?q=\ud83d", "?q=\ude00x", "?q=*~!'()", "?q=%7E%2a%2A",
+        "?JSESSIONID=1&x=2", "?x=1&jsessionid=2", "?PHPSESSID=1", "?aspSessionId=1",
+        "?q=a/b?c", "?q=\t\n", "?a&A", "?x=%00" };
+
+    private static final String[] FRAGMENTS = { "", "#", "#top", "#a?b=c", "#a&b" };
+
+    private static final String[] CONTEXTS = { null, "http://www.example.com/a/b/c.html",
+        "https://Example.com:8443/dir/?q=1", "http://example.com", "ftp://example.com/x/" };
+
+    private static final String[] RELATIVE = { "", "d.html", "./d.html", "../d.html",
+        "../../../d.html", "/d.html", "?page=2", "#frag", "//other.com/x", ";p", "d.html?a=1#x",
+        "  d.html  ", "mailto:someone@example.com", "javascript:void(0)" };
+
+    @Test
+    public void shouldNormalizeLikeLegacyNormalizer() {
+        for (String scheme : SCHEMES) {
+            for (String host : HOSTS) {
+                for (String port : PORTS) {
+                    assertSameResult(scheme + host + port + "/x?a=b", null);
+                }
+                for (String path : PATHS) {
+                    assertSameResult(scheme + host + path, null);
+                }
+            }
+        }
+        for (String path : PATHS) {
+            for (String query : QUERIES) {
+                for (String fragment : FRAGMENTS) {
+                    assertSameResult("http://www.example.com" + path + query + fragment, null);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldResolveLikeLegacyNormalizer() {
+        for (String context : CONTEXTS) {
+            for (String href : RELATIVE) {
+                assertSameResult(href, context);
+            }
+            for (String path : PATHS) {
+                assertSameResult(path, context);
+                assertSameResult("http://www.example.com" + path, context);
+            }
+            for (String query : QUERIES) {
+                assertSameResult(query, context);
+            }
+        }
+    }
+
+    @Test
+    public void shouldNormalizeRandomUrlsLikeLegacyNormalizer() {
+        String alphabet = "aZ09-._~/?#&=+%:;@!$'()*,[] \\|\"<>{}^`\u00e4\u20ac\ud83d\ude00";
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder url = new StringBuilder(SCHEMES[random.nextInt(3)]);
+            url.append(HOSTS[random.nextInt(6)]);
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(8) == 0) {
+                    url.append('%').append(Integer.toHexString(random.nextInt(256)));
+                }
+                else {
+                    url.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            assertSameResult(url.toString(), null);
+        }
+    }
+
+    private static void assertSameResult(String href, String context) {
+        assertThat(UrlNormalizer.normalize(href, context))
+            .as("normalize(%s, %s)", href, context)
+            .isEqualTo(LegacyUrlNormalizer.normalize(href, context));
+    }
+}
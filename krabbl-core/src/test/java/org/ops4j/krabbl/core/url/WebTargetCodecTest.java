@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.url;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class WebTargetCodecTest {
+
+    @Test
+    public void shouldDecodeEncodedTarget() {
+        WebTargetImpl target = new WebTargetBuilder("http://www.Example.co.uk:8080/a/b.html?q=1")
+            .build();
+        target.setReferringUrl("http://www.example.co.uk:8080/");
+        target.setDepth(3);
+        target.setPriority(0.5f);
+
+        WebTargetImpl decoded = roundTrip(target);
+        assertThat(decoded).isEqualTo(target);
+        assertThat(decoded.getUrl()).isEqualTo("http://www.example.co.uk:8080/a/b.html?q=1");
+        assertThat(decoded.getDomain()).isEqualTo("example.co.uk:8080");
+        assertThat(decoded.getSubdomain()).isEqualTo("www");
+        assertThat(decoded.getPath()).isEqualTo("/a/b.html");
+        assertThat(decoded.getDepth()).isEqualTo(3);
+        assertThat(decoded.getPriority()).isEqualTo(0.5f);
+    }
+
+    @Test
+    public void shouldShareReferringUrlWithPreviousTarget() {
+        WebTargetImpl first = new WebTargetBuilder("http://example.com/a").build();
+        first.setReferringUrl("http://example.com/");
+        WebTargetImpl second = new WebTargetBuilder("http://example.com/b").build();
+        second.setReferringUrl(new String("http://example.com/"));
+
+        WebTargetImpl previous = roundTrip(first);
+        ByteBuffer buffer = ByteBuffer.wrap(WebTargetCodec.encode(second));
+        WebTargetImpl decoded = WebTargetCodec.decode(buffer, previous);
+        assertThat(decoded.getUrl()).isEqualTo("http://example.com/b");
+        assertThat(decoded.getReferringUrl()).isSameAs(previous.getReferringUrl());
+    }
+
+    @Test
+    public void shouldDecodeTargetWithoutPathAndReferrer() {
+        WebTargetImpl target = new WebTargetBuilder("http://localhost:8080").build();
+
+        WebTargetImpl decoded = roundTrip(target);
+        assertThat(decoded.getDomain()).isEqualTo("localhost:8080");
+        assertThat(decoded.getSubdomain()).isEmpty();
+        assertThat(decoded.getPath()).isEqualTo(target.getPath());
+        assertThat(decoded.getReferringUrl()).isNull();
+    }
+
+    private static WebTargetImpl roundTrip(WebTargetImpl target) {
+        return WebTargetCodec.decode(ByteBuffer.wrap(WebTargetCodec.encode(target)));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 OPS4J Contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.krabbl.core.warc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ops4j.krabbl.api.Page;
+import org.ops4j.krabbl.core.fetch.PageFetchResult;
+import org.ops4j.krabbl.core.url.WebTargetBuilder;
+
+/**
+ * @author Harald Wellmann
+ *
+ */
+public class WarcWriterTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static PageFetchResult fetchResult(String url) {
+        PageFetchResult fetchResult = new PageFetchResult();
+        fetchResult.setStatusCode(200);
+        fetchResult.setStatusLine(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        fetchResult.setResponseHeaders(
+            new BasicHeader[] { new BasicHeader("Content-Type", "text/plain") });
+        HttpGet request = new HttpGet(url);
+        request.addHeader("User-Agent", "test");
+        fetchResult.setRequest(request);
+        fetchResult.setFetchTime(1_500_000_000_000L);
+        return fetchResult;
+    }
+
+    private static Page page(String url, String content) {
+        Page page = new Page(new WebTargetBuilder(url).build());
+        page.setContentData(content.getBytes(StandardCharsets.UTF_8));
+        return page;
+    }
+
+    private static String readWarc(Path file) throws IOException {
+        // reads all gzip members
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int numRead;
+            while ((numRead = is.read(buffer)) != -1) {
+                os.write(buffer, 0, numRead);
+            }
+            return new String(os.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void shouldWriteRequestAndResponse() throws IOException {
+        Path folder = tempFolder.newFolder().toPath();
+        WarcWriter writer = new WarcWriter(folder, 1 << 20, 10);
+        String url = "http://example.com/hello";
+        assertThat(writer.write(fetchResult(url), page(url, "hello world"))).isTrue();
+        writer.close();
+
+        List<Path> files = writer.getFiles();
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0).getFileName().toString()).endsWith(".warc.gz");
+        String warc = readWarc(files.get(0));
+        assertThat(warc).startsWith("WARC/1.1\r\nWARC-Type: warcinfo\r\n");
+        assertThat(warc).contains("WARC-Type: response\r\n", "WARC-Type: request\r\n",
+            "WARC-Target-URI: " + url + "\r\n", "WARC-Date: 2017-07-14T02:40:00Z\r\n",
+            "Content-Type: application/http;msgtype=response\r\n",
+            "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\nhello world\r\n\r\n",
+            "GET http://example.com/hello HTTP/1.1\r\nUser-Agent: test\r\n\r\n\r\n\r\n");
+        // status line, header line, empty line and payload
+        assertThat(warc).contains("Content-Length: " + (17 + 26 + 2 + 11) + "\r\n");
+        assertThat(writer.getNumberOfDroppedPages()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldStartNewFile() throws IOException {
+        WarcWriter writer = new WarcWriter(tempFolder.newFolder().toPath(), 100, 10);
+        for (int i = 0; i < 3; i++) {
+            String url = "http://example.com/" + i;
+            writer.write(fetchResult(url), page(url, "page " + i));
+        }
+        writer.close();
+
+        List<Path> files = writer.getFiles();
+        assertThat(files.size()).isGreaterThan(1);
+        StringBuilder all = new StringBuilder();
+        for (Path file : files) {
+            String warc = readWarc(file);
+            assertThat(warc).startsWith("WARC/1.1\r\nWARC-Type: warcinfo\r\n");
+            all.append(warc);
+        }
+        assertThat(all.toString()).contains("page 0", "page 1", "page 2");
+    }
+
+    @Test
+    public void shouldDropRecordsAfterClose() throws IOException {
+        WarcWriter writer = new WarcWriter(tempFolder.newFolder().toPath(), 1 << 20, 10);
+        writer.close();
+        String url = "http://example.com/";
+        assertThat(writer.write(fetchResult(url), page(url, "dropped"))).isFalse();
+        assertThat(writer.getNumberOfDroppedPages()).isEqualTo(1);
+        assertThat(writer.getFiles()).isEmpty();
+    }
+}